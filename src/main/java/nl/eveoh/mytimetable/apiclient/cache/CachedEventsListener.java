@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.List;
+
+/**
+ * Listener for events entering and leaving an {@link EventRangeCache}.
+ * <p/>
+ * Events are counted per user: when two users have the same event cached, it is added (and removed) twice. Listeners
+ * are called while the cache is locked, so they should return quickly, and must not retain the given lists.
+ */
+public interface CachedEventsListener {
+
+    /**
+     * Called after events have been added to the cache.
+     *
+     * @param events The added events.
+     */
+    public void eventsAdded(List<Event> events);
+
+    /**
+     * Called after events have been removed from the cache, because they expired, were replaced or were evicted.
+     *
+     * @param events The removed events.
+     */
+    public void eventsRemoved(List<Event> events);
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring, mapping keys to nodes.
+ * <p/>
+ * Each node is placed on the ring at a number of virtual positions, so keys are spread evenly. When a node is removed,
+ * only the keys mapped to that node move to other nodes. Nodes are identified by their {@link Object#toString()}
+ * value, which should be stable between JVMs. Instances are immutable.
+ *
+ * @param <T> type of the nodes.
+ */
+public final class ConsistentHashRing<T> {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    private final TreeMap<Integer, T> ring = new TreeMap<Integer, T>();
+
+    private final List<T> nodes;
+
+
+    /**
+     * @param nodes            nodes on the ring.
+     * @param virtualNodeCount number of positions of each node on the ring, e.g. 100.
+     */
+    public ConsistentHashRing(Collection<T> nodes, int virtualNodeCount) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<T>(nodes));
+
+        for (T node : nodes) {
+            for (int i = 0; i < virtualNodeCount; i++) {
+                ring.put(hash(node.toString() + '#' + i), node);
+            }
+        }
+    }
+
+    /**
+     * @return The node owning the given key, or {@code null} if the ring is empty.
+     */
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Integer, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Returns all nodes, in the order they are encountered when walking the ring from the given key. The first node is
+     * the owner of the key; the others are the nodes to fail over to.
+     *
+     * @return Distinct nodes, in ring order.
+     */
+    public List<T> getPreferenceList(String key) {
+        List<T> ret = new ArrayList<T>(nodes.size());
+        if (ring.isEmpty()) {
+            return ret;
+        }
+
+        int hash = hash(key);
+        SortedMap<Integer, T> tail = ring.tailMap(hash);
+        SortedMap<Integer, T> head = ring.headMap(hash);
+
+        for (T node : tail.values()) {
+            if (ret.size() == nodes.size()) {
+                break;
+            }
+
+            if (!ret.contains(node)) {
+                ret.add(node);
+            }
+        }
+
+        for (T node : head.values()) {
+            if (ret.size() == nodes.size()) {
+                break;
+            }
+
+            if (!ret.contains(node)) {
+                ret.add(node);
+            }
+        }
+
+        return ret;
+    }
+
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+    private static int hash(String s) {
+        return HASH_FUNCTION.hashString(s, Charsets.UTF_8).asInt();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableEvent;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableLocation;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact, compressed binary form of a list of events.
+ * <p/>
+ * Each distinct string is written once per list and referred to by index afterwards, as the events of a timetable
+ * share most of their locations, staff members and activity types. The result is compressed with deflate.
+ */
+final class EventCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final int NULL = -1;
+
+    private static final int NULL_LOCATION = -2;
+
+
+    private EventCodec() {
+    }
+
+    /**
+     * @param events events to encode.
+     * @return The compressed binary form of the events.
+     * @throws IOException when the events cannot be encoded, e.g. because a string is too long.
+     */
+    public static byte[] encode(List<Event> events) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * events.size() + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+            Map<String, Integer> strings = new HashMap<String, Integer>();
+
+            out.writeByte(VERSION);
+            out.writeInt(events.size());
+
+            for (Event event : events) {
+                writeString(out, strings, event.getActivityCode());
+                writeString(out, strings, event.getActivityDescription());
+                writeString(out, strings, event.getActivityType());
+                writeString(out, strings, event.getNote1());
+                writeString(out, strings, event.getNote2());
+                writeString(out, strings, event.getNote3());
+                writeDate(out, event.getStartDate());
+                writeDate(out, event.getEndDate());
+
+                List<Location> locations = event.getLocations();
+                out.writeInt(locations == null ? NULL : locations.size());
+                if (locations != null) {
+                    for (Location location : locations) {
+                        if (location == null) {
+                            out.writeInt(NULL_LOCATION);
+                        } else {
+                            writeString(out, strings, location.getName());
+                        }
+                    }
+                }
+
+                List<String> staffMembers = event.getStaffMembers();
+                out.writeInt(staffMembers == null ? NULL : staffMembers.size());
+                if (staffMembers != null) {
+                    for (String staffMember : staffMembers) {
+                        writeString(out, strings, staffMember);
+                    }
+                }
+            }
+
+            out.close();
+        } finally {
+            deflater.end();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data compressed binary form, as returned by {@link #encode(List)}.
+     * @return The decoded events, as {@link ImmutableEvent}s.
+     * @throws IOException when the data is corrupt.
+     */
+    public static List<Event> decode(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+
+        try {
+            DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data), inflater));
+            List<String> strings = new ArrayList<String>();
+
+            if (in.readByte() != VERSION) {
+                throw new IOException("Unsupported version of encoded events.");
+            }
+
+            int count = in.readInt();
+            List<Event> events = new ArrayList<Event>(count);
+
+            for (int i = 0; i < count; i++) {
+                String activityCode = readString(in, strings);
+                String activityDescription = readString(in, strings);
+                String activityType = readString(in, strings);
+                String note1 = readString(in, strings);
+                String note2 = readString(in, strings);
+                String note3 = readString(in, strings);
+                Date startDate = readDate(in);
+                Date endDate = readDate(in);
+
+                List<Location> locations = null;
+                int locationCount = in.readInt();
+                if (locationCount != NULL) {
+                    locations = new ArrayList<Location>(locationCount);
+                    for (int j = 0; j < locationCount; j++) {
+                        int index = in.readInt();
+                        locations.add(index == NULL_LOCATION ? null : new ImmutableLocation(readString(in, strings,
+                                index)));
+                    }
+                    locations = Collections.unmodifiableList(locations);
+                }
+
+                List<String> staffMembers = null;
+                int staffMemberCount = in.readInt();
+                if (staffMemberCount != NULL) {
+                    staffMembers = new ArrayList<String>(staffMemberCount);
+                    for (int j = 0; j < staffMemberCount; j++) {
+                        staffMembers.add(readString(in, strings));
+                    }
+                    staffMembers = Collections.unmodifiableList(staffMembers);
+                }
+
+                events.add(new ImmutableEvent(activityCode, activityDescription, startDate, endDate, locations,
+                        staffMembers, activityType, note1, note2, note3));
+            }
+
+            return events;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes a reference to a string, followed by the string itself when it was not written before.
+     */
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(NULL);
+            return;
+        }
+
+        Integer index = strings.get(string);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+
+        out.writeInt(strings.size());
+        out.writeUTF(string);
+        strings.put(string, strings.size());
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        return readString(in, strings, in.readInt());
+    }
+
+    private static String readString(DataInputStream in, List<String> strings, int index) throws IOException {
+        if (index == NULL) {
+            return null;
+        }
+
+        if (index == strings.size()) {
+            String string = in.readUTF();
+            strings.add(string);
+            return string;
+        }
+
+        if (index < 0 || index > strings.size()) {
+            throw new IOException("Invalid string reference " + index + ".");
+        }
+
+        return strings.get(index);
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.getTime());
+        }
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+}
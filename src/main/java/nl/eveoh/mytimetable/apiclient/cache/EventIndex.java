@@ -0,0 +1,240 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory inverted indexes over cached events, by location name and by staff member, sorted by start date.
+ * <p/>
+ * The index is kept up to date by registering it as a listener of an {@link EventRangeCache}, so it answers
+ * questions like "what is happening in room X now" and "where is lecturer Y today" from the events that have already
+ * been downloaded, without calling the MyTimetable API.
+ * <p/>
+ * Updates are serialized, but lookups do not take any locks and can run concurrently with updates.
+ */
+public class EventIndex implements CachedEventsListener {
+
+    private static final Comparator<IndexedEvent> START_DATE_ORDER = new Comparator<IndexedEvent>() {
+        @Override
+        public int compare(IndexedEvent e1, IndexedEvent e2) {
+            if (e1.start != e2.start) {
+                return e1.start < e2.start ? -1 : 1;
+            }
+
+            return e1.sequence < e2.sequence ? -1 : (e1.sequence == e2.sequence ? 0 : 1);
+        }
+    };
+
+    private final ConcurrentMap<String, NavigableSet<IndexedEvent>> byLocation =
+            new ConcurrentHashMap<String, NavigableSet<IndexedEvent>>();
+
+    private final ConcurrentMap<String, NavigableSet<IndexedEvent>> byStaffMember =
+            new ConcurrentHashMap<String, NavigableSet<IndexedEvent>>();
+
+    /**
+     * Indexed events, by value. Only accessed while holding the lock on this object.
+     */
+    private final Map<Event, IndexedEvent> indexed = new HashMap<Event, IndexedEvent>();
+
+    private long nextSequence = 0;
+
+    /**
+     * Duration of the longest event ever indexed, used to find events which started before the start of a query.
+     */
+    private volatile long maxDuration = 0;
+
+
+    @Override
+    public synchronized void eventsAdded(List<Event> events) {
+        for (Event event : events) {
+            IndexedEvent entry = indexed.get(event);
+            if (entry != null) {
+                entry.references++;
+                continue;
+            }
+
+            entry = new IndexedEvent(event, nextSequence++);
+            indexed.put(event, entry);
+
+            if (entry.end - entry.start > maxDuration) {
+                maxDuration = entry.end - entry.start;
+            }
+
+            if (event.getLocations() != null) {
+                for (Location location : event.getLocations()) {
+                    if (location != null && location.getName() != null) {
+                        getOrCreate(byLocation, location.getName()).add(entry);
+                    }
+                }
+            }
+
+            if (event.getStaffMembers() != null) {
+                for (String staffMember : event.getStaffMembers()) {
+                    if (staffMember != null) {
+                        getOrCreate(byStaffMember, staffMember).add(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void eventsRemoved(List<Event> events) {
+        for (Event event : events) {
+            IndexedEvent entry = indexed.get(event);
+            if (entry == null || --entry.references > 0) {
+                continue;
+            }
+
+            indexed.remove(event);
+
+            if (event.getLocations() != null) {
+                for (Location location : event.getLocations()) {
+                    if (location != null && location.getName() != null) {
+                        remove(byLocation, location.getName(), entry);
+                    }
+                }
+            }
+
+            if (event.getStaffMembers() != null) {
+                for (String staffMember : event.getStaffMembers()) {
+                    if (staffMember != null) {
+                        remove(byStaffMember, staffMember, entry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached events at the given location which overlap the given range, sorted by start date.
+     *
+     * @param locationName name of the location.
+     * @param from         start of the range, inclusive.
+     * @param to           end of the range, exclusive.
+     * @return List of events, empty if no events are known.
+     */
+    public List<Event> getEventsByLocation(String locationName, Date from, Date to) {
+        return find(byLocation.get(locationName), from.getTime(), to.getTime());
+    }
+
+    /**
+     * Returns the cached events of the given staff member which overlap the given range, sorted by start date.
+     *
+     * @param staffMember  name of the staff member, as in {@link Event#getStaffMembers()}.
+     * @param from         start of the range, inclusive.
+     * @param to           end of the range, exclusive.
+     * @return List of events, empty if no events are known.
+     */
+    public List<Event> getEventsByStaffMember(String staffMember, Date from, Date to) {
+        return find(byStaffMember.get(staffMember), from.getTime(), to.getTime());
+    }
+
+    /**
+     * @return Number of distinct events in the index.
+     */
+    public synchronized int size() {
+        return indexed.size();
+    }
+
+    private List<Event> find(NavigableSet<IndexedEvent> events, long from, long to) {
+        if (events == null || from >= to) {
+            return Collections.emptyList();
+        }
+
+        IndexedEvent lower = new IndexedEvent(Math.max(Long.MIN_VALUE + maxDuration, from) - maxDuration,
+                Long.MIN_VALUE);
+        IndexedEvent upper = new IndexedEvent(to, Long.MIN_VALUE);
+
+        List<Event> ret = new ArrayList<Event>();
+        for (IndexedEvent entry : events.subSet(lower, true, upper, false)) {
+            if (entry.end > from) {
+                ret.add(entry.event);
+            }
+        }
+
+        return ret;
+    }
+
+    private static NavigableSet<IndexedEvent> getOrCreate(ConcurrentMap<String, NavigableSet<IndexedEvent>> index,
+                                                          String key) {
+        NavigableSet<IndexedEvent> events = index.get(key);
+        if (events == null) {
+            events = new ConcurrentSkipListSet<IndexedEvent>(START_DATE_ORDER);
+            index.put(key, events);
+        }
+
+        return events;
+    }
+
+    private static void remove(ConcurrentMap<String, NavigableSet<IndexedEvent>> index, String key,
+                               IndexedEvent entry) {
+        NavigableSet<IndexedEvent> events = index.get(key);
+        if (events != null) {
+            events.remove(entry);
+
+            if (events.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+
+    private static final class IndexedEvent {
+        private final Event event;
+        private final long start;
+        private final long end;
+
+        /**
+         * Insertion order, to distinguish different events with the same start date.
+         */
+        private final long sequence;
+
+        private int references = 1;
+
+        private IndexedEvent(Event event, long sequence) {
+            this.event = event;
+            this.start = event.getStartTime();
+            this.end = event.getEndTime() != Long.MIN_VALUE ? event.getEndTime() : start;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Creates a bound for range lookups.
+         */
+        private IndexedEvent(long start, long sequence) {
+            this.event = null;
+            this.start = start;
+            this.end = start;
+            this.sequence = sequence;
+        }
+    }
+}
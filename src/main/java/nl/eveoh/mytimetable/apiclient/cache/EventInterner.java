@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableEvent;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableLocation;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Canonicalizes events, so equal activities in the cached timetables of different users share a single
+ * {@link ImmutableEvent} instance.
+ * <p/>
+ * A cohort of students attending the same lecture all receive an equal event from the MyTimetable API. Interning
+ * them makes the memory used by cached timetables grow with the number of distinct activities, instead of with the
+ * number of users times the number of events.
+ * <p/>
+ * Only the values which typically recur in many different activities are interned as well: the locations, staff
+ * members, activity codes and activity types. Dates, descriptions and notes are mostly distinct per activity, so
+ * interning them would cost more in interner entries than it saves.
+ * <p/>
+ * Canonical instances are only weakly referenced, so they are garbage collected as soon as no cached timetable refers
+ * to them anymore. This class is thread-safe.
+ */
+public class EventInterner {
+
+    private final Interner<Event> events = Interners.newWeakInterner();
+
+    private final Interner<Location> locations = Interners.newWeakInterner();
+
+    private final Interner<List<Location>> locationLists = Interners.newWeakInterner();
+
+    private final Interner<List<String>> staffMemberLists = Interners.newWeakInterner();
+
+    private final Interner<String> strings = Interners.newWeakInterner();
+
+
+    /**
+     * Returns the canonical, immutable instance of the given event.
+     *
+     * @param event Event to intern.
+     * @return Canonical instance which is equal to <tt>event</tt>.
+     */
+    public Event intern(Event event) {
+        if (event instanceof ImmutableEvent) {
+            return events.intern(event);
+        }
+
+        return events.intern(new ImmutableEvent(
+                internString(event.getActivityCode()),
+                event.getActivityDescription(),
+                copy(event.getStartDate()),
+                copy(event.getEndDate()),
+                internLocations(event.getLocations()),
+                internStaffMembers(event.getStaffMembers()),
+                internString(event.getActivityType()),
+                event.getNote1(),
+                event.getNote2(),
+                event.getNote3()));
+    }
+
+    /**
+     * Interns all events in the given list.
+     *
+     * @param events Events to intern.
+     * @return New list containing the canonical instances of the events, in the same order.
+     */
+    public List<Event> internAll(List<Event> events) {
+        List<Event> ret = new ArrayList<Event>(events.size());
+        for (Event event : events) {
+            ret.add(intern(event));
+        }
+
+        return ret;
+    }
+
+    private List<Location> internLocations(List<Location> list) {
+        if (list == null) {
+            return null;
+        }
+
+        List<Location> ret = new ArrayList<Location>(list.size());
+        for (Location location : list) {
+            if (location instanceof ImmutableLocation) {
+                ret.add(locations.intern(location));
+            } else if (location != null) {
+                ret.add(locations.intern(new ImmutableLocation(internString(location.getName()))));
+            } else {
+                ret.add(null);
+            }
+        }
+
+        return locationLists.intern(unmodifiableList(ret));
+    }
+
+    private List<String> internStaffMembers(List<String> list) {
+        if (list == null) {
+            return null;
+        }
+
+        List<String> ret = new ArrayList<String>(list.size());
+        for (String staffMember : list) {
+            ret.add(internString(staffMember));
+        }
+
+        return staffMemberLists.intern(unmodifiableList(ret));
+    }
+
+    /**
+     * @return Unmodifiable copy of the list. Null entries are kept, so the interned event equals the original one.
+     */
+    private static <T> List<T> unmodifiableList(List<T> list) {
+        return list.contains(null) ? Collections.unmodifiableList(list) : ImmutableList.copyOf(list);
+    }
+
+    /**
+     * @return Copy of the date, so changes to the original event do not affect the immutable one.
+     */
+    private static Date copy(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+
+    private String internString(String s) {
+        return s != null ? strings.intern(s) : null;
+    }
+}
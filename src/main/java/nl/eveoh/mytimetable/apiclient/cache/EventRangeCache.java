@@ -0,0 +1,622 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per-user cache of the time ranges that have been fetched from the MyTimetable API, and the events within them.
+ * <p/>
+ * Adjacent fetched ranges of a user are combined, so a week view, a day view and the upcoming events of the same user
+ * are all served from a single set of events. Only the parts of a requested range that are not cached (or have
+ * expired) need to be fetched, see {@link #getMissingRanges(String, long, long)}. A range which is fetched again, for
+ * example when prefetching, replaces the overlapping parts of the earlier ranges, and expires later than them.
+ * <p/>
+ * The cache is bounded by the total number of cached events; when the bound is exceeded, the least recently used
+ * users are evicted. The cache never performs I/O while holding its lock, so it is safe to call from many threads.
+ * <p/>
+ * Registered {@link CachedEventsListener}s are notified of every event entering or leaving the cache, e.g. to maintain
+ * an {@link EventIndex} over the cached events.
+ */
+public class EventRangeCache {
+
+    private static final Comparator<Event> START_DATE_ORDER = new Comparator<Event>() {
+        @Override
+        public int compare(Event e1, Event e2) {
+            long s1 = startOf(e1);
+            long s2 = startOf(e2);
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
+
+    private final LinkedHashMap<String, UserTimetable> entries =
+            new LinkedHashMap<String, UserTimetable>(16, 0.75f, true);
+
+    private final List<CachedEventsListener> listeners = new CopyOnWriteArrayList<CachedEventsListener>();
+
+    /**
+     * Time after which a fetched range expires, in milliseconds.
+     */
+    private long timeToLive;
+
+    /**
+     * Maximum number of events held by the cache, over all users.
+     */
+    private int maximumEvents;
+
+    /**
+     * Number of events currently held by the cache.
+     */
+    private int size = 0;
+
+
+    /**
+     * @param timeToLive    time after which a fetched range expires, in milliseconds. A value of 0 or less disables
+     *                      the cache.
+     * @param maximumEvents maximum number of events held by the cache, over all users.
+     */
+    public EventRangeCache(long timeToLive, int maximumEvents) {
+        this.timeToLive = timeToLive;
+        this.maximumEvents = maximumEvents;
+    }
+
+    public synchronized boolean isEnabled() {
+        return timeToLive > 0 && maximumEvents > 0;
+    }
+
+    /**
+     * Returns the cached events overlapping the given range, sorted by start date.
+     *
+     * @param key  cache key of the user.
+     * @param from start of the range, inclusive.
+     * @param to   end of the range, exclusive.
+     * @return The events, or {@code null} if the range is not completely cached.
+     */
+    public synchronized List<Event> getEvents(String key, long from, long to) {
+        UserTimetable timetable = getTimetable(key);
+        if (timetable == null) {
+            return null;
+        }
+
+        if (!timetable.isCovered(from, to)) {
+            return null;
+        }
+
+        return timetable.getEvents(from, to);
+    }
+
+    /**
+     * Returns the cached events overlapping the given range, sorted by start date, and the parts of the range which
+     * are not cached. Unlike {@link #getEvents(String, long, long)}, the events are returned as well when the range is
+     * only partly cached.
+     *
+     * @param key     cache key of the user.
+     * @param from    start of the range, inclusive.
+     * @param to      end of the range, exclusive.
+     * @param missing list to add the parts of the range to which are not cached, in chronological order.
+     * @return The cached events, possibly empty.
+     */
+    public synchronized List<Event> getCachedEvents(String key, long from, long to, List<TimeRange> missing) {
+        UserTimetable timetable = getTimetable(key);
+        if (timetable == null) {
+            missing.add(new TimeRange(from, to));
+            return new ArrayList<Event>();
+        }
+
+        missing.addAll(timetable.getMissingRanges(from, to));
+        return timetable.getEvents(from, to);
+    }
+
+    /**
+     * Returns the first <tt>limit</tt> cached events that have not ended at the given time, sorted by start date.
+     *
+     * @param key   cache key of the user.
+     * @param now   current time.
+     * @param limit number of events to return.
+     * @return The events, or {@code null} if the cached range containing <tt>now</tt> does not contain enough events.
+     */
+    public synchronized List<Event> getUpcomingEvents(String key, long now, int limit) {
+        UserTimetable timetable = getTimetable(key);
+        if (timetable == null) {
+            return null;
+        }
+
+        Map.Entry<Long, Interval> floor = timetable.intervals.floorEntry(now);
+        if (floor == null) {
+            return null;
+        }
+
+        Interval interval = timetable.getLastAdjacent(floor.getValue());
+        if (!interval.coversUpcoming(now)) {
+            return null;
+        }
+        List<Event> ret = new ArrayList<Event>(limit);
+
+        for (Event event : timetable.events) {
+            if (ret.size() >= limit || !interval.coversUpcoming(startOf(event))) {
+                break;
+            }
+
+            if (endOf(event) > now) {
+                ret.add(event);
+            }
+        }
+
+        return ret.size() >= limit || interval.exhausted ? ret : null;
+    }
+
+    /**
+     * Returns the parts of the given range which are not cached, in chronological order.
+     *
+     * @param key  cache key of the user.
+     * @param from start of the range, inclusive.
+     * @param to   end of the range, exclusive.
+     * @return List of missing ranges, empty if the range is completely cached.
+     */
+    public synchronized List<TimeRange> getMissingRanges(String key, long from, long to) {
+        UserTimetable timetable = getTimetable(key);
+        if (timetable == null) {
+            return Collections.singletonList(new TimeRange(from, to));
+        }
+
+        return timetable.getMissingRanges(from, to);
+    }
+
+    /**
+     * Stores the events fetched for the given range. Previously cached events overlapping the range are
+     * replaced.
+     *
+     * @param key    cache key of the user.
+     * @param range  range the events were fetched for.
+     * @param events events returned by the MyTimetable API for the range.
+     */
+    public synchronized void put(String key, TimeRange range, List<Event> events) {
+        put(key, range, events, false, false);
+    }
+
+    /**
+     * Stores the upcoming events fetched at the given time, as returned by the MyTimetable API for the given limit.
+     * <p/>
+     * The API returns the first <tt>limit</tt> events by start date, so the events are complete up to and including
+     * the start of the last event; of the events starting at that time, the API may have returned only some. When
+     * fewer events than the limit were returned, the user has no other upcoming events.
+     * {@link #getUpcomingEvents(String, long, int)} serves the events for up to the same limit afterwards.
+     *
+     * @param key    cache key of the user.
+     * @param now    time the events were fetched for.
+     * @param limit  maximum number of events the MyTimetable API was asked for.
+     * @param events events returned by the MyTimetable API, sorted by start date.
+     */
+    public synchronized void putUpcoming(String key, long now, int limit, List<Event> events) {
+        long lastStart = now;
+        for (Event event : events) {
+            lastStart = Math.max(lastStart, startOf(event));
+        }
+
+        if (events.size() < limit) {
+            put(key, new TimeRange(now, lastStart + 1), events, false, true);
+        } else if (lastStart > now) {
+            put(key, new TimeRange(now, lastStart), events, true, false);
+        }
+    }
+
+    /**
+     * @param endIncluded whether the events starting at the end of the range have been fetched as well.
+     * @param exhausted   whether no events start after the range.
+     */
+    private void put(String key, TimeRange range, List<Event> events, boolean endIncluded, boolean exhausted) {
+        if (!isEnabled() || range.getStart() == range.getEnd()) {
+            return;
+        }
+
+        UserTimetable timetable = entries.get(key);
+        if (timetable == null) {
+            timetable = new UserTimetable();
+            entries.put(key, timetable);
+        }
+
+        List<Event> removed = new ArrayList<Event>();
+        List<Event> added = timetable.put(range, events, endIncluded, exhausted, System.currentTimeMillis(), removed);
+        size += added.size() - removed.size();
+
+        fireEventsRemoved(removed);
+        fireEventsAdded(added);
+
+        evict();
+    }
+
+    /**
+     * Removes all cached ranges of the given user.
+     */
+    public synchronized void invalidate(String key) {
+        UserTimetable timetable = entries.remove(key);
+        if (timetable != null) {
+            size -= timetable.events.size();
+            fireEventsRemoved(timetable.events);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        for (UserTimetable timetable : entries.values()) {
+            fireEventsRemoved(timetable.events);
+        }
+
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Registers a listener which is notified of all events entering and leaving the cache. The events which are
+     * already cached are passed to {@link CachedEventsListener#eventsAdded(List)} immediately.
+     */
+    public synchronized void addListener(CachedEventsListener listener) {
+        listeners.add(listener);
+
+        for (UserTimetable timetable : entries.values()) {
+            if (!timetable.events.isEmpty()) {
+                listener.eventsAdded(timetable.events);
+            }
+        }
+    }
+
+    public void removeListener(CachedEventsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Number of events currently held by the cache.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Estimates the heap memory retained by the cached events. The events are measured after releasing the lock of
+     * the cache, so this can be called on a busy cache.
+     *
+     * @return Footprint of the cached timetables, one per user.
+     */
+    public HeapFootprint estimateFootprint() {
+        List<List<Event>> timetables = new ArrayList<List<Event>>();
+        synchronized (this) {
+            for (UserTimetable timetable : entries.values()) {
+                timetables.add(new ArrayList<Event>(timetable.events));
+            }
+        }
+
+        HeapFootprint footprint = new HeapFootprint();
+        for (List<Event> timetable : timetables) {
+            footprint.addTimetable(timetable);
+        }
+
+        return footprint;
+    }
+
+    public synchronized long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public synchronized void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+
+        if (!isEnabled()) {
+            invalidateAll();
+        }
+    }
+
+    public synchronized int getMaximumEvents() {
+        return maximumEvents;
+    }
+
+    public synchronized void setMaximumEvents(int maximumEvents) {
+        this.maximumEvents = maximumEvents;
+        evict();
+    }
+
+    /**
+     * Returns the timetable of the given user after removing its expired ranges.
+     */
+    private UserTimetable getTimetable(String key) {
+        UserTimetable timetable = entries.get(key);
+        if (timetable == null) {
+            return null;
+        }
+
+        List<Event> removed = new ArrayList<Event>();
+        timetable.expire(System.currentTimeMillis() - timeToLive, removed);
+
+        if (timetable.intervals.isEmpty()) {
+            removed.addAll(timetable.events);
+            entries.remove(key);
+            timetable = null;
+        }
+
+        size -= removed.size();
+        fireEventsRemoved(removed);
+
+        return timetable;
+    }
+
+    private void fireEventsAdded(List<Event> events) {
+        if (!events.isEmpty()) {
+            for (CachedEventsListener listener : listeners) {
+                listener.eventsAdded(events);
+            }
+        }
+    }
+
+    private void fireEventsRemoved(List<Event> events) {
+        if (!events.isEmpty()) {
+            for (CachedEventsListener listener : listeners) {
+                listener.eventsRemoved(events);
+            }
+        }
+    }
+
+
+    /**
+     * Evicts the least recently used users until the cache is within its bounds.
+     */
+    private void evict() {
+        Iterator<UserTimetable> it = entries.values().iterator();
+        while (size > maximumEvents && it.hasNext()) {
+            UserTimetable timetable = it.next();
+            it.remove();
+
+            size -= timetable.events.size();
+            fireEventsRemoved(timetable.events);
+        }
+    }
+
+    private static long startOf(Event event) {
+        return event.getStartTime();
+    }
+
+    private static long endOf(Event event) {
+        long end = event.getEndTime();
+        return end != Long.MIN_VALUE ? end : event.getStartTime();
+    }
+
+
+    /**
+     * Fetched range, with the time it was fetched at.
+     */
+    private static final class Interval {
+        private final long start;
+        private final long end;
+        private final long fetchedAt;
+
+        /**
+         * Whether the events starting at the end of the range are cached as well, as for upcoming events fetched with
+         * a limit.
+         */
+        private final boolean endIncluded;
+
+        /**
+         * Whether the user has no events starting after the range, as reported by a fetch of upcoming events which
+         * returned fewer events than its limit.
+         */
+        private final boolean exhausted;
+
+        private Interval(long start, long end, long fetchedAt, boolean endIncluded, boolean exhausted) {
+            this.start = start;
+            this.end = end;
+            this.fetchedAt = fetchedAt;
+            this.endIncluded = endIncluded;
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * @return Whether the events starting at the given time, at or after the start of this range, are cached.
+         */
+        private boolean covers(long time) {
+            return time < end || (time == end && endIncluded);
+        }
+
+        /**
+         * @return Whether the upcoming events at the given time, at or after the start of this range, are cached.
+         */
+        private boolean coversUpcoming(long time) {
+            return exhausted || covers(time);
+        }
+    }
+
+    /**
+     * Cached ranges and events of a single user.
+     */
+    private static final class UserTimetable {
+
+        /**
+         * Disjoint, non-empty fetched ranges, by start time.
+         */
+        private final TreeMap<Long, Interval> intervals = new TreeMap<Long, Interval>();
+
+        /**
+         * Cached events, sorted by start date.
+         */
+        private final List<Event> events = new ArrayList<Event>();
+
+        private boolean isCovered(long from, long to) {
+            Map.Entry<Long, Interval> floor = intervals.floorEntry(from);
+            return floor != null && getLastAdjacent(floor.getValue()).end >= to;
+        }
+
+        /**
+         * @return The last interval of the chain of adjacent intervals starting with the given interval.
+         */
+        private Interval getLastAdjacent(Interval interval) {
+            Interval next;
+            while (!interval.exhausted && (next = intervals.get(interval.end)) != null) {
+                interval = next;
+            }
+
+            return interval;
+        }
+
+        private List<Event> getEvents(long from, long to) {
+            List<Event> ret = new ArrayList<Event>();
+            for (Event event : events) {
+                if (startOf(event) >= to) {
+                    break;
+                }
+
+                if (endOf(event) > from) {
+                    ret.add(event);
+                }
+            }
+
+            return ret;
+        }
+
+        private List<TimeRange> getMissingRanges(long from, long to) {
+            List<TimeRange> ret = new ArrayList<TimeRange>();
+            long cursor = from;
+
+            Long floorKey = intervals.floorKey(from);
+            for (Interval interval : intervals.tailMap(floorKey != null ? floorKey : from).values()) {
+                if (interval.start >= to) {
+                    break;
+                }
+
+                if (interval.start > cursor) {
+                    ret.add(new TimeRange(cursor, interval.start));
+                }
+
+                cursor = Math.max(cursor, interval.end);
+            }
+
+            if (cursor < to) {
+                ret.add(new TimeRange(cursor, to));
+            }
+
+            return ret;
+        }
+
+        /**
+         * @param removed list to add the events to which are removed from the cache.
+         * @return Events added to the cache.
+         */
+        private List<Event> put(TimeRange range, List<Event> fetched, boolean endIncluded, boolean exhausted, long now,
+                                List<Event> removed) {
+            Set<Event> fetchedSet = new HashSet<Event>(fetched);
+
+            Iterator<Event> it = events.iterator();
+            while (it.hasNext()) {
+                Event event = it.next();
+
+                if ((startOf(event) < range.getEnd() && endOf(event) > range.getStart()) || fetchedSet.contains(event)) {
+                    it.remove();
+                    removed.add(event);
+                }
+            }
+
+            List<Event> added = new ArrayList<Event>(fetchedSet);
+            events.addAll(added);
+            Collections.sort(events, START_DATE_ORDER);
+
+            // Replace the overlapping parts of the earlier ranges, which keep the time they were fetched at.
+            long start = range.getStart();
+            long end = range.getEnd();
+            List<Interval> remainders = new ArrayList<Interval>(2);
+
+            Long floorKey = intervals.floorKey(start);
+            Iterator<Interval> overlapping =
+                    intervals.subMap(floorKey != null ? floorKey : start, true, end, false).values().iterator();
+            while (overlapping.hasNext()) {
+                Interval interval = overlapping.next();
+                if (interval.end <= start) {
+                    continue;
+                }
+
+                overlapping.remove();
+
+                if (interval.start < start) {
+                    remainders.add(new Interval(interval.start, start, interval.fetchedAt, false, false));
+                }
+
+                if (interval.end > end) {
+                    remainders.add(new Interval(end, interval.end, interval.fetchedAt, interval.endIncluded,
+                            interval.exhausted));
+                } else if (interval.end == end) {
+                    endIncluded |= interval.endIncluded;
+                }
+            }
+
+            for (Interval remainder : remainders) {
+                intervals.put(remainder.start, remainder);
+            }
+
+            intervals.put(start, new Interval(start, end, now, endIncluded, exhausted));
+
+            return added;
+        }
+
+        /**
+         * Removes the ranges fetched before the given time, and the events no longer overlapping any cached range.
+         *
+         * @param removed list to add the removed events to.
+         */
+        private void expire(long fetchedBefore, List<Event> removed) {
+            boolean expired = false;
+
+            Iterator<Interval> it = intervals.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().fetchedAt < fetchedBefore) {
+                    it.remove();
+                    expired = true;
+                }
+            }
+
+            if (!expired) {
+                return;
+            }
+
+            Iterator<Event> eventIt = events.iterator();
+            while (eventIt.hasNext()) {
+                Event event = eventIt.next();
+                if (!isCovered(event)) {
+                    eventIt.remove();
+                    removed.add(event);
+                }
+            }
+        }
+
+        private boolean isCovered(Event event) {
+            long start = startOf(event);
+
+            Map.Entry<Long, Interval> floor = intervals.floorEntry(start);
+            if (floor != null && floor.getValue().covers(start)) {
+                return true;
+            }
+
+            Map.Entry<Long, Interval> higher = intervals.higherEntry(start);
+            return higher != null && higher.getValue().start < endOf(event);
+        }
+    }
+}
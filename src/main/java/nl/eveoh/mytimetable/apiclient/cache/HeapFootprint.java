@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import com.google.common.collect.ImmutableList;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableEvent;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Estimates the heap memory retained by cached timetables, in bytes per event and per timetable.
+ * <p/>
+ * Objects shared between events, e.g. by the {@link EventInterner}, are only counted once, so the estimate can be used
+ * to compare the plain and the interned representation of the same timetables. The sizes are computed from the object
+ * layout of a 64 bit JVM with compressed references and compact strings (8 byte alignment, 12 byte object headers),
+ * which is the default for heaps below 32 GB. Walking the timetables keeps a reference to every visited object, so
+ * only use this for diagnostics.
+ * <p/>
+ * This class is not thread-safe.
+ */
+public class HeapFootprint {
+
+    private static final int HEADER = 12;
+
+    private static final int ARRAY_HEADER = 16;
+
+    private static final int REFERENCE = 4;
+
+    private static final int EVENT = align(HEADER + 10 * REFERENCE);
+
+    private static final int LOCATION = align(HEADER + REFERENCE);
+
+    private static final int DATE = align(HEADER + 8 + REFERENCE);
+
+    private static final int STRING = align(HEADER + REFERENCE + 4 + 2);
+
+    private static final int LIST = align(HEADER + 3 * REFERENCE);
+
+    private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    private long bytes = 0;
+
+    private int events = 0;
+
+    private int timetables = 0;
+
+
+    /**
+     * Adds the timetable of a single user.
+     *
+     * @param timetable events of the timetable.
+     */
+    public void addTimetable(Collection<? extends Event> timetable) {
+        timetables++;
+        bytes += LIST + array(timetable.size());
+
+        for (Event event : timetable) {
+            events++;
+            addEvent(event);
+        }
+    }
+
+    /**
+     * @return Estimated number of bytes retained by the added timetables.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Number of events in the added timetables, including duplicates.
+     */
+    public int getEvents() {
+        return events;
+    }
+
+    public int getTimetables() {
+        return timetables;
+    }
+
+    /**
+     * @return Average number of bytes per event, or 0 when no events were added.
+     */
+    public double getBytesPerEvent() {
+        return events == 0 ? 0 : (double) bytes / events;
+    }
+
+    /**
+     * @return Average number of bytes per timetable, or 0 when no timetables were added.
+     */
+    public double getBytesPerTimetable() {
+        return timetables == 0 ? 0 : (double) bytes / timetables;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bytes for %d events in %d timetables (%.1f bytes/event, %.1f bytes/timetable)",
+                bytes, events, timetables, getBytesPerEvent(), getBytesPerTimetable());
+    }
+
+    private void addEvent(Event event) {
+        if (!visited.add(event)) {
+            return;
+        }
+
+        bytes += EVENT;
+        addString(event.getActivityCode());
+        addString(event.getActivityDescription());
+        addString(event.getActivityType());
+        addString(event.getNote1());
+        addString(event.getNote2());
+        addString(event.getNote3());
+
+        boolean immutable = event instanceof ImmutableEvent;
+        addDate(event.getStartDate(), immutable);
+        addDate(event.getEndDate(), immutable);
+
+        List<Location> locations = event.getLocations();
+        if (locations != null && addList(locations)) {
+            for (Location location : locations) {
+                if (location != null && visited.add(location)) {
+                    bytes += LOCATION;
+                    addString(location.getName());
+                }
+            }
+        }
+
+        List<String> staffMembers = event.getStaffMembers();
+        if (staffMembers != null && addList(staffMembers)) {
+            for (String staffMember : staffMembers) {
+                addString(staffMember);
+            }
+        }
+    }
+
+    /**
+     * Dates of immutable events are copied on access, so they cannot be identified. Every immutable event has its own
+     * dates, so they are counted once per event.
+     */
+    private void addDate(Date date, boolean immutable) {
+        if (date != null && (immutable || visited.add(date))) {
+            bytes += DATE;
+        }
+    }
+
+    /**
+     * @return Whether the list was not visited before.
+     */
+    private boolean addList(List<?> list) {
+        if (!visited.add(list)) {
+            return false;
+        }
+
+        // Empty immutable lists are a shared singleton.
+        if (!(list instanceof ImmutableList) || !list.isEmpty()) {
+            bytes += LIST + array(list.size());
+        }
+
+        return true;
+    }
+
+    private void addString(String string) {
+        if (string == null || !visited.add(string)) {
+            return;
+        }
+
+        int length = string.length();
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) > 0xFF) {
+                length = 2 * string.length();
+                break;
+            }
+        }
+
+        bytes += STRING + align(ARRAY_HEADER + length);
+    }
+
+    private static int array(int length) {
+        return align(ARRAY_HEADER + REFERENCE * length);
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TimetableCacheProvider} which keeps the events in local memory, for a fixed time.
+ */
+public class LocalTimetableCacheProvider implements TimetableCacheProvider {
+
+    private final Cache<String, List<Event>> cache;
+
+
+    /**
+     * @param timeToLive  time the events of a user are cached, in milliseconds.
+     * @param maximumSize maximum number of cached users.
+     */
+    public LocalTimetableCacheProvider(long timeToLive, int maximumSize) {
+        cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    @Override
+    public List<Event> get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(String key, List<Event> events) {
+        cache.put(key, events);
+    }
+
+    @Override
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Stores byte arrays by key outside the Java heap, in direct {@link ByteBuffer} slabs.
+ * <p/>
+ * The slabs are divided into fixed-size blocks, and each value occupies as many blocks as it needs, so memory never
+ * fragments. Slabs are allocated on demand, up to the configured maximum size. When the store is full, the least
+ * recently stored values are evicted. This class is thread-safe.
+ */
+final class OffHeapBlockStore {
+
+    private static final int SLAB_SIZE = 1024 * 1024;
+
+    private final int blockSize;
+
+    private final int blocksPerSlab;
+
+    private final int maximumBlocks;
+
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+    private final LinkedHashMap<String, Value> values = new LinkedHashMap<String, Value>(16, 0.75f, true);
+
+    /**
+     * Indices of the blocks that have been allocated but are not in use.
+     */
+    private int[] freeBlocks = new int[0];
+
+    private int freeBlockCount = 0;
+
+    /**
+     * Number of blocks in the allocated slabs.
+     */
+    private int allocatedBlocks = 0;
+
+
+    /**
+     * @param maximumSize maximum number of bytes allocated outside the heap, at least <tt>blockSize</tt>.
+     * @param blockSize   size of a single block, in bytes, at most the slab size of 1 MiB.
+     */
+    OffHeapBlockStore(long maximumSize, int blockSize) {
+        if (blockSize <= 0 || blockSize > SLAB_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + SLAB_SIZE + " bytes.");
+        }
+
+        if (maximumSize < blockSize) {
+            throw new IllegalArgumentException("Maximum size cannot be smaller than the block size.");
+        }
+
+        this.blockSize = blockSize;
+        this.blocksPerSlab = SLAB_SIZE / blockSize;
+        this.maximumBlocks = (int) Math.min(Integer.MAX_VALUE, maximumSize / blockSize);
+    }
+
+    /**
+     * Stores a value, evicting the least recently stored values if needed.
+     *
+     * @param key     key of the value.
+     * @param data    value to store.
+     * @param written time the value was created, returned along with it.
+     * @return Whether the value was stored, which is not the case if it is larger than the store.
+     */
+    public synchronized boolean put(String key, byte[] data, long written) {
+        remove(key);
+
+        int needed = (data.length + blockSize - 1) / blockSize;
+        if (needed > maximumBlocks) {
+            return false;
+        }
+
+        Iterator<Value> eldest = values.values().iterator();
+        while (freeBlockCount + maximumBlocks - allocatedBlocks < needed) {
+            release(eldest.next());
+            eldest.remove();
+        }
+
+        int[] blocks = new int[needed];
+        for (int i = 0; i < needed; i++) {
+            int block = allocateBlock();
+            int offset = i * blockSize;
+            int length = Math.min(blockSize, data.length - offset);
+
+            ByteBuffer slab = slabs.get(block / blocksPerSlab);
+            slab.position((block % blocksPerSlab) * blockSize);
+            slab.put(data, offset, length);
+
+            blocks[i] = block;
+        }
+
+        values.put(key, new Value(blocks, data.length, written));
+        return true;
+    }
+
+    /**
+     * Removes a value, and returns it.
+     *
+     * @param key key of the value.
+     * @return The value, or {@code null} if not stored.
+     */
+    public synchronized Value take(String key) {
+        Value value = values.remove(key);
+        if (value == null) {
+            return null;
+        }
+
+        byte[] data = new byte[value.length];
+        for (int i = 0; i < value.blocks.length; i++) {
+            int block = value.blocks[i];
+            int offset = i * blockSize;
+
+            ByteBuffer slab = slabs.get(block / blocksPerSlab);
+            slab.position((block % blocksPerSlab) * blockSize);
+            slab.get(data, offset, Math.min(blockSize, data.length - offset));
+        }
+
+        release(value);
+        value.data = data;
+        return value;
+    }
+
+    public synchronized void remove(String key) {
+        Value value = values.remove(key);
+        if (value != null) {
+            release(value);
+        }
+    }
+
+    /**
+     * Removes all values, and releases the slabs.
+     */
+    public synchronized void clear() {
+        values.clear();
+        slabs.clear();
+        freeBlocks = new int[0];
+        freeBlockCount = 0;
+        allocatedBlocks = 0;
+    }
+
+    /**
+     * @return Number of stored values.
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * @return Number of bytes allocated outside the heap.
+     */
+    public synchronized long getAllocatedSize() {
+        return (long) allocatedBlocks * blockSize;
+    }
+
+    private int allocateBlock() {
+        if (freeBlockCount > 0) {
+            return freeBlocks[--freeBlockCount];
+        }
+
+        int count = Math.min(blocksPerSlab, maximumBlocks - allocatedBlocks);
+        slabs.add(ByteBuffer.allocateDirect(count * blockSize));
+
+        // Hand out the first block of the new slab, and keep the others as free blocks.
+        int first = allocatedBlocks;
+        ensureFreeCapacity(freeBlockCount + count - 1);
+        for (int block = first + count - 1; block > first; block--) {
+            freeBlocks[freeBlockCount++] = block;
+        }
+
+        allocatedBlocks += count;
+        return first;
+    }
+
+    private void release(Value value) {
+        ensureFreeCapacity(freeBlockCount + value.blocks.length);
+        for (int block : value.blocks) {
+            freeBlocks[freeBlockCount++] = block;
+        }
+    }
+
+    private void ensureFreeCapacity(int capacity) {
+        if (freeBlocks.length < capacity) {
+            int[] grown = new int[Math.max(capacity, 2 * freeBlocks.length)];
+            System.arraycopy(freeBlocks, 0, grown, 0, freeBlockCount);
+            freeBlocks = grown;
+        }
+    }
+
+    /**
+     * Value stored in the blocks of this store.
+     */
+    static final class Value {
+
+        private final int[] blocks;
+
+        private final int length;
+
+        private final long written;
+
+        private byte[] data;
+
+
+        private Value(int[] blocks, int length, long written) {
+            this.blocks = blocks;
+            this.length = length;
+            this.written = written;
+        }
+
+        /**
+         * @return The stored bytes, only available for values returned by {@link #take(String)}.
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+    }
+}
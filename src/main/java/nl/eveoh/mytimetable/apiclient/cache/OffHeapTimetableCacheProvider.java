@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TimetableCacheProvider} which keeps the events of recently active users in local memory, and those of other
+ * users compressed outside the Java heap.
+ * <p/>
+ * Most users only look at their timetable a few times a week. Their events are moved to the off-heap tier when they
+ * are evicted from the on-heap tier, so the heap only holds the working set and the garbage collector does not have
+ * to trace the timetables of the whole population. Events in the off-heap tier are encoded in a compact binary form,
+ * compressed, and stored in direct memory with its own limit. They are moved back to the heap when accessed. When
+ * the off-heap tier is full, the users that were moved to it the longest ago are evicted.
+ * <p/>
+ * Events expire a fixed time after they were stored, regardless of the tier they are in. Moving events to the
+ * off-heap tier happens in the thread causing the eviction from the heap.
+ */
+public class OffHeapTimetableCacheProvider implements TimetableCacheProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapTimetableCacheProvider.class);
+
+    private static final int BLOCK_SIZE = 256;
+
+    private final long timeToLive;
+
+    private final OffHeapBlockStore offHeap;
+
+    private final Cache<String, Entry> heap;
+
+
+    /**
+     * @param timeToLive         time the events of a user are cached, in milliseconds.
+     * @param maximumHeapSize    maximum number of users cached on the heap.
+     * @param maximumOffHeapSize maximum number of bytes used outside the heap, at least 256.
+     */
+    public OffHeapTimetableCacheProvider(long timeToLive, int maximumHeapSize, long maximumOffHeapSize) {
+        this.timeToLive = timeToLive;
+        this.offHeap = new OffHeapBlockStore(maximumOffHeapSize, BLOCK_SIZE);
+        this.heap = CacheBuilder.newBuilder()
+                .expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+                .maximumSize(maximumHeapSize)
+                .removalListener(new RemovalListener<String, Entry>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, Entry> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            moveOffHeap(notification.getKey(), notification.getValue());
+                        }
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public List<Event> get(String key) {
+        long now = System.currentTimeMillis();
+
+        Entry entry = heap.getIfPresent(key);
+        if (entry != null) {
+            if (isExpired(entry.written, now)) {
+                heap.invalidate(key);
+                return null;
+            }
+
+            return entry.events;
+        }
+
+        OffHeapBlockStore.Value value = offHeap.take(key);
+        if (value == null || isExpired(value.getWritten(), now)) {
+            return null;
+        }
+
+        List<Event> events;
+        try {
+            events = EventCodec.decode(value.getData());
+        } catch (IOException e) {
+            log.warn("Could not decode off-heap cached events.", e);
+            return null;
+        }
+
+        heap.put(key, new Entry(events, value.getWritten()));
+        return events;
+    }
+
+    @Override
+    public void put(String key, List<Event> events) {
+        offHeap.remove(key);
+        heap.put(key, new Entry(events, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void invalidate(String key) {
+        heap.invalidate(key);
+        offHeap.remove(key);
+    }
+
+    /**
+     * Clears both tiers, and releases the off-heap memory.
+     */
+    @Override
+    public void close() {
+        heap.invalidateAll();
+        offHeap.clear();
+    }
+
+    /**
+     * @return Number of users cached outside the heap.
+     */
+    public int getOffHeapUserCount() {
+        return offHeap.size();
+    }
+
+    /**
+     * @return Number of bytes currently allocated outside the heap.
+     */
+    public long getOffHeapSize() {
+        return offHeap.getAllocatedSize();
+    }
+
+    private void moveOffHeap(String key, Entry entry) {
+        if (isExpired(entry.written, System.currentTimeMillis())) {
+            return;
+        }
+
+        try {
+            if (!offHeap.put(key, EventCodec.encode(entry.events), entry.written)) {
+                log.debug("Events of {} are too large for the off-heap cache.", key);
+            }
+        } catch (IOException e) {
+            log.debug("Could not encode events for the off-heap cache.", e);
+        }
+    }
+
+    private boolean isExpired(long written, long now) {
+        return now - written >= timeToLive;
+    }
+
+    private static final class Entry {
+
+        private final List<Event> events;
+
+        /**
+         * Time the events were stored, which is kept when they move between the tiers.
+         */
+        private final long written;
+
+
+        private Entry(List<Event> events, long written) {
+            this.events = events;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link TimetableCacheProvider} which shares cached events between the nodes of a cluster, over plain TCP.
+ * <p/>
+ * Every user is owned by one node, chosen with a {@link ConsistentHashRing} over the addresses of all nodes. Only the
+ * owner caches the events of a user; other nodes ask the owner before calling the MyTimetable API, and send the events
+ * they fetched to the owner. With <tt>n</tt> nodes, each user's timetable is therefore fetched about once instead of
+ * <tt>n</tt> times. An unreachable owner is treated as a cache miss.
+ * <p/>
+ * Nodes are placed on the ring by their IP address and port, e.g. <tt>10.0.0.1:7600</tt>, so all nodes agree on the
+ * owner of a user, whether they were configured with host names or IP addresses. Connections to other nodes are kept
+ * open, and reused for later requests.
+ * <p/>
+ * All nodes must be configured with the same list of addresses. Connections from other addresses are rejected, but the
+ * protocol is not encrypted, so the peer port should only be reachable from the other nodes. The number of accepted
+ * connections is limited, see {@link #setMaxAcceptedConnections(int)}. Several instances can run in a single JVM, on
+ * different ports, e.g. for testing.
+ */
+public class PeerTimetableCacheProvider implements TimetableCacheProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerTimetableCacheProvider.class);
+
+    private static final byte OP_GET = 'G';
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_INVALIDATE = 'I';
+
+    private static final byte STATUS_MISS = 0;
+    private static final byte STATUS_OK = 1;
+
+    /**
+     * Maximum size of a serialized list of events, to protect against garbage on the peer port.
+     */
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+    private static final int VIRTUAL_NODE_COUNT = 100;
+
+    private static final int DEFAULT_MAX_ACCEPTED_CONNECTIONS = 64;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final JavaType EVENT_LIST_TYPE =
+            mapper.getTypeFactory().constructCollectionType(List.class, Event.class);
+
+    static {
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private final String self;
+
+    private final InetSocketAddress selfAddress;
+
+    /**
+     * Addresses of all nodes, by their position on the ring.
+     */
+    private final Map<String, InetSocketAddress> nodes = new LinkedHashMap<String, InetSocketAddress>();
+
+    private final ConsistentHashRing<String> ring;
+
+    private final LocalTimetableCacheProvider local;
+
+    /**
+     * IP addresses of all nodes, from which connections are accepted.
+     */
+    private final Set<InetAddress> nodeAddresses = new HashSet<InetAddress>();
+
+    /**
+     * Runs a thread for each accepted connection. Connections are rejected when all threads are in use.
+     */
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, DEFAULT_MAX_ACCEPTED_CONNECTIONS,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("mytimetable-cache-peer-%d").setDaemon(true).build());
+
+    /**
+     * Open connections to other nodes which are not in use, most recently used first.
+     */
+    private final Map<String, BlockingDeque<PeerConnection>> idleConnections =
+            new ConcurrentHashMap<String, BlockingDeque<PeerConnection>>();
+
+    /**
+     * Connections accepted from other nodes, which are closed when this provider is closed.
+     */
+    private final Set<Socket> acceptedConnections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private final AtomicInteger acceptedConnectionCount = new AtomicInteger();
+
+    private int connectTimeout = 200;
+
+    private int readTimeout = 1000;
+
+    private int idleTimeout = 30000;
+
+    private int maxIdleConnections = 4;
+
+    private volatile ServerSocket serverSocket;
+
+    private volatile boolean closed;
+
+
+    /**
+     * @param self        address this node listens on, which must be one of <tt>nodes</tt>.
+     * @param nodes       addresses of all nodes in the cluster, including this node.
+     * @param timeToLive  time the events of a user are cached by their owner, in milliseconds.
+     * @param maximumSize maximum number of users cached by this node.
+     */
+    public PeerTimetableCacheProvider(InetSocketAddress self, List<InetSocketAddress> nodes, long timeToLive,
+                                      int maximumSize) {
+        for (InetSocketAddress node : nodes) {
+            this.nodes.put(getNodeKey(node), node);
+
+            if (node.getAddress() != null) {
+                nodeAddresses.add(node.getAddress());
+            }
+        }
+
+        this.self = getNodeKey(self);
+        if (!this.nodes.containsKey(this.self)) {
+            throw new IllegalArgumentException("The address of this node must be one of the cluster nodes.");
+        }
+
+        this.selfAddress = self;
+        this.ring = new ConsistentHashRing<String>(this.nodes.keySet(), VIRTUAL_NODE_COUNT);
+        this.local = new LocalTimetableCacheProvider(timeToLive, maximumSize);
+    }
+
+    /**
+     * Starts listening for requests of the other nodes.
+     *
+     * @throws IOException when the server socket could not be bound.
+     */
+    public void start() throws IOException {
+        final ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(selfAddress);
+        serverSocket = socket;
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(socket);
+            }
+        }, "mytimetable-cache-peer-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        log.info("Listening for cache peers on {}.", self);
+    }
+
+    @Override
+    public List<Event> get(String key) {
+        String owner = ring.get(key);
+        if (self.equals(owner)) {
+            return local.get(key);
+        }
+
+        try {
+            byte[] payload = send(owner, OP_GET, key, null);
+            return payload != null ? mapper.<List<Event>>readValue(payload, EVENT_LIST_TYPE) : null;
+        } catch (IOException e) {
+            log.debug("Could not get cached events from peer " + owner + ".", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, List<Event> events) {
+        String owner = ring.get(key);
+        if (self.equals(owner)) {
+            local.put(key, events);
+            return;
+        }
+
+        try {
+            send(owner, OP_PUT, key, mapper.writeValueAsBytes(events));
+        } catch (IOException e) {
+            log.debug("Could not send events to peer " + owner + ".", e);
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        String owner = ring.get(key);
+        if (self.equals(owner)) {
+            local.invalidate(key);
+            return;
+        }
+
+        try {
+            send(owner, OP_INVALIDATE, key, null);
+        } catch (IOException e) {
+            log.debug("Could not invalidate cached events on peer " + owner + ".", e);
+        }
+    }
+
+    /**
+     * Stops listening for requests, closes all connections, and clears the locally cached events.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.warn("Could not close cache peer socket.", e);
+            }
+        }
+
+        for (Socket connection : acceptedConnections) {
+            closeQuietly(connection);
+        }
+
+        for (BlockingDeque<PeerConnection> connections : idleConnections.values()) {
+            PeerConnection connection;
+            while ((connection = connections.pollFirst()) != null) {
+                closeQuietly(connection.socket);
+            }
+        }
+
+        executor.shutdownNow();
+        local.close();
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @param idleTimeout time after which a connection which is not used is closed, in milliseconds. Must be equal on
+     *                    all nodes.
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @param maxIdleConnections maximum number of unused connections kept open to each other node.
+     */
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    /**
+     * @param maxAcceptedConnections maximum number of connections from other nodes handled at the same time. Each
+     *                               connection uses a thread. Defaults to 64.
+     */
+    public void setMaxAcceptedConnections(int maxAcceptedConnections) {
+        executor.setMaximumPoolSize(maxAcceptedConnections);
+    }
+
+    /**
+     * @return The number of connections accepted from other nodes since this provider was started.
+     */
+    int getAcceptedConnectionCount() {
+        return acceptedConnectionCount.get();
+    }
+
+    /**
+     * Returns the identifier of a node on the ring. The host is identified by its IP address if it could be resolved,
+     * so all nodes place a node at the same positions, regardless of how its address was configured.
+     *
+     * @return Identifier in the form <tt>host:port</tt>, e.g. <tt>10.0.0.1:7600</tt> or <tt>[::1]:7600</tt>.
+     */
+    static String getNodeKey(InetSocketAddress address) {
+        InetAddress inetAddress = address.getAddress();
+
+        String host;
+        if (inetAddress == null) {
+            host = address.getHostName().toLowerCase(Locale.ENGLISH);
+        } else if (inetAddress instanceof Inet6Address) {
+            host = '[' + inetAddress.getHostAddress() + ']';
+        } else {
+            host = inetAddress.getHostAddress();
+        }
+
+        return host + ':' + address.getPort();
+    }
+
+    /**
+     * Sends a request to another node, over an idle connection if one is available. When a request over an idle
+     * connection fails, it is retried once over a new connection, as the other node may have closed the connection in
+     * the meantime. All requests are idempotent, so they can safely be retried.
+     *
+     * @param payload payload to send with the request, or {@code null} to send none.
+     * @return The payload of the response, or {@code null} if the response has no payload.
+     */
+    private byte[] send(String peer, byte op, String key, byte[] payload) throws IOException {
+        PeerConnection connection = pollIdleConnection(peer);
+        if (connection != null) {
+            try {
+                return send(peer, connection, op, key, payload);
+            } catch (IOException e) {
+                log.debug("Idle connection to cache peer {} failed, retrying over a new connection.", peer);
+            }
+        }
+
+        return send(peer, connect(peer), op, key, payload);
+    }
+
+    private byte[] send(String peer, PeerConnection connection, byte op, String key, byte[] payload)
+            throws IOException {
+        boolean completed = false;
+        try {
+            connection.out.writeByte(op);
+            connection.out.writeUTF(key);
+            if (payload != null) {
+                connection.out.writeInt(payload.length);
+                connection.out.write(payload);
+            }
+            connection.out.flush();
+
+            byte status = connection.in.readByte();
+            byte[] ret = op == OP_GET && status == STATUS_OK ? readPayload(connection.in) : null;
+
+            completed = true;
+            return ret;
+        } finally {
+            if (completed) {
+                releaseConnection(peer, connection);
+            } else {
+                closeQuietly(connection.socket);
+            }
+        }
+    }
+
+    /**
+     * @return The most recently used idle connection to the given node, or {@code null} if there is none which is
+     *         expected to be still open.
+     */
+    private PeerConnection pollIdleConnection(String peer) {
+        BlockingDeque<PeerConnection> connections = idleConnections.get(peer);
+        if (connections == null) {
+            return null;
+        }
+
+        // Discard connections which the other node may be about to close.
+        long idleSince = System.currentTimeMillis() - idleTimeout / 2;
+
+        PeerConnection connection;
+        while ((connection = connections.pollFirst()) != null) {
+            if (connection.lastUsed >= idleSince) {
+                return connection;
+            }
+
+            closeQuietly(connection.socket);
+        }
+
+        return null;
+    }
+
+    private void releaseConnection(String peer, PeerConnection connection) {
+        connection.lastUsed = System.currentTimeMillis();
+
+        BlockingDeque<PeerConnection> connections = idleConnections.get(peer);
+        if (connections == null) {
+            synchronized (idleConnections) {
+                connections = idleConnections.get(peer);
+                if (connections == null) {
+                    connections = new LinkedBlockingDeque<PeerConnection>(Math.max(maxIdleConnections, 1));
+                    idleConnections.put(peer, connections);
+                }
+            }
+        }
+
+        if (closed || maxIdleConnections <= 0 || !connections.offerFirst(connection)) {
+            closeQuietly(connection.socket);
+        }
+    }
+
+    private PeerConnection connect(String peer) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeout);
+            socket.connect(nodes.get(peer), connectTimeout);
+            return new PeerConnection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void acceptConnections(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try {
+                final Socket connection = socket.accept();
+
+                if (!nodeAddresses.contains(connection.getInetAddress())) {
+                    log.warn("Rejected cache peer connection from {}, which is not a cluster node.",
+                            connection.getRemoteSocketAddress());
+                    closeQuietly(connection);
+                    continue;
+                }
+
+                acceptedConnectionCount.incrementAndGet();
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            handle(connection);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The other node treats this as a cache miss.
+                    log.warn("Rejected cache peer connection from {}, too many connections.",
+                            connection.getRemoteSocketAddress());
+                    closeQuietly(connection);
+                }
+            } catch (SocketException e) {
+                // Socket was closed.
+            } catch (IOException e) {
+                log.warn("Could not accept cache peer connection.", e);
+            }
+        }
+    }
+
+    /**
+     * Handles the requests sent over a connection, until the other node closes it or it is idle for too long.
+     */
+    private void handle(Socket connection) {
+        acceptedConnections.add(connection);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            while (!closed) {
+                connection.setSoTimeout(idleTimeout);
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+
+                connection.setSoTimeout(readTimeout);
+                if (!handle(connection, (byte) op, in, out)) {
+                    break;
+                }
+
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.debug("Error while handling cache peer request.", e);
+        } finally {
+            acceptedConnections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * @return Whether the request was handled, so the connection can be used for the next request.
+     */
+    private boolean handle(Socket connection, byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        String key = in.readUTF();
+
+        if (op == OP_GET) {
+            List<Event> events = local.get(key);
+
+            if (events == null) {
+                out.writeByte(STATUS_MISS);
+            } else {
+                byte[] payload = mapper.writeValueAsBytes(events);
+                out.writeByte(STATUS_OK);
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        } else if (op == OP_PUT) {
+            List<Event> events = mapper.readValue(readPayload(in), EVENT_LIST_TYPE);
+            local.put(key, events);
+            out.writeByte(STATUS_OK);
+        } else if (op == OP_INVALIDATE) {
+            local.invalidate(key);
+            out.writeByte(STATUS_OK);
+        } else {
+            log.warn("Unknown cache peer operation {} from {}.", op, connection.getRemoteSocketAddress());
+            return false;
+        }
+
+        return true;
+    }
+
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+            throw new IOException("Invalid payload size " + length + ".");
+        }
+
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Could not close cache peer connection.", e);
+        }
+    }
+
+    /**
+     * Connection to another node, with its streams.
+     */
+    private static final class PeerConnection {
+
+        private final Socket socket;
+
+        private final DataInputStream in;
+
+        private final DataOutputStream out;
+
+        private volatile long lastUsed;
+
+
+        private PeerConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+}
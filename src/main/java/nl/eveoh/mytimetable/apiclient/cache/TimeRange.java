@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import java.util.Date;
+
+/**
+ * Half-open time range <tt>[start, end)</tt>, in milliseconds since the epoch.
+ */
+public final class TimeRange {
+
+    private final long start;
+
+    private final long end;
+
+
+    public TimeRange(long start, long end) {
+        if (end < start) {
+            throw new IllegalArgumentException("End of range cannot be before its start.");
+        }
+
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public Date getStartDate() {
+        return new Date(start);
+    }
+
+    public Date getEndDate() {
+        return new Date(end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TimeRange other = (TimeRange) o;
+        return start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (start ^ (start >>> 32)) + (int) (end ^ (end >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ")";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Cache for the upcoming events of users, which may be shared with other application nodes.
+ * <p/>
+ * The service consults the provider before calling the MyTimetable API, and stores the fetched events in it
+ * afterwards. Implementations decide where the events are stored and for how long, e.g. in local memory
+ * ({@link LocalTimetableCacheProvider}) or on the peer node owning the user ({@link PeerTimetableCacheProvider}).
+ * <p/>
+ * Implementations must be thread-safe, and should treat failures as cache misses instead of throwing exceptions.
+ */
+public interface TimetableCacheProvider extends Closeable {
+
+    /**
+     * @param key cache key of the user, which includes the locale.
+     * @return The cached events, or {@code null} if not cached.
+     */
+    public List<Event> get(String key);
+
+    /**
+     * @param key    cache key of the user, which includes the locale.
+     * @param events events to cache.
+     */
+    public void put(String key, List<Event> events);
+
+    /**
+     * @param key cache key of the user, which includes the locale.
+     */
+    public void invalidate(String key);
+
+    /**
+     * Releases the resources held by this provider.
+     */
+    @Override
+    public void close();
+}
@@ -22,11 +22,16 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
 /**
  * Generic Configuration object.
+ * <p/>
+ * Configuration objects are mutable, so they can be edited in e.g. an admin UI. Services use an immutable copy,
+ * created using {@link #snapshot()}, so each request sees a consistent configuration, even when the original object
+ * is being modified concurrently.
  *
  * @author Marco Krikke
  * @author Erik van Paassen
@@ -38,7 +43,17 @@ public class Configuration {
     private static final String API_SSL_CN_CHECK = "apiSslCnCheck";
     private static final String API_CONNECT_TIMEOUT = "apiConnectTimeout";
     private static final String API_SOCKET_TIMEOUT = "apiSocketTimeout";
+    private static final String API_ADAPTIVE_TIMEOUT_FACTOR = "apiAdaptiveTimeoutFactor";
+    private static final String API_ADAPTIVE_TIMEOUT_MIN = "apiAdaptiveTimeoutMin";
     private static final String API_MAX_CONNECTIONS = "apiMaxConnections";
+    private static final String API_RESERVED_CONNECTIONS = "apiReservedConnections";
+    private static final String API_DNS_CACHE_TIME_TO_LIVE = "apiDnsCacheTimeToLive";
+    private static final String API_HEDGE_DELAY = "apiHedgeDelay";
+    private static final String API_ENDPOINT_AFFINITY = "apiEndpointAffinity";
+    private static final String API_MAX_RETRIES = "apiMaxRetries";
+    private static final String API_RETRY_BASE_DELAY = "apiRetryBaseDelay";
+    private static final String API_RETRY_MAX_DELAY = "apiRetryMaxDelay";
+    private static final String API_RETRY_BUDGET_PERCENTAGE = "apiRetryBudgetPercentage";
     private static final String APPLICATION_URI = "applicationUri";
     private static final String APPLICATION_TARGET = "applicationTarget";
     private static final String USERNAME_DOMAIN_PREFIX = "usernameDomainPrefix";
@@ -48,6 +63,10 @@ public class Configuration {
     private static final String TIMETABLE_TYPES = "timetableTypes";
     private static final String SHOW_ACTIVITY_TYPES = "showActivityType";
     private static final String UNKNOWN_LOCATION_DESCRIPTION = "unknownLocationDescription";
+    private static final String EVENT_CACHE_TIME_TO_LIVE = "eventCacheTimeToLive";
+    private static final String EVENT_CACHE_MAX_EVENTS = "eventCacheMaxEvents";
+    private static final String NEGATIVE_CACHE_TIME_TO_LIVE = "negativeCacheTimeToLive";
+    private static final String PREFETCH_REQUESTS_PER_MINUTE = "prefetchRequestsPerMinute";
 
     private static final String[] DEFAULT_TIMETABLE_TYPES =
             new String[] { "module", "pos", "posgroup", "studentsetgroup", "posss", "student", "staff", "activitygroup",
@@ -88,11 +107,101 @@ public class Configuration {
      */
     private int apiSocketTimeout = 10000;
 
+    /**
+     * When set, the socket timeout of a request is derived from the recent response times of the API host: the 99th
+     * percentile multiplied by this factor, between <tt>apiAdaptiveTimeoutMin</tt> and <tt>apiSocketTimeout</tt>. An
+     * abnormally slow endpoint is then failed over from early. The last endpoint to try always uses
+     * <tt>apiSocketTimeout</tt>, so slow but legitimate responses still succeed. With a single endpoint, this setting
+     * therefore has no effect. Set to 0 to always use <tt>apiSocketTimeout</tt>.
+     * <p/>
+     * The response time is the time from sending a request until its response headers are received. Waiting for a
+     * pooled connection and connecting do not count. It is only measured by HttpClients built by
+     * {@link nl.eveoh.mytimetable.apiclient.service.MyTimetableHttpClientBuilderImpl} and its subclasses.
+     * <p/>
+     * Defaults to 0.
+     */
+    private int apiAdaptiveTimeoutFactor = 0;
+
+    /**
+     * Minimum socket timeout when adaptive timeouts are enabled, in milliseconds.
+     * <p/>
+     * Defaults to 1000 (1 second).
+     */
+    private int apiAdaptiveTimeoutMin = 1000;
+
     /**
      * Maximum number of concurrent connections in the MyTimetable API connection pool.
      */
     private int apiMaxConnections = 20;
 
+    /**
+     * Number of the <tt>apiMaxConnections</tt> connections which background requests may not use, so they remain
+     * available to interactive requests. See {@link nl.eveoh.mytimetable.apiclient.service.RequestPriority}.
+     * <p/>
+     * Defaults to 0 (background requests may use all connections).
+     */
+    private int apiReservedConnections = 0;
+
+    /**
+     * Time the resolved addresses of the API hosts are cached, in seconds. Addresses are refreshed in the background
+     * before they expire, and new connections are spread over all addresses of a host. Set to 0 to use the system
+     * resolver for every new connection. Hosts which could not be resolved are cached briefly as well, so requests fail
+     * fast during a DNS outage.
+     * <p/>
+     * Defaults to 0 (disabled).
+     */
+    private int apiDnsCacheTimeToLive = 0;
+
+    /**
+     * Time to wait for a response from an API endpoint before sending the same request to the next endpoint as well,
+     * in milliseconds. The first successful response is used. Set to 0 to only fail over after an error.
+     * <p/>
+     * Defaults to 0.
+     */
+    private int apiHedgeDelay = 0;
+
+    /**
+     * Whether each user is sent to a preferred API endpoint, so the caches of the endpoints are used efficiently. The
+     * endpoint is chosen by consistent hashing of the username, and the other endpoints are used for failover in ring
+     * order. When an endpoint is removed, only its users move to other endpoints. Endpoints handling much more than
+     * their share of the requests in progress are skipped. When disabled, the endpoints are used in the configured
+     * order.
+     * <p/>
+     * Defaults to false.
+     */
+    private boolean apiEndpointAffinity = false;
+
+    /**
+     * Maximum number of times a request to an API endpoint is retried after a transient failure (such as a reset
+     * connection or an HTTP 503 response), before failing over to the next endpoint.
+     * <p/>
+     * Defaults to 1.
+     */
+    private int apiMaxRetries = 1;
+
+    /**
+     * Base delay before retrying a request, in milliseconds. The delay doubles with every retry, and a random part of
+     * it is used.
+     * <p/>
+     * Defaults to 50.
+     */
+    private int apiRetryBaseDelay = 50;
+
+    /**
+     * Maximum delay before retrying a request, in milliseconds.
+     * <p/>
+     * Defaults to 1000 (1 second).
+     */
+    private int apiRetryMaxDelay = 1000;
+
+    /**
+     * Maximum number of retries, as a percentage of the number of requests. Prevents retry storms when the API is
+     * overloaded.
+     * <p/>
+     * Defaults to 10.
+     */
+    private int apiRetryBudgetPercentage = 10;
+
     /**
      * URL to the full MyTimetable application.
      * <p/>
@@ -156,11 +265,95 @@ public class Configuration {
      */
     private String unknownLocationDescription;
 
+    /**
+     * Time the events fetched using {@code getUpcomingEvents} and {@code getEvents} are cached, in seconds. Cached
+     * upcoming events may be outdated by up to this time. Set to 0 to disable the cache.
+     * <p/>
+     * Defaults to 0 (disabled).
+     */
+    private int eventCacheTimeToLive = 0;
+
+    /**
+     * Maximum number of events kept in the event cache, over all users.
+     * <p/>
+     * Defaults to 100000.
+     */
+    private int eventCacheMaxEvents = 100000;
+
+    /**
+     * Time a user which is unknown to MyTimetable (HTTP 404) is remembered as such, in seconds. Requests for these
+     * users are not sent to the API again until this time has passed. Set to 0 to disable.
+     * <p/>
+     * Defaults to 60 (1 minute).
+     */
+    private int negativeCacheTimeToLive = 60;
+
+    /**
+     * Maximum number of API requests per minute used to refresh the upcoming events of users shortly before they are
+     * expected to visit, based on their earlier visits and timetables. Set to 0 to disable prefetching.
+     * <p/>
+     * Defaults to 0.
+     */
+    private int prefetchRequestsPerMinute = 0;
+
+    /**
+     * Whether this object is an immutable snapshot, see {@link #snapshot()}.
+     */
+    private final boolean immutable;
+
     public Configuration() {
         timetableTypes = new ArrayList<String>(Arrays.asList(DEFAULT_TIMETABLE_TYPES));
+        immutable = false;
+    }
+
+    /**
+     * Creates a mutable copy of the given configuration.
+     */
+    public Configuration(Configuration other) {
+        this(other, false);
+    }
+
+    protected Configuration(Configuration other, boolean immutable) {
+        this.immutable = immutable;
+
+        apiKey = other.apiKey;
+        apiEndpointUris = new ArrayList<String>(other.apiEndpointUris);
+        apiSslCnCheck = other.apiSslCnCheck;
+        apiConnectTimeout = other.apiConnectTimeout;
+        apiSocketTimeout = other.apiSocketTimeout;
+        apiAdaptiveTimeoutFactor = other.apiAdaptiveTimeoutFactor;
+        apiAdaptiveTimeoutMin = other.apiAdaptiveTimeoutMin;
+        apiMaxConnections = other.apiMaxConnections;
+        apiReservedConnections = other.apiReservedConnections;
+        apiDnsCacheTimeToLive = other.apiDnsCacheTimeToLive;
+        apiHedgeDelay = other.apiHedgeDelay;
+        apiEndpointAffinity = other.apiEndpointAffinity;
+        apiMaxRetries = other.apiMaxRetries;
+        apiRetryBaseDelay = other.apiRetryBaseDelay;
+        apiRetryMaxDelay = other.apiRetryMaxDelay;
+        apiRetryBudgetPercentage = other.apiRetryBudgetPercentage;
+        applicationUri = other.applicationUri;
+        applicationTarget = other.applicationTarget;
+        maxNumberOfEvents = other.maxNumberOfEvents;
+        defaultNumberOfEvents = other.defaultNumberOfEvents;
+        usernameDomainPrefix = other.usernameDomainPrefix;
+        usernamePostfix = other.usernamePostfix;
+        timetableTypes = new ArrayList<String>(other.timetableTypes);
+        showActivityType = other.showActivityType;
+        unknownLocationDescription = other.unknownLocationDescription;
+        eventCacheTimeToLive = other.eventCacheTimeToLive;
+        eventCacheMaxEvents = other.eventCacheMaxEvents;
+        negativeCacheTimeToLive = other.negativeCacheTimeToLive;
+        prefetchRequestsPerMinute = other.prefetchRequestsPerMinute;
+
+        if (immutable) {
+            apiEndpointUris = Collections.unmodifiableList(apiEndpointUris);
+        }
     }
 
     public Configuration(Properties properties) {
+        immutable = false;
+
         apiKey = properties.getProperty(API_KEY);
 
         String uris = properties.getProperty(API_ENDPOINT_URIS);
@@ -184,10 +377,48 @@ public Configuration(Properties properties) {
             apiSocketTimeout = Integer.parseInt(properties.getProperty(API_SOCKET_TIMEOUT));
         } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
 
+        try {
+            apiAdaptiveTimeoutFactor = Integer.parseInt(properties.getProperty(API_ADAPTIVE_TIMEOUT_FACTOR));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            apiAdaptiveTimeoutMin = Integer.parseInt(properties.getProperty(API_ADAPTIVE_TIMEOUT_MIN));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
         try {
             apiMaxConnections = Integer.parseInt(properties.getProperty(API_MAX_CONNECTIONS));
         } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
 
+        try {
+            apiReservedConnections = Integer.parseInt(properties.getProperty(API_RESERVED_CONNECTIONS));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            apiDnsCacheTimeToLive = Integer.parseInt(properties.getProperty(API_DNS_CACHE_TIME_TO_LIVE));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            apiHedgeDelay = Integer.parseInt(properties.getProperty(API_HEDGE_DELAY));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        apiEndpointAffinity = Boolean.parseBoolean(properties.getProperty(API_ENDPOINT_AFFINITY));
+
+        try {
+            apiMaxRetries = Integer.parseInt(properties.getProperty(API_MAX_RETRIES));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            apiRetryBaseDelay = Integer.parseInt(properties.getProperty(API_RETRY_BASE_DELAY));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            apiRetryMaxDelay = Integer.parseInt(properties.getProperty(API_RETRY_MAX_DELAY));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            apiRetryBudgetPercentage = Integer.parseInt(properties.getProperty(API_RETRY_BUDGET_PERCENTAGE));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
         applicationUri = properties.getProperty(APPLICATION_URI);
         applicationTarget = properties.getProperty(APPLICATION_TARGET);
         usernameDomainPrefix = properties.getProperty(USERNAME_DOMAIN_PREFIX);
@@ -211,6 +442,22 @@ public Configuration(Properties properties) {
         showActivityType = Boolean.parseBoolean(properties.getProperty(SHOW_ACTIVITY_TYPES));
 
         unknownLocationDescription = properties.getProperty(UNKNOWN_LOCATION_DESCRIPTION);
+
+        try {
+            eventCacheTimeToLive = Integer.parseInt(properties.getProperty(EVENT_CACHE_TIME_TO_LIVE));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            eventCacheMaxEvents = Integer.parseInt(properties.getProperty(EVENT_CACHE_MAX_EVENTS));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            negativeCacheTimeToLive = Integer.parseInt(properties.getProperty(NEGATIVE_CACHE_TIME_TO_LIVE));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
+
+        try {
+            prefetchRequestsPerMinute = Integer.parseInt(properties.getProperty(PREFETCH_REQUESTS_PER_MINUTE));
+        } catch (NumberFormatException e) { /* Do nothing, keep default value. */ }
     }
 
 
@@ -219,6 +466,7 @@ public String getApiKey() {
     }
 
     public void setApiKey(String apiKey) {
+        checkMutable();
         this.apiKey = apiKey;
     }
 
@@ -227,6 +475,7 @@ public List<String> getApiEndpointUris() {
     }
 
     public void setApiEndpointUris(List<String> apiEndpointUris) {
+        checkMutable();
         this.apiEndpointUris = apiEndpointUris;
     }
 
@@ -235,6 +484,7 @@ public boolean isApiSslCnCheck() {
     }
 
     public void setApiSslCnCheck(boolean apiSslCnCheck) {
+        checkMutable();
         this.apiSslCnCheck = apiSslCnCheck;
     }
 
@@ -243,6 +493,7 @@ public int getApiConnectTimeout() {
     }
 
     public void setApiConnectTimeout(int apiConnectTimeout) {
+        checkMutable();
         this.apiConnectTimeout = apiConnectTimeout;
     }
 
@@ -251,22 +502,115 @@ public int getApiSocketTimeout() {
     }
 
     public void setApiSocketTimeout(int apiSocketTimeout) {
+        checkMutable();
         this.apiSocketTimeout = apiSocketTimeout;
     }
 
+    public int getApiAdaptiveTimeoutFactor() {
+        return apiAdaptiveTimeoutFactor;
+    }
+
+    public void setApiAdaptiveTimeoutFactor(int apiAdaptiveTimeoutFactor) {
+        checkMutable();
+        this.apiAdaptiveTimeoutFactor = apiAdaptiveTimeoutFactor;
+    }
+
+    public int getApiAdaptiveTimeoutMin() {
+        return apiAdaptiveTimeoutMin;
+    }
+
+    public void setApiAdaptiveTimeoutMin(int apiAdaptiveTimeoutMin) {
+        checkMutable();
+        this.apiAdaptiveTimeoutMin = apiAdaptiveTimeoutMin;
+    }
+
     public int getApiMaxConnections() {
         return apiMaxConnections;
     }
 
     public void setApiMaxConnections(int apiMaxConnections) {
+        checkMutable();
         this.apiMaxConnections = apiMaxConnections;
     }
 
+    public int getApiReservedConnections() {
+        return apiReservedConnections;
+    }
+
+    public void setApiReservedConnections(int apiReservedConnections) {
+        checkMutable();
+        this.apiReservedConnections = apiReservedConnections;
+    }
+
+    public int getApiDnsCacheTimeToLive() {
+        return apiDnsCacheTimeToLive;
+    }
+
+    public void setApiDnsCacheTimeToLive(int apiDnsCacheTimeToLive) {
+        checkMutable();
+        this.apiDnsCacheTimeToLive = apiDnsCacheTimeToLive;
+    }
+
+    public int getApiHedgeDelay() {
+        return apiHedgeDelay;
+    }
+
+    public void setApiHedgeDelay(int apiHedgeDelay) {
+        checkMutable();
+        this.apiHedgeDelay = apiHedgeDelay;
+    }
+
+    public boolean isApiEndpointAffinity() {
+        return apiEndpointAffinity;
+    }
+
+    public void setApiEndpointAffinity(boolean apiEndpointAffinity) {
+        checkMutable();
+        this.apiEndpointAffinity = apiEndpointAffinity;
+    }
+
+    public int getApiMaxRetries() {
+        return apiMaxRetries;
+    }
+
+    public void setApiMaxRetries(int apiMaxRetries) {
+        checkMutable();
+        this.apiMaxRetries = apiMaxRetries;
+    }
+
+    public int getApiRetryBaseDelay() {
+        return apiRetryBaseDelay;
+    }
+
+    public void setApiRetryBaseDelay(int apiRetryBaseDelay) {
+        checkMutable();
+        this.apiRetryBaseDelay = apiRetryBaseDelay;
+    }
+
+    public int getApiRetryMaxDelay() {
+        return apiRetryMaxDelay;
+    }
+
+    public void setApiRetryMaxDelay(int apiRetryMaxDelay) {
+        checkMutable();
+        this.apiRetryMaxDelay = apiRetryMaxDelay;
+    }
+
+    public int getApiRetryBudgetPercentage() {
+        return apiRetryBudgetPercentage;
+    }
+
+    public void setApiRetryBudgetPercentage(int apiRetryBudgetPercentage) {
+        checkMutable();
+        this.apiRetryBudgetPercentage = apiRetryBudgetPercentage;
+    }
+
     public String getApplicationUri() {
         return applicationUri;
     }
 
     public void setApplicationUri(String applicationUri) {
+        checkMutable();
         this.applicationUri = applicationUri;
     }
 
@@ -275,6 +619,7 @@ public String getApplicationTarget() {
     }
 
     public void setApplicationTarget(String applicationTarget) {
+        checkMutable();
         this.applicationTarget = applicationTarget;
     }
 
@@ -283,6 +628,7 @@ public int getMaxNumberOfEvents() {
     }
 
     public void setMaxNumberOfEvents(int maxNumberOfEvents) {
+        checkMutable();
         this.maxNumberOfEvents = maxNumberOfEvents;
     }
 
@@ -291,6 +637,7 @@ public int getDefaultNumberOfEvents() {
     }
 
     public void setDefaultNumberOfEvents(int defaultNumberOfEvents) {
+        checkMutable();
         this.defaultNumberOfEvents = defaultNumberOfEvents;
     }
 
@@ -299,6 +646,7 @@ public String getUsernameDomainPrefix() {
     }
 
     public void setUsernameDomainPrefix(String usernameDomainPrefix) {
+        checkMutable();
         this.usernameDomainPrefix = usernameDomainPrefix;
     }
 
@@ -307,11 +655,12 @@ public String getUsernamePostfix() {
     }
 
     public void setUsernamePostfix(String usernamePostfix) {
+        checkMutable();
         this.usernamePostfix = usernamePostfix;
     }
 
     public List<String> getTimetableTypes() {
-        return timetableTypes;
+        return immutable ? Collections.unmodifiableList(timetableTypes) : timetableTypes;
     }
 
     public boolean isShowActivityType() {
@@ -319,6 +668,7 @@ public boolean isShowActivityType() {
     }
 
     public void setShowActivityType(boolean showActivityType) {
+        checkMutable();
         this.showActivityType = showActivityType;
     }
 
@@ -327,9 +677,75 @@ public String getUnknownLocationDescription() {
     }
 
     public void setUnknownLocationDescription(String unknownLocationDescription) {
+        checkMutable();
         this.unknownLocationDescription = unknownLocationDescription;
     }
 
+    public int getEventCacheTimeToLive() {
+        return eventCacheTimeToLive;
+    }
+
+    public void setEventCacheTimeToLive(int eventCacheTimeToLive) {
+        checkMutable();
+        this.eventCacheTimeToLive = eventCacheTimeToLive;
+    }
+
+    public int getEventCacheMaxEvents() {
+        return eventCacheMaxEvents;
+    }
+
+    public void setEventCacheMaxEvents(int eventCacheMaxEvents) {
+        checkMutable();
+        this.eventCacheMaxEvents = eventCacheMaxEvents;
+    }
+
+    public int getNegativeCacheTimeToLive() {
+        return negativeCacheTimeToLive;
+    }
+
+    public void setNegativeCacheTimeToLive(int negativeCacheTimeToLive) {
+        checkMutable();
+        this.negativeCacheTimeToLive = negativeCacheTimeToLive;
+    }
+
+    public int getPrefetchRequestsPerMinute() {
+        return prefetchRequestsPerMinute;
+    }
+
+    public void setPrefetchRequestsPerMinute(int prefetchRequestsPerMinute) {
+        checkMutable();
+        this.prefetchRequestsPerMinute = prefetchRequestsPerMinute;
+    }
+
+    /**
+     * Returns an immutable copy of this configuration. All setters of the copy throw an
+     * {@link UnsupportedOperationException}, and its lists cannot be modified.
+     *
+     * @return Immutable copy, or this object if it is immutable already.
+     */
+    public Configuration snapshot() {
+        return immutable ? this : new Configuration(this, true);
+    }
+
+    /**
+     * Returns a mutable copy of this configuration, of the same class as this object.
+     *
+     * @return Mutable copy.
+     */
+    public Configuration copy() {
+        return new Configuration(this);
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    protected void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("Configuration snapshot cannot be modified.");
+        }
+    }
+
     /**
      * Creates a {@link Properties} object containing the configuration values.
      *
@@ -359,7 +775,17 @@ public Properties toProperties() {
         ret.setProperty(API_SSL_CN_CHECK, String.valueOf(apiSslCnCheck));
         ret.setProperty(API_CONNECT_TIMEOUT, String.valueOf(apiConnectTimeout));
         ret.setProperty(API_SOCKET_TIMEOUT, String.valueOf(apiSocketTimeout));
+        ret.setProperty(API_ADAPTIVE_TIMEOUT_FACTOR, String.valueOf(apiAdaptiveTimeoutFactor));
+        ret.setProperty(API_ADAPTIVE_TIMEOUT_MIN, String.valueOf(apiAdaptiveTimeoutMin));
         ret.setProperty(API_MAX_CONNECTIONS, String.valueOf(apiMaxConnections));
+        ret.setProperty(API_RESERVED_CONNECTIONS, String.valueOf(apiReservedConnections));
+        ret.setProperty(API_DNS_CACHE_TIME_TO_LIVE, String.valueOf(apiDnsCacheTimeToLive));
+        ret.setProperty(API_HEDGE_DELAY, String.valueOf(apiHedgeDelay));
+        ret.setProperty(API_ENDPOINT_AFFINITY, String.valueOf(apiEndpointAffinity));
+        ret.setProperty(API_MAX_RETRIES, String.valueOf(apiMaxRetries));
+        ret.setProperty(API_RETRY_BASE_DELAY, String.valueOf(apiRetryBaseDelay));
+        ret.setProperty(API_RETRY_MAX_DELAY, String.valueOf(apiRetryMaxDelay));
+        ret.setProperty(API_RETRY_BUDGET_PERCENTAGE, String.valueOf(apiRetryBudgetPercentage));
 
         ret.setProperty(SHOW_ACTIVITY_TYPES, String.valueOf(showActivityType));
         ret.setProperty(DEFAULT_NUMBER_OF_EVENTS, String.valueOf(defaultNumberOfEvents));
@@ -386,6 +812,11 @@ public Properties toProperties() {
             ret.setProperty(UNKNOWN_LOCATION_DESCRIPTION, unknownLocationDescription);
         }
 
+        ret.setProperty(EVENT_CACHE_TIME_TO_LIVE, String.valueOf(eventCacheTimeToLive));
+        ret.setProperty(EVENT_CACHE_MAX_EVENTS, String.valueOf(eventCacheMaxEvents));
+        ret.setProperty(NEGATIVE_CACHE_TIME_TO_LIVE, String.valueOf(negativeCacheTimeToLive));
+        ret.setProperty(PREFETCH_REQUESTS_PER_MINUTE, String.valueOf(prefetchRequestsPerMinute));
+
         return ret;
     }
 }
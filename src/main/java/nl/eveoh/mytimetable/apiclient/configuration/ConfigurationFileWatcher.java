@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.configuration;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a properties file, and notifies the registered {@link ConfigurationChangeListener}s when the configuration in
+ * it changes.
+ * <p/>
+ * The file is checked for modifications at a fixed interval (this library targets Java 6, so the NIO
+ * <tt>WatchService</tt> is not available). The contents are compared instead of the modification time, as file systems
+ * may store that in whole seconds, which misses a second write within the same second. A modified file is parsed into a new configuration, and listeners are only
+ * notified when the parsed values actually differ from the current configuration. Listeners always receive an
+ * immutable snapshot.
+ */
+public class ConfigurationFileWatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationFileWatcher.class);
+
+    private final File file;
+
+    private final List<ConfigurationChangeListener> listeners = new CopyOnWriteArrayList<ConfigurationChangeListener>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("mytimetable-config-watcher-%d").setDaemon(true).build());
+
+    private volatile Configuration configuration;
+
+    private HashCode contentHash;
+
+
+    /**
+     * Loads the configuration from the given file.
+     *
+     * @param file properties file to read the configuration from.
+     * @throws IOException when the file could not be read.
+     */
+    public ConfigurationFileWatcher(File file) throws IOException {
+        this.file = file;
+
+        byte[] contents = Files.toByteArray(file);
+        this.contentHash = Hashing.sha1().hashBytes(contents);
+        this.configuration = load(contents).snapshot();
+    }
+
+    /**
+     * Starts checking the file for modifications.
+     *
+     * @param interval interval between checks, in milliseconds.
+     */
+    public void start(long interval) {
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkForChanges();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public void addListener(ConfigurationChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConfigurationChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Immutable snapshot of the current configuration.
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Reloads the file if it was modified since the last check, and notifies the listeners when the configuration
+     * has changed.
+     */
+    public synchronized void checkForChanges() {
+        Configuration reloaded;
+        try {
+            byte[] contents = Files.toByteArray(file);
+            HashCode hash = Hashing.sha1().hashBytes(contents);
+            if (hash.equals(contentHash)) {
+                return;
+            }
+
+            contentHash = hash;
+            reloaded = load(contents).snapshot();
+        } catch (IOException e) {
+            log.error("Could not reload configuration from " + file + ".", e);
+            return;
+        }
+
+        if (reloaded.toProperties().equals(configuration.toProperties())) {
+            log.debug("Configuration file {} was modified, but the configuration did not change.", file);
+            return;
+        }
+
+        log.info("Configuration file {} changed, notifying listeners.", file);
+        configuration = reloaded;
+
+        for (ConfigurationChangeListener listener : listeners) {
+            try {
+                listener.onConfigurationChanged(reloaded);
+            } catch (RuntimeException e) {
+                log.error("Error while notifying configuration listener.", e);
+            }
+        }
+    }
+
+    /**
+     * Creates the configuration object from the parsed properties. Override to e.g. create a
+     * {@link WidgetConfiguration}.
+     *
+     * @param properties properties read from the file.
+     * @return New configuration.
+     */
+    protected Configuration createConfiguration(Properties properties) {
+        return new Configuration(properties);
+    }
+
+    private Configuration load(byte[] contents) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(contents));
+
+        return createConfiguration(properties);
+    }
+}
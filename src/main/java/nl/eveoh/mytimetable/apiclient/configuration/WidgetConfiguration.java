@@ -86,6 +86,27 @@ public class WidgetConfiguration extends Configuration {
     public WidgetConfiguration() {
     }
 
+    /**
+     * Creates a mutable copy of the given configuration.
+     */
+    public WidgetConfiguration(WidgetConfiguration other) {
+        this(other, false);
+    }
+
+    protected WidgetConfiguration(WidgetConfiguration other, boolean immutable) {
+        super(other, immutable);
+
+        customCss = other.customCss;
+        applicationUriDescriptionOverride = other.applicationUriDescriptionOverride;
+        showCode = other.showCode;
+        showDescription = other.showDescription;
+        showStaff = other.showStaff;
+        showNote1 = other.showNote1;
+        showNote2 = other.showNote2;
+        showNote3 = other.showNote3;
+        useStudentId = other.useStudentId;
+    }
+
     public WidgetConfiguration(Properties properties) {
         super(properties);
 
@@ -106,6 +127,7 @@ public String getCustomCss() {
     }
 
     public void setCustomCss(String customCss) {
+        checkMutable();
         this.customCss = customCss;
     }
 
@@ -114,6 +136,7 @@ public String getApplicationUriDescriptionOverride() {
     }
 
     public void setApplicationUriDescriptionOverride(String applicationUriDescriptionOverride) {
+        checkMutable();
         this.applicationUriDescriptionOverride = applicationUriDescriptionOverride;
     }
 
@@ -122,6 +145,7 @@ public boolean isShowCode() {
     }
 
     public void setShowCode(boolean showCode) {
+        checkMutable();
         this.showCode = showCode;
     }
 
@@ -130,6 +154,7 @@ public boolean isShowDescription() {
     }
 
     public void setShowDescription(boolean showDescription) {
+        checkMutable();
         this.showDescription = showDescription;
     }
 
@@ -138,6 +163,7 @@ public boolean isShowStaff() {
     }
 
     public void setShowStaff(boolean showStaff) {
+        checkMutable();
         this.showStaff = showStaff;
     }
 
@@ -146,6 +172,7 @@ public boolean isShowNote1() {
     }
 
     public void setShowNote1(boolean showNote1) {
+        checkMutable();
         this.showNote1 = showNote1;
     }
 
@@ -154,6 +181,7 @@ public boolean isShowNote2() {
     }
 
     public void setShowNote2(boolean showNote2) {
+        checkMutable();
         this.showNote2 = showNote2;
     }
 
@@ -162,6 +190,7 @@ public boolean isShowNote3() {
     }
 
     public void setShowNote3(boolean showNote3) {
+        checkMutable();
         this.showNote3 = showNote3;
     }
 
@@ -170,9 +199,20 @@ public boolean isUseStudentId() {
     }
 
     public void setUseStudentId(boolean useStudentId) {
+        checkMutable();
         this.useStudentId = useStudentId;
     }
 
+    @Override
+    public WidgetConfiguration snapshot() {
+        return isImmutable() ? this : new WidgetConfiguration(this, true);
+    }
+
+    @Override
+    public WidgetConfiguration copy() {
+        return new WidgetConfiguration(this);
+    }
+
     @Override
     public Properties toProperties() {
         Properties ret = super.toProperties();
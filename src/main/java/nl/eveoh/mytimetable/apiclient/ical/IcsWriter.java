@@ -0,0 +1,535 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.ical;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Writes events as an iCalendar (RFC 5545) document, e.g. to serve calendar subscriptions.
+ * <p/>
+ * The document is streamed to an {@link OutputStream} or {@link WritableByteChannel} through a single buffer, which
+ * is reused for the whole document. Text is escaped, encoded as UTF-8 and folded into lines of at most 75 octets
+ * while it is written, without creating intermediate strings.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * String eTag = IcsWriter.getETag(events);
+ * if (IcsWriter.isNotModified(request.getHeader("If-None-Match"), eTag)) {
+ *     response.setStatus(304);
+ *     return;
+ * }
+ *
+ * response.setHeader("ETag", eTag);
+ * IcsWriter writer = new IcsWriter(response.getOutputStream());
+ * writer.write("My timetable", events);
+ * writer.close();
+ * </pre>
+ * Instances are not thread-safe.
+ */
+public class IcsWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum length of a line, in octets, excluding the line break.
+     */
+    private static final int MAX_LINE_LENGTH = 75;
+
+    private static final String PRODUCT_ID = "-//Eveoh//MyTimetable API client//EN";
+
+    private static final String UID_SUFFIX = "@mytimetable";
+
+    private final OutputStream out;
+
+    private final WritableByteChannel channel;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final ByteBuffer byteBuffer;
+
+    private int position = 0;
+
+    /**
+     * Number of octets written on the current line.
+     */
+    private int lineLength = 0;
+
+    private final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+
+    private final Date timestamp;
+
+
+    public IcsWriter(OutputStream out) {
+        this.out = out;
+        this.channel = null;
+        this.byteBuffer = null;
+        this.timestamp = new Date();
+    }
+
+    public IcsWriter(WritableByteChannel channel) {
+        this.out = null;
+        this.channel = channel;
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+        this.timestamp = new Date();
+    }
+
+    /**
+     * Writes a complete calendar containing the given events.
+     *
+     * @param name   name of the calendar, shown by calendar applications. May be {@code null}.
+     * @param events events to write.
+     */
+    public void write(String name, Iterable<? extends Event> events) throws IOException {
+        writeHeader(name);
+
+        for (Event event : events) {
+            writeEvent(event);
+        }
+
+        writeFooter();
+    }
+
+    /**
+     * Starts the calendar. Must be called before writing any events.
+     *
+     * @param name name of the calendar, shown by calendar applications. May be {@code null}.
+     */
+    public void writeHeader(String name) throws IOException {
+        writeProperty("BEGIN", "VCALENDAR");
+        writeProperty("VERSION", "2.0");
+        writeProperty("PRODID", PRODUCT_ID);
+        writeProperty("CALSCALE", "GREGORIAN");
+        writeProperty("METHOD", "PUBLISH");
+
+        if (name != null) {
+            startProperty("X-WR-CALNAME");
+            writeText(name);
+            endProperty();
+        }
+    }
+
+    /**
+     * Writes a single event as a VEVENT component. Events without a start or end date are skipped.
+     */
+    public void writeEvent(Event event) throws IOException {
+        Date startDate = event.getStartDate();
+        Date endDate = event.getEndDate();
+
+        if (startDate == null || endDate == null) {
+            return;
+        }
+
+        writeProperty("BEGIN", "VEVENT");
+
+        startProperty("UID");
+        writeRaw(getUid(event));
+        writeRaw(UID_SUFFIX);
+        endProperty();
+
+        writeDateProperty("DTSTAMP", timestamp);
+        writeDateProperty("DTSTART", startDate);
+        writeDateProperty("DTEND", endDate);
+
+        String summary = event.getActivityDescription() != null
+                ? event.getActivityDescription()
+                : event.getActivityCode();
+        if (summary != null) {
+            startProperty("SUMMARY");
+            writeText(summary);
+            endProperty();
+        }
+
+        List<Location> locations = event.getLocations();
+        if (locations != null && !locations.isEmpty()) {
+            startProperty("LOCATION");
+
+            boolean first = true;
+            for (Location location : locations) {
+                if (location == null || location.getName() == null) {
+                    continue;
+                }
+
+                if (!first) {
+                    writeText(", ");
+                }
+
+                writeText(location.getName());
+                first = false;
+            }
+
+            endProperty();
+        }
+
+        if (event.getActivityType() != null) {
+            startProperty("CATEGORIES");
+            writeText(event.getActivityType());
+            endProperty();
+        }
+
+        writeDescription(event);
+
+        writeProperty("END", "VEVENT");
+    }
+
+    /**
+     * Ends the calendar, after all events have been written.
+     */
+    public void writeFooter() throws IOException {
+        writeProperty("END", "VCALENDAR");
+    }
+
+    /**
+     * Writes all buffered data to the underlying stream or channel.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Flushes all buffered data, and closes the underlying stream or channel.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            if (out != null) {
+                out.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Calculates an entity tag for a feed of the given events, to support conditional requests. The tag only changes
+     * when the events change.
+     *
+     * @return Strong entity tag, including quotes.
+     */
+    public static String getETag(Collection<? extends Event> events) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(events.size());
+
+        for (Event event : events) {
+            putString(hasher, event.getActivityCode());
+            putString(hasher, event.getActivityDescription());
+            putString(hasher, event.getActivityType());
+            hasher.putLong(event.getStartTime());
+            hasher.putLong(event.getEndTime());
+
+            List<Location> locations = event.getLocations();
+            hasher.putInt(locations != null ? locations.size() : -1);
+            if (locations != null) {
+                for (Location location : locations) {
+                    putString(hasher, location != null ? location.getName() : null);
+                }
+            }
+
+            List<String> staffMembers = event.getStaffMembers();
+            hasher.putInt(staffMembers != null ? staffMembers.size() : -1);
+            if (staffMembers != null) {
+                for (String staffMember : staffMembers) {
+                    putString(hasher, staffMember);
+                }
+            }
+
+            putString(hasher, event.getNote1());
+            putString(hasher, event.getNote2());
+            putString(hasher, event.getNote3());
+        }
+
+        return "\"" + hasher.hash().toString() + "\"";
+    }
+
+    /**
+     * Checks whether a client already has the current version of a feed.
+     *
+     * @param ifNoneMatch value of the <tt>If-None-Match</tt> request header, may be {@code null}.
+     * @param eTag        entity tag of the current feed, as returned by {@link #getETag(Collection)}.
+     * @return Whether a <tt>304 Not Modified</tt> response can be sent instead of the feed.
+     */
+    public static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void writeDescription(Event event) throws IOException {
+        List<String> staffMembers = event.getStaffMembers();
+        boolean hasStaffMembers = staffMembers != null && !staffMembers.isEmpty();
+
+        if (!hasStaffMembers && event.getNote1() == null && event.getNote2() == null && event.getNote3() == null) {
+            return;
+        }
+
+        startProperty("DESCRIPTION");
+
+        boolean first = true;
+        if (hasStaffMembers) {
+            writeText("Staff: ");
+
+            for (int i = 0; i < staffMembers.size(); i++) {
+                if (i > 0) {
+                    writeText(", ");
+                }
+
+                writeText(staffMembers.get(i));
+            }
+
+            first = false;
+        }
+
+        first = writeNote(event.getNote1(), first);
+        first = writeNote(event.getNote2(), first);
+        writeNote(event.getNote3(), first);
+
+        endProperty();
+    }
+
+    private boolean writeNote(String note, boolean first) throws IOException {
+        if (note == null) {
+            return first;
+        }
+
+        if (!first) {
+            writeText("\n");
+        }
+
+        writeText(note);
+        return false;
+    }
+
+    private void writeProperty(String name, String value) throws IOException {
+        startProperty(name);
+        writeRaw(value);
+        endProperty();
+    }
+
+    private void writeDateProperty(String name, Date date) throws IOException {
+        startProperty(name);
+
+        calendar.setTime(date);
+        writeDigits(calendar.get(Calendar.YEAR), 4);
+        writeDigits(calendar.get(Calendar.MONTH) + 1, 2);
+        writeDigits(calendar.get(Calendar.DAY_OF_MONTH), 2);
+        writeChar('T');
+        writeDigits(calendar.get(Calendar.HOUR_OF_DAY), 2);
+        writeDigits(calendar.get(Calendar.MINUTE), 2);
+        writeDigits(calendar.get(Calendar.SECOND), 2);
+        writeChar('Z');
+
+        endProperty();
+    }
+
+    private void startProperty(String name) throws IOException {
+        writeRaw(name);
+        writeChar(':');
+    }
+
+    private void endProperty() throws IOException {
+        ensureCapacity(2);
+        buffer[position++] = '\r';
+        buffer[position++] = '\n';
+        lineLength = 0;
+    }
+
+    private void writeDigits(int value, int digits) throws IOException {
+        for (int divisor = (int) Math.pow(10, digits - 1); divisor > 0; divisor /= 10) {
+            writeChar((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    /**
+     * Writes text without escaping it.
+     */
+    private void writeRaw(CharSequence s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            writeChar(s.charAt(i));
+        }
+    }
+
+    /**
+     * Writes text, escaping the characters which have a special meaning in iCalendar text values.
+     */
+    private void writeText(CharSequence s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            switch (c) {
+                case '\\':
+                case ';':
+                case ',':
+                    writeChar('\\');
+                    writeChar(c);
+                    break;
+                case '\n':
+                    writeChar('\\');
+                    writeChar('n');
+                    break;
+                case '\r':
+                    break;
+                default:
+                    if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                    } else if (Character.isISOControl(c) && c != '\t') {
+                        // Control characters are not allowed in iCalendar text.
+                        break;
+                    } else {
+                        writeChar(c);
+                    }
+            }
+        }
+    }
+
+    private void writeChar(char c) throws IOException {
+        if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            // Unpaired surrogate, which cannot be encoded.
+            writeCodePoint('?');
+        } else {
+            writeCodePoint(c);
+        }
+    }
+
+    /**
+     * Writes a code point as UTF-8, first folding the line when the code point does not fit on it.
+     */
+    private void writeCodePoint(int codePoint) throws IOException {
+        int length = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+
+        if (lineLength + length > MAX_LINE_LENGTH) {
+            ensureCapacity(3);
+            buffer[position++] = '\r';
+            buffer[position++] = '\n';
+            buffer[position++] = ' ';
+            lineLength = 1;
+        }
+
+        ensureCapacity(length);
+        switch (length) {
+            case 1:
+                buffer[position++] = (byte) codePoint;
+                break;
+            case 2:
+                buffer[position++] = (byte) (0xc0 | (codePoint >> 6));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                break;
+            case 3:
+                buffer[position++] = (byte) (0xe0 | (codePoint >> 12));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                break;
+            default:
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+        }
+
+        lineLength += length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position == 0) {
+            return;
+        }
+
+        if (out != null) {
+            out.write(buffer, 0, position);
+        } else {
+            byteBuffer.clear();
+            byteBuffer.limit(position);
+
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }
+
+        position = 0;
+    }
+
+    /**
+     * @return Identifier of the event, which stays the same as long as its code, description, start, end and locations
+     *         do not change. The locations tell apart parallel sessions of the same activity.
+     */
+    private static String getUid(Event event) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        putString(hasher, event.getActivityCode());
+        putString(hasher, event.getActivityDescription());
+        hasher.putLong(event.getStartTime());
+        hasher.putLong(event.getEndTime());
+
+        List<Location> locations = event.getLocations();
+        if (locations != null) {
+            for (Location location : locations) {
+                putString(hasher, location != null ? location.getName() : null);
+            }
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        if (s == null) {
+            hasher.putBoolean(false);
+        } else {
+            hasher.putBoolean(true).putString(s, Charsets.UTF_8);
+        }
+    }
+}
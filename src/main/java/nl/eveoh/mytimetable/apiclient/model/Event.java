@@ -16,8 +16,11 @@
 
 package nl.eveoh.mytimetable.apiclient.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -98,6 +101,38 @@ public Event(String activityDescription, Date startDate, Date endDate, List<Loca
         this.activityTypeDescription = activityTypeDescription;
     }
 
+    /**
+     * Creates a modifiable copy of the given event. The dates and the location and staff lists are copied, so the copy
+     * can be modified without affecting <tt>other</tt>, which may be a shared {@link ImmutableEvent}.
+     *
+     * @param other event to copy.
+     */
+    public Event(Event other) {
+        this.activityCode = other.getActivityCode();
+        this.activityDescription = other.getActivityDescription();
+        this.startDate = copy(other.getStartDate());
+        this.endDate = copy(other.getEndDate());
+        this.activityTypeDescription = other.getActivityType();
+        this.note1 = other.getNote1();
+        this.note2 = other.getNote2();
+        this.note3 = other.getNote3();
+
+        if (other.getLocations() != null) {
+            this.locations = new ArrayList<Location>(other.getLocations().size());
+            for (Location location : other.getLocations()) {
+                this.locations.add(location != null ? new Location(location.getName()) : null);
+            }
+        }
+
+        if (other.getStaffMembers() != null) {
+            this.staffMembers = new ArrayList<String>(other.getStaffMembers());
+        }
+    }
+
+    private static Date copy(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+
     public String getActivityCode() {
         return activityCode;
     }
@@ -130,6 +165,24 @@ public void setEndDate(Date endDate) {
         this.endDate = endDate;
     }
 
+    /**
+     * @return Start date in milliseconds, or {@link Long#MIN_VALUE} if not set. Unlike {@link #getStartDate()}, this
+     *         does not copy the date of an {@link ImmutableEvent}, so it is cheap to use in e.g. comparators.
+     */
+    @JsonIgnore
+    public long getStartTime() {
+        return startDate != null ? startDate.getTime() : Long.MIN_VALUE;
+    }
+
+    /**
+     * @return End date in milliseconds, or {@link Long#MIN_VALUE} if not set.
+     * @see #getStartTime()
+     */
+    @JsonIgnore
+    public long getEndTime() {
+        return endDate != null ? endDate.getTime() : Long.MIN_VALUE;
+    }
+
     public List<Location> getLocations() {
         return locations;
     }
@@ -177,4 +230,28 @@ public String getNote3() {
     public void setNote3(String note3) {
         this.note3 = note3;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Event)) return false;
+
+        Event other = (Event) o;
+        return Objects.equal(activityCode, other.activityCode)
+                && Objects.equal(activityDescription, other.activityDescription)
+                && Objects.equal(startDate, other.startDate)
+                && Objects.equal(endDate, other.endDate)
+                && Objects.equal(locations, other.locations)
+                && Objects.equal(staffMembers, other.staffMembers)
+                && Objects.equal(activityTypeDescription, other.activityTypeDescription)
+                && Objects.equal(note1, other.note1)
+                && Objects.equal(note2, other.note2)
+                && Objects.equal(note3, other.note3);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(activityCode, activityDescription, startDate, endDate, locations, staffMembers,
+                activityTypeDescription, note1, note2, note3);
+    }
 }
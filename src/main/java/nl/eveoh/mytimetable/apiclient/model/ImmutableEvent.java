@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.model;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Event which cannot be modified, so it can safely be shared between the cached timetables of many users.
+ * <p/>
+ * Dates are copied on access, and the location and staff lists are unmodifiable. All setters throw an
+ * {@link UnsupportedOperationException}.
+ */
+public final class ImmutableEvent extends Event {
+
+    /**
+     * @param event         event to copy the values of.
+     * @param locations     unmodifiable list of locations to use instead of the locations of <tt>event</tt>.
+     * @param staffMembers  unmodifiable list of staff members to use instead of the staff members of <tt>event</tt>.
+     */
+    public ImmutableEvent(Event event, List<Location> locations, List<String> staffMembers) {
+        this(event.getActivityCode(), event.getActivityDescription(), copy(event.getStartDate()),
+                copy(event.getEndDate()), locations, staffMembers, event.getActivityType(), event.getNote1(),
+                event.getNote2(), event.getNote3());
+    }
+
+    /**
+     * Creates an event from the given values. The dates are not copied, so they can be shared with other immutable
+     * events, and must not be modified afterwards.
+     *
+     * @param locations     unmodifiable list of locations.
+     * @param staffMembers  unmodifiable list of staff members.
+     */
+    public ImmutableEvent(String activityCode, String activityDescription, Date startDate, Date endDate,
+                          List<Location> locations, List<String> staffMembers, String activityType, String note1,
+                          String note2, String note3) {
+        super.setActivityCode(activityCode);
+        super.setActivityDescription(activityDescription);
+        super.setStartDate(startDate);
+        super.setEndDate(endDate);
+        super.setLocations(locations);
+        super.setStaffMembers(staffMembers);
+        super.setActivityType(activityType);
+        super.setNote1(note1);
+        super.setNote2(note2);
+        super.setNote3(note3);
+    }
+
+    @Override
+    public Date getStartDate() {
+        return copy(super.getStartDate());
+    }
+
+    @Override
+    public Date getEndDate() {
+        return copy(super.getEndDate());
+    }
+
+    @Override
+    public void setActivityCode(String activityCode) {
+        throw immutable();
+    }
+
+    @Override
+    public void setActivityDescription(String activityDescription) {
+        throw immutable();
+    }
+
+    @Override
+    public void setStartDate(Date startDate) {
+        throw immutable();
+    }
+
+    @Override
+    public void setEndDate(Date endDate) {
+        throw immutable();
+    }
+
+    @Override
+    public void setLocations(List<Location> locations) {
+        throw immutable();
+    }
+
+    @Override
+    public void setStaffMembers(List<String> staffMembers) {
+        throw immutable();
+    }
+
+    @Override
+    public void setActivityType(String activityTypeDescription) {
+        throw immutable();
+    }
+
+    @Override
+    public void setNote1(String note1) {
+        throw immutable();
+    }
+
+    @Override
+    public void setNote2(String note2) {
+        throw immutable();
+    }
+
+    @Override
+    public void setNote3(String note3) {
+        throw immutable();
+    }
+
+    private static Date copy(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+
+    private static UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException("Event is immutable.");
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.model;
+
+/**
+ * Location which cannot be modified, so it can safely be shared between cached timetables.
+ */
+public final class ImmutableLocation extends Location {
+
+    public ImmutableLocation(String name) {
+        super.setName(name);
+    }
+
+    /**
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Location is immutable.");
+    }
+}
@@ -16,6 +16,8 @@
 
 package nl.eveoh.mytimetable.apiclient.model;
 
+import com.google.common.base.Objects;
+
 /**
  * Location for an event.
  *
@@ -43,4 +45,17 @@ public String getName() {
     public void setName(String name) {
         this.name = name;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Location)) return false;
+
+        return Objects.equal(name, ((Location) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name != null ? name.hashCode() : 0;
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DnsResolver} which caches the addresses resolved by another resolver, and spreads new connections over all
+ * addresses of a host.
+ * <p/>
+ * Cached addresses are refreshed in the background once three quarters of their time to live have passed, so lookups
+ * rarely wait for the underlying resolver. Hosts which could not be resolved are cached as well, for a shorter time.
+ * The addresses of a host are returned in round-robin order; HttpClient connects to the first address which accepts
+ * the connection, so this balances new connections over the addresses, while still failing over to the others.
+ * <p/>
+ * Java does not expose the TTL of DNS records, so a fixed time to live is used. The underlying resolver can be e.g.
+ * an {@link org.apache.http.impl.conn.InMemoryDnsResolver} with static addresses, for testing.
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("mytimetable-dns-refresh-%d")
+            .setDaemon(true)
+            .build());
+
+    private final DnsResolver delegate;
+
+    private final long timeToLive;
+
+    private final long negativeTimeToLive;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+
+    /**
+     * @param delegate           resolver to resolve the hosts with.
+     * @param timeToLive         time resolved addresses are cached, in milliseconds.
+     * @param negativeTimeToLive time hosts which could not be resolved are cached, in milliseconds.
+     */
+    public CachingDnsResolver(DnsResolver delegate, long timeToLive, long negativeTimeToLive) {
+        this.delegate = delegate;
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(host);
+
+        if (entry == null || now >= entry.expiresAt) {
+            entry = lookup(host, now);
+        } else if (entry.addresses != null && now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+            refresh(host, entry);
+        }
+
+        if (entry.addresses == null) {
+            throw new UnknownHostException(host);
+        }
+
+        return entry.next();
+    }
+
+    /**
+     * Removes all cached addresses.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private Entry lookup(String host, long now) {
+        Entry entry;
+
+        try {
+            entry = new Entry(delegate.resolve(host), now);
+        } catch (UnknownHostException e) {
+            log.warn("Could not resolve MyTimetable API host {}.", host);
+            entry = new Entry(null, now);
+        }
+
+        entries.put(host, entry);
+        return entry;
+    }
+
+    private void refresh(final String host, final Entry entry) {
+        try {
+            REFRESHER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        entries.put(host, new Entry(delegate.resolve(host), System.currentTimeMillis()));
+                    } catch (UnknownHostException e) {
+                        // Keep using the cached addresses until they expire.
+                        log.warn("Could not refresh the addresses of MyTimetable API host {}.", host);
+                    } catch (RuntimeException e) {
+                        log.error("Error while refreshing the addresses of MyTimetable API host " + host + ".", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Cached result of resolving a host.
+     */
+    private class Entry {
+
+        /**
+         * Resolved addresses, or {@code null} if the host could not be resolved.
+         */
+        private final InetAddress[] addresses;
+
+        private final long expiresAt;
+
+        private final long refreshAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+
+        private Entry(InetAddress[] addresses, long now) {
+            boolean resolved = addresses != null && addresses.length > 0;
+
+            this.addresses = resolved ? addresses : null;
+            this.expiresAt = now + (resolved ? timeToLive : Math.min(negativeTimeToLive, timeToLive));
+            this.refreshAt = now + timeToLive * 3 / 4;
+        }
+
+        /**
+         * @return The addresses, starting at the next address in round-robin order.
+         */
+        private InetAddress[] next() {
+            int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % addresses.length;
+
+            InetAddress[] ret = new InetAddress[addresses.length];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = addresses[(offset + i) % addresses.length];
+            }
+
+            return ret;
+        }
+    }
+}
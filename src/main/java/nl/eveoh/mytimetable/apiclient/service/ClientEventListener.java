@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+/**
+ * Receives the operations of the client, e.g. to record them as Java Flight Recorder events or metrics.
+ * <p/>
+ * Register an implementation with {@link MyTimetableServiceImpl#setRequestTimingListener(RequestTimingListener,
+ * double)}. Besides the timing of each sampled request, it is notified of failovers and configuration changes. When
+ * no listener is registered and adaptive timeouts are disabled, requests are not timed, and the instrumented
+ * HttpClient components only cost a thread local lookup. Implementations should be fast and must be thread-safe.
+ */
+public interface ClientEventListener extends RequestTimingListener {
+
+    /**
+     * Called when a request is sent to the next endpoint, because the previous endpoint failed or, with hedging, did
+     * not respond in time. Called for every failover, regardless of the sample rate.
+     *
+     * @param fromEndpoint host and port of the endpoint failed over from.
+     * @param toEndpoint   host and port of the endpoint failed over to.
+     * @param attempt      index of the endpoint failed over to, in the failover order.
+     * @param reason       outcome of the last request to <tt>fromEndpoint</tt>, or {@code null} for a hedged request.
+     */
+    public void onFailover(String fromEndpoint, String toEndpoint, int attempt, RequestTiming.Outcome reason);
+
+    /**
+     * Called after the service applied a new configuration.
+     *
+     * @param durationNanos time taken to apply the configuration, in nanoseconds.
+     */
+    public void onConfigurationChanged(long durationNanos);
+}
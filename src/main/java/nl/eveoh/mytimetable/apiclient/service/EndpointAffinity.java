@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.cache.ConsistentHashRing;
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders the API endpoints for each user, so the requests for a user are sent to the same endpoint and find its
+ * caches warm.
+ * <p/>
+ * The preferred endpoint of a user is chosen with a {@link ConsistentHashRing}, and the other endpoints follow in ring
+ * order, so when an endpoint is removed only the users of that endpoint move. To bound the load, an endpoint with more
+ * requests in progress than {@link #LOAD_FACTOR} times its share is moved behind the other endpoints. The load is
+ * tracked per API host. This class is thread-safe.
+ */
+class EndpointAffinity {
+
+    private static final int VIRTUAL_NODE_COUNT = 100;
+
+    /**
+     * Maximum number of requests in progress to a single host, relative to the average over all hosts.
+     */
+    private static final double LOAD_FACTOR = 1.25;
+
+    private final List<String> endpoints;
+
+    private final ConsistentHashRing<String> ring;
+
+    private final Map<String, HttpHost> hosts = new HashMap<String, HttpHost>();
+
+    private final Map<HttpHost, AtomicInteger> loads = new HashMap<HttpHost, AtomicInteger>();
+
+    private final AtomicInteger totalLoad = new AtomicInteger();
+
+
+    /**
+     * @param endpoints URIs of the API endpoints.
+     */
+    EndpointAffinity(List<String> endpoints) {
+        this.endpoints = new ArrayList<String>(endpoints);
+        this.ring = new ConsistentHashRing<String>(endpoints, VIRTUAL_NODE_COUNT);
+
+        for (String endpoint : endpoints) {
+            try {
+                HttpHost host = URIUtils.extractHost(new URI(endpoint));
+                if (host != null) {
+                    hosts.put(endpoint, host);
+                    loads.put(host, new AtomicInteger());
+                }
+            } catch (URISyntaxException e) {
+                // Invalid URIs are reported when the requests are created, they are not tracked.
+            }
+        }
+    }
+
+    /**
+     * @return Whether this instance was created for the given endpoints.
+     */
+    boolean hasEndpoints(List<String> endpoints) {
+        return this.endpoints.equals(endpoints);
+    }
+
+    /**
+     * @param username username as passed to the MyTimetable API.
+     * @return The endpoints, in the order they should be tried for the user.
+     */
+    List<String> getEndpoints(String username) {
+        List<String> preferred = ring.getPreferenceList(username);
+        if (preferred.size() <= 1) {
+            return preferred;
+        }
+
+        int limit = (int) Math.ceil(LOAD_FACTOR * (totalLoad.get() + 1) / loads.size());
+
+        List<String> ret = new ArrayList<String>(preferred.size());
+        List<String> overloaded = new ArrayList<String>();
+
+        for (String endpoint : preferred) {
+            HttpHost host = hosts.get(endpoint);
+            if (host != null && loads.get(host).get() + 1 > limit) {
+                overloaded.add(endpoint);
+            } else {
+                ret.add(endpoint);
+            }
+        }
+
+        ret.addAll(overloaded);
+        return ret;
+    }
+
+    /**
+     * Records the start of a request to the given host. Must be followed by {@link #requestFinished(HttpHost)}.
+     */
+    void requestStarted(HttpHost host) {
+        AtomicInteger load = loads.get(host);
+        if (load != null) {
+            load.incrementAndGet();
+            totalLoad.incrementAndGet();
+        }
+    }
+
+    void requestFinished(HttpHost host) {
+        AtomicInteger load = loads.get(host);
+        if (load != null) {
+            load.decrementAndGet();
+            totalLoad.decrementAndGet();
+        }
+    }
+}
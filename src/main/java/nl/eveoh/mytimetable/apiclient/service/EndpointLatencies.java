@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpHost;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the response times of the API hosts over a sliding window of recent requests, to derive the timeouts of
+ * next requests from. This class is thread-safe.
+ */
+class EndpointLatencies {
+
+    /**
+     * Number of recent response times kept per host.
+     */
+    private static final int WINDOW_SIZE = 256;
+
+    /**
+     * Number of response times needed before a percentile is reported.
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * Number of response times after which the percentile is computed again.
+     */
+    private static final int UPDATE_INTERVAL = 16;
+
+    private static final double PERCENTILE = 0.99;
+
+    private final ConcurrentMap<HttpHost, Window> windows = new ConcurrentHashMap<HttpHost, Window>();
+
+
+    /**
+     * Records the time until the response of a request was received.
+     *
+     * @param host   host the request was sent to.
+     * @param millis response time, in milliseconds.
+     */
+    void record(HttpHost host, long millis) {
+        Window window = windows.get(host);
+        if (window == null) {
+            Window created = new Window();
+            window = windows.putIfAbsent(host, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+
+        window.add(millis);
+    }
+
+    /**
+     * @return The 99th percentile of the recent response times of the host in milliseconds, or -1 if not enough
+     *         requests have been sent to it.
+     */
+    long getPercentile(HttpHost host) {
+        Window window = windows.get(host);
+        return window != null ? window.getPercentile() : -1;
+    }
+
+    private static class Window {
+
+        private final long[] samples = new long[WINDOW_SIZE];
+
+        private int count = 0;
+
+        private int next = 0;
+
+        private int sinceUpdate = 0;
+
+        private long percentile = -1;
+
+        private synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+
+            if (count >= MIN_SAMPLES && (percentile < 0 || ++sinceUpdate >= UPDATE_INTERVAL)) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+
+                percentile = sorted[Math.min(count - 1, (int) Math.ceil(PERCENTILE * count) - 1)];
+                sinceUpdate = 0;
+            }
+        }
+
+        private synchronized long getPercentile() {
+            return percentile;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.eveoh.mytimetable.apiclient.exception.LocalizableException;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Stream of events, which are read from the MyTimetable API response one at a time.
+ * <p/>
+ * Events are only read from the response when requested through {@link #hasNext()} or {@link #next()}, so the
+ * consumer controls the pace and the complete list of events is never held in memory. Closing the stream before all
+ * events have been read aborts the underlying HTTP request.
+ * <p/>
+ * The stream can easily be adapted to a reactive publisher, e.g. a {@code java.util.concurrent.Flow.Publisher} on
+ * Java 9 and newer, by reading <tt>n</tt> events for every <tt>request(n)</tt> and closing the stream on
+ * <tt>cancel()</tt>.
+ * <p/>
+ * Instances are not thread-safe, and must always be closed.
+ */
+public class EventStream implements Iterator<Event>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventStream.class);
+
+    private final HttpUriRequest request;
+
+    private final CloseableHttpResponse response;
+
+    private final JsonParser parser;
+
+    private final ObjectMapper mapper;
+
+    private final HttpClientHandle client;
+
+    private Event next = null;
+
+    private boolean finished = false;
+
+    private boolean closed = false;
+
+
+    /**
+     * @param request  request the response belongs to.
+     * @param response response to read the events from.
+     * @param parser   parser on the response body, positioned at the start of the array of events.
+     * @param mapper   ObjectMapper to map the events with.
+     * @param client   client the request was executed with, released when the stream is closed.
+     */
+    EventStream(HttpUriRequest request, CloseableHttpResponse response, JsonParser parser, ObjectMapper mapper,
+                HttpClientHandle client) {
+        this.request = request;
+        this.response = response;
+        this.parser = parser;
+        this.mapper = mapper;
+        this.client = client;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            advance();
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Event ret = next;
+        next = null;
+        return ret;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the stream. When not all events have been read, the HTTP request is aborted.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (!finished) {
+            finished = true;
+            request.abort();
+        }
+
+        try {
+            parser.close();
+        } catch (IOException e) {
+            log.debug("Error while closing JSON parser.", e);
+        }
+
+        try {
+            response.close();
+        } catch (IOException e) {
+            log.warn("Error while closing HttpResponse.", e);
+        }
+
+        client.release();
+    }
+
+    private void advance() {
+        try {
+            // A null element maps to null, which would end the stream, so it is skipped.
+            do {
+                JsonToken token = parser.nextToken();
+
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    finished = true;
+                    close();
+                    return;
+                }
+
+                next = mapper.readValue(parser, Event.class);
+            } while (next == null);
+        } catch (IOException e) {
+            close();
+            log.error("Could not read results from MyTimetable API.", e);
+            throw new LocalizableException("Could not read results from MyTimetable API.", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HttpClient with a count of the requests using it, so a client which is replaced or shut down is only closed after
+ * the requests in progress have completed.
+ */
+final class HttpClientHandle {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientHandle.class);
+
+    private final CloseableHttpClient client;
+
+    /**
+     * Number of requests using the client, plus one as long as the client has not been retired.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+
+    HttpClientHandle(CloseableHttpClient client) {
+        this.client = client;
+    }
+
+    CloseableHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Registers a request using the client. Every successful call must be followed by a call to {@link #release()}.
+     *
+     * @return Whether the client can be used, {@code false} if it has been closed.
+     */
+    boolean acquire() {
+        while (true) {
+            int count = references.get();
+
+            if (count == 0) {
+                return false;
+            }
+
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Registers that a request no longer uses the client. The client is closed when it has been retired and no
+     * requests use it anymore.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.warn("Could not close HttpClient", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the client as soon as the requests using it have completed. New requests cannot acquire it anymore.
+     * Must be called once, after the client has been replaced.
+     */
+    void retire() {
+        release();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collection;
+
+/**
+ * Compact filter of the users known to MyTimetable, backed by a Bloom filter.
+ * <p/>
+ * When set on a {@link MyTimetableServiceImpl}, users which are definitely not in the filter are rejected before any
+ * request is sent to the MyTimetable API. Users in the filter may still be unknown, with the configured false positive
+ * probability. Usernames should be given as known by MyTimetable, i.e., including the configured domain prefix and
+ * postfix.
+ * <p/>
+ * A filter for 100,000 users with a false positive probability of 1% takes about 120 kB. This class is thread-safe.
+ */
+public class KnownUserFilter {
+
+    private final BloomFilter<CharSequence> filter;
+
+
+    private KnownUserFilter(BloomFilter<CharSequence> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Creates a filter containing the given usernames.
+     *
+     * @param usernames                 usernames of the users known to MyTimetable.
+     * @param falsePositiveProbability  probability that an unknown user is not rejected, e.g. <tt>0.01</tt>.
+     * @return New filter.
+     */
+    public static KnownUserFilter create(Collection<String> usernames, double falsePositiveProbability) {
+        BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8),
+                Math.max(usernames.size(), 1), falsePositiveProbability);
+
+        for (String username : usernames) {
+            filter.put(username);
+        }
+
+        return new KnownUserFilter(filter);
+    }
+
+    /**
+     * Creates a filter containing the usernames read from the given stream, one username per line (UTF-8). Empty
+     * lines are ignored.
+     *
+     * @param in                        stream to read the usernames from, which is not closed.
+     * @param expectedUsers             expected number of usernames in the stream.
+     * @param falsePositiveProbability  probability that an unknown user is not rejected, e.g. <tt>0.01</tt>.
+     * @return New filter.
+     * @throws IOException when the stream could not be read.
+     */
+    public static KnownUserFilter load(InputStream in, int expectedUsers, double falsePositiveProbability)
+            throws IOException {
+        BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8),
+                Math.max(expectedUsers, 1), falsePositiveProbability);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+
+            if (!line.isEmpty()) {
+                filter.put(line);
+            }
+        }
+
+        return new KnownUserFilter(filter);
+    }
+
+    /**
+     * @param username username as known by MyTimetable.
+     * @return {@code false} if the user is definitely unknown, {@code true} if the user might be known.
+     */
+    public boolean mightBeKnown(String username) {
+        return filter.mightContain(username);
+    }
+}
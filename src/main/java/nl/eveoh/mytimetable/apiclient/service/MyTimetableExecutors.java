@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory for the executors used to run MyTimetable API calls concurrently, e.g. for bulk and hedged requests.
+ * <p/>
+ * On Java 21 and newer, each call runs on its own virtual thread, so thousands of concurrent slow lookups only cost
+ * a few platform threads. The library itself still targets Java 6; virtual threads are looked up reflectively, and
+ * a bounded pool of platform threads is used on older runtimes. When all its threads are busy, a task runs in the
+ * thread submitting it, so a burst of slow lookups cannot create an unbounded number of threads. API calls never block while holding a monitor (the
+ * HttpClient connection pool uses {@link java.util.concurrent.locks.Lock}s), so they do not pin the carrier thread.
+ */
+public final class MyTimetableExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(MyTimetableExecutors.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactoryMethod();
+
+
+    private MyTimetableExecutors() {
+    }
+
+    /**
+     * @return Whether the runtime supports virtual threads.
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor which runs each task on a new virtual thread when the runtime supports it, or on a pool of
+     * at most <tt>maxThreads</tt> daemon platform threads otherwise. The caller is responsible for shutting down the
+     * executor.
+     *
+     * @param maxThreads maximum number of platform threads, usually the maximum number of API connections. Tasks
+     *                   can not run faster than a connection becomes available anyway.
+     * @return New ExecutorService.
+     */
+    public static ExecutorService newExecutor(int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive.");
+        }
+
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                log.warn("Could not create virtual thread executor, falling back to platform threads.", e);
+            }
+        }
+
+        // Idle threads are stopped, like in a cached pool. Tasks are never queued: when all threads are busy, the
+        // submitting thread runs the task itself, which also cannot deadlock when a task submits and awaits another.
+        return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("mytimetable-api-%d")
+                        .setDaemon(true)
+                        .build(),
+                new CallerRunsUnlessShutdownPolicy());
+    }
+
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Runs a task in the submitting thread when all threads are busy. Unlike
+     * {@link ThreadPoolExecutor.CallerRunsPolicy}, which silently discards the task once the executor is shut down,
+     * this rejects it, so a caller waiting for its result does not wait forever.
+     */
+    private static class CallerRunsUnlessShutdownPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down.");
+            }
+
+            task.run();
+        }
+    }
+}
@@ -20,17 +20,23 @@
 import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -42,19 +48,81 @@
  */
 public class MyTimetableHttpClientBuilderImpl implements MyTimetableHttpClientBuilder {
 
+    /**
+     * Time hosts which could not be resolved are cached, in milliseconds.
+     */
+    private static final long DNS_NEGATIVE_CACHE_TIME_TO_LIVE = 10000;
+
     public CloseableHttpClient build(Configuration configuration) {
-        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
-                .register("http", new PlainConnectionSocketFactory())
-                .register("https", createSslSocketFactory(configuration))
-                .build();
+        Registry<ConnectionSocketFactory> registry = createSocketFactoryRegistry(configuration);
 
         // Create the Connection manager.
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry,
+                RequestTimer.timeDnsResolver(createDnsResolver(configuration)));
         connectionManager.setMaxTotal(configuration.getApiMaxConnections());
         connectionManager.setDefaultMaxPerRoute(configuration.getApiMaxConnections());
 
-        // Create the HttpClient.
-        return HttpClients.custom().setConnectionManager(connectionManager).build();
+        return createHttpClient(prioritize(connectionManager, configuration), configuration);
+    }
+
+    /**
+     * Limits the connections leased by background requests, see {@link RequestPriority}, when connections are
+     * reserved for interactive requests.
+     */
+    protected static HttpClientConnectionManager prioritize(HttpClientConnectionManager connectionManager,
+                                                            Configuration configuration) {
+        if (configuration.getApiReservedConnections() <= 0) {
+            return connectionManager;
+        }
+
+        return new PriorityConnectionManager(connectionManager,
+                configuration.getApiMaxConnections() - configuration.getApiReservedConnections());
+    }
+
+    /**
+     * Creates the HttpClient using the given connection manager. When the {@link RetryPolicy} of the service retries
+     * requests, the automatic retries of HttpClient are disabled, so requests are not retried twice.
+     */
+    protected CloseableHttpClient createHttpClient(HttpClientConnectionManager connectionManager,
+                                                   Configuration configuration) {
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(RequestTimer.timeLeases(connectionManager))
+                .setRequestExecutor(RequestTimer.newRequestExecutor());
+
+        if (configuration.getApiMaxRetries() > 0) {
+            builder.disableAutomaticRetries();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Creates the resolver for the host names of the API endpoints. Override to e.g. resolve the hosts to static
+     * addresses.
+     *
+     * @param configuration {@link Configuration} object containing the DNS cache settings.
+     * @return DNS resolver.
+     */
+    protected DnsResolver createDnsResolver(Configuration configuration) {
+        if (configuration.getApiDnsCacheTimeToLive() <= 0) {
+            return SystemDefaultDnsResolver.INSTANCE;
+        }
+
+        return new CachingDnsResolver(SystemDefaultDnsResolver.INSTANCE,
+                configuration.getApiDnsCacheTimeToLive() * 1000L, DNS_NEGATIVE_CACHE_TIME_TO_LIVE);
+    }
+
+    /**
+     * Creates the registry of socket factories for the <tt>http</tt> and <tt>https</tt> schemes.
+     *
+     * @param configuration {@link Configuration} object containing the SSL settings.
+     * @return Socket factory registry.
+     */
+    protected Registry<ConnectionSocketFactory> createSocketFactoryRegistry(Configuration configuration) {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", RequestTimer.timeConnects(new PlainConnectionSocketFactory()))
+                .register("https", RequestTimer.timeConnects(createSslSocketFactory(configuration)))
+                .build();
     }
 
     private SSLConnectionSocketFactory createSslSocketFactory(Configuration configuration) {
@@ -77,6 +145,11 @@ private SSLConnectionSocketFactory createSslSocketFactory(Configuration configur
         }
 
         return new SSLConnectionSocketFactory(sslContext,
-                enabledProtocols.toArray(new String[enabledProtocols.size()]), null, verifier);
+                enabledProtocols.toArray(new String[enabledProtocols.size()]), null, verifier) {
+            @Override
+            protected void prepareSocket(SSLSocket socket) throws IOException {
+                RequestTimer.handshakeStarted();
+            }
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MyTimetable service which can fetch the events of several users at once, and the events within a date range.
+ *
+ * These methods are not part of {@link MyTimetableService} itself, so existing implementations of that interface
+ * remain source compatible.
+ */
+public interface MyTimetableRangeService extends MyTimetableService {
+
+    /**
+     * Returns the upcoming events for each of the given users in the given locale. The users are looked up
+     * concurrently.
+     *
+     * Implementations which cache events may return shared, immutable instances, whose setters throw an
+     * {@link UnsupportedOperationException}; {@link MyTimetableServiceImpl} does so when its event cache or a cache
+     * provider is enabled. Use {@link Event#Event(Event)} to obtain a modifiable copy. The returned list itself may
+     * always be modified.
+     *
+     * @param usernames       usernames of the users to get the events of.
+     * @param locale          locale to get the response in, may be {@code null}.
+     *
+     * @return Map from username to the list of events for that user, or to {@code null} when the events of the user
+     *         could not be fetched.
+     */
+    Map<String, List<Event>> getUpcomingEvents(Collection<String> usernames, Locale locale);
+
+    /**
+     * Returns the events of the given user between the given dates, in the given locale.
+     *
+     * Events that overlap the range are included. Ranges which have been fetched before are served from a per-user
+     * cache; only the parts of the range which are not cached are fetched from the MyTimetable API.
+     *
+     * Implementations which cache events may return shared, immutable instances, whose setters throw an
+     * {@link UnsupportedOperationException}; {@link MyTimetableServiceImpl} does so when its event cache or a cache
+     * provider is enabled. Use {@link Event#Event(Event)} to obtain a modifiable copy. The returned list itself may
+     * always be modified.
+     *
+     * @param username        username of the user to get the events of.
+     * @param from            start of the range, inclusive.
+     * @param to              end of the range, exclusive.
+     * @param locale          locale to get the response in, may be {@code null}.
+     *
+     * @return List of events for the user, sorted by start date.
+     */
+    List<Event> getEvents(String username, Date from, Date to, Locale locale);
+
+    /**
+     * Returns a stream of the events of the given user between the given dates, in the given locale.
+     *
+     * The events are read from the API response while the stream is consumed, and are not cached. The stream must be
+     * closed after use; closing it early aborts the request. Unlike the events returned by the other methods, the
+     * streamed events are not shared, and can be modified.
+     *
+     * @param username        username of the user to get the events of.
+     * @param from            start of the range, inclusive.
+     * @param to              end of the range, exclusive.
+     * @param locale          locale to get the response in, may be {@code null}.
+     *
+     * @return Stream of events for the user, sorted by start date, or {@code null} if no endpoint could be reached.
+     */
+    EventStream streamEvents(String username, Date from, Date to, Locale locale);
+}
@@ -30,6 +30,11 @@ public interface MyTimetableService extends Closeable {
     /**
      * Returns the upcoming events for the given user.
      *
+     * Implementations which cache events may return shared, immutable instances, whose setters throw an
+     * {@link UnsupportedOperationException}; {@link MyTimetableServiceImpl} does so when its event cache or a cache
+     * provider is enabled. Use {@link Event#Event(Event)} to obtain a modifiable copy. The returned list itself may
+     * always be modified.
+     *
      * @param username        username of the user to get the events of.
      *
      * @return List of events for the user.
@@ -41,6 +46,11 @@ public interface MyTimetableService extends Closeable {
      *
      * When the specified locale is not available, the default locale will be used.
      *
+     * Implementations which cache events may return shared, immutable instances, whose setters throw an
+     * {@link UnsupportedOperationException}; {@link MyTimetableServiceImpl} does so when its event cache or a cache
+     * provider is enabled. Use {@link Event#Event(Event)} to obtain a modifiable copy. The returned list itself may
+     * always be modified.
+     *
      * @param username        username of the user to get the events of.
      * @param locale          locale to get the response in.
      *
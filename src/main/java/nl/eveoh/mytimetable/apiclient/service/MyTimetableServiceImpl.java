@@ -17,21 +17,38 @@
 package nl.eveoh.mytimetable.apiclient.service;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import nl.eveoh.mytimetable.apiclient.cache.EventInterner;
+import nl.eveoh.mytimetable.apiclient.cache.EventRangeCache;
+import nl.eveoh.mytimetable.apiclient.cache.TimeRange;
+import nl.eveoh.mytimetable.apiclient.cache.TimetableCacheProvider;
 import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
 import nl.eveoh.mytimetable.apiclient.configuration.ConfigurationChangeListener;
 import nl.eveoh.mytimetable.apiclient.exception.LocalizableException;
 import nl.eveoh.mytimetable.apiclient.model.Event;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,58 +58,338 @@
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Implementation of the MyTimetableService interface.
+ * Implementation of the MyTimetableRangeService interface.
  *
  * @author Marco Krikke
  * @author Erik van Paassen
- * @see MyTimetableService
+ * @see MyTimetableRangeService
  */
-public class MyTimetableServiceImpl implements MyTimetableService, ConfigurationChangeListener {
+public class MyTimetableServiceImpl implements MyTimetableRangeService, ConfigurationChangeListener {
 
     private static final Logger log = LoggerFactory.getLogger(MyTimetableServiceImpl.class);
 
-    private CloseableHttpClient client = null;
+    private static final String CLOSED_MESSAGE = "The MyTimetable service has been closed.";
 
-    private MyTimetableHttpClientBuilder clientBuilder = new MyTimetableHttpClientBuilderImpl();
+    /**
+     * Request header containing the username to fetch the events for.
+     */
+    private static final String USERNAME_HEADER = "requestedAuth";
 
-    private ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Current HttpClient, or {@code null} once this service has been closed.
+     */
+    private volatile HttpClientHandle httpClient = null;
 
-    private Configuration configuration;
+    private final MyTimetableHttpClientBuilder clientBuilder;
 
+    /**
+     * Guards the lifecycle of the HttpClient, executor and prefetch scheduler.
+     */
+    private boolean closed = false;
 
-    public MyTimetableServiceImpl(Configuration configuration, MyTimetableHttpClientBuilder clientBuilder) {
-        this.configuration = configuration;
-        if (clientBuilder != null)
-            this.clientBuilder = clientBuilder;
+    /**
+     * ObjectMapper shared by all service instances, it is thread-safe once configured.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final HashFunction USER_HASH_FUNCTION = Hashing.murmur3_32();
+
+    /**
+     * Random source for sampling request timings. {@link Math#random()} shares a single generator between all threads,
+     * and <tt>ThreadLocalRandom</tt> requires Java 7.
+     */
+    private static final ThreadLocal<Random> SAMPLING_RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
 
-        reinitializeHttpClient();
+    private static final Comparator<Event> START_DATE_ORDER = new Comparator<Event>() {
+        @Override
+        public int compare(Event e1, Event e2) {
+            long s1 = e1.getStartTime();
+            long s2 = e2.getStartTime();
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
 
+    static {
         // Make sure the Jackson ObjectMapper does not fail on other properties in the JSON response.
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
+    /**
+     * Immutable snapshot of the current configuration. Each request reads it once, so it uses a single consistent
+     * configuration, even when the configuration is changed concurrently.
+     */
+    private final AtomicReference<Configuration> configuration = new AtomicReference<Configuration>();
+
+    /**
+     * Mutable copy returned by {@link #getConfiguration()}, created on first use. Changes to it are applied by
+     * {@link #reinitializeHttpClient()}, like in version 1.3 and earlier.
+     */
+    private Configuration editableConfiguration;
+
+    private final EventRangeCache eventCache;
+
+    /**
+     * Maximum number of cached events assigned to this service, e.g. by a {@link MyTimetableServiceRegistry}.
+     */
+    private volatile int eventCacheQuota = Integer.MAX_VALUE;
+
+    private final EventInterner eventInterner = new EventInterner();
+
+    /**
+     * Executor for bulk and hedged requests, created on first use unless set using {@link #setExecutor}.
+     */
+    private ExecutorService executor = null;
+
+    private boolean ownsExecutor = false;
+
+    /**
+     * Users which are unknown to MyTimetable, by username as known by MyTimetable.
+     */
+    private volatile Cache<String, Boolean> unknownUsers;
+
+    private volatile KnownUserFilter knownUserFilter = null;
+
+    /**
+     * Cache for upcoming events which may be shared with other nodes, consulted before calling the API.
+     */
+    private volatile TimetableCacheProvider cacheProvider = null;
+
+    private volatile RetryPolicy retryPolicy;
+
+    /**
+     * Orders the endpoints for each user, or {@code null} if the endpoints are used in the configured order.
+     */
+    private volatile EndpointAffinity endpointAffinity;
+
+    /**
+     * Recent response times of the API hosts, for adaptive timeouts.
+     */
+    private final EndpointLatencies latencies = new EndpointLatencies();
+
+    private volatile PrefetchScheduler prefetchScheduler = null;
+
+    private volatile RequestTimingListener timingListener = null;
+
+    private volatile double timingSampleRate = 0;
+
+
+    public MyTimetableServiceImpl(Configuration configuration, MyTimetableHttpClientBuilder clientBuilder) {
+        // Derive everything from the snapshot, as the caller may change the configuration concurrently.
+        Configuration snapshot = configuration.snapshot();
+
+        this.configuration.set(snapshot);
+        this.clientBuilder = clientBuilder != null ? clientBuilder : new MyTimetableHttpClientBuilderImpl();
+
+        eventCache = new EventRangeCache(snapshot.getEventCacheTimeToLive() * 1000L,
+                snapshot.getEventCacheMaxEvents());
+        unknownUsers = createUnknownUserCache(snapshot);
+        retryPolicy = new RetryPolicy(snapshot);
+        endpointAffinity = createEndpointAffinity(snapshot);
+
+        buildHttpClient();
+        updatePrefetchScheduler(snapshot);
+    }
+
     public MyTimetableServiceImpl(Configuration configuration) {
         this(configuration, null);
     }
 
+    /**
+     * Applies a new configuration. Requests in progress complete using the previous configuration.
+     */
     @Override
-    public void onConfigurationChanged(Configuration configuration) {
-        this.configuration = configuration;
-        reinitializeHttpClient();
+    public synchronized void onConfigurationChanged(Configuration configuration) {
+        // A copy handed out earlier no longer reflects the configuration in use.
+        if (configuration != editableConfiguration) {
+            editableConfiguration = null;
+        }
+
+        applyConfiguration(configuration);
     }
 
-    public void reinitializeHttpClient() {
-        this.close();
-        client = clientBuilder.build(configuration);
+    private void applyConfiguration(Configuration configuration) {
+        long start = System.nanoTime();
+
+        // Derive everything from the snapshot, as the caller may change the configuration concurrently.
+        Configuration snapshot = configuration.snapshot();
+
+        this.configuration.set(snapshot);
+        buildHttpClient();
+        resizeExecutor(snapshot);
+
+        // Endpoints or timetable types may have changed, so previously fetched events cannot be trusted anymore.
+        eventCache.invalidateAll();
+        eventCache.setTimeToLive(snapshot.getEventCacheTimeToLive() * 1000L);
+        eventCache.setMaximumEvents(Math.min(snapshot.getEventCacheMaxEvents(), eventCacheQuota));
+        unknownUsers = createUnknownUserCache(snapshot);
+        retryPolicy = new RetryPolicy(snapshot);
+        endpointAffinity = createEndpointAffinity(snapshot);
+        updatePrefetchScheduler(snapshot);
+
+        RequestTimingListener listener = timingListener;
+        if (listener instanceof ClientEventListener) {
+            try {
+                ((ClientEventListener) listener).onConfigurationChanged(System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                log.warn("Error while notifying client event listener.", e);
+            }
+        }
+    }
+
+    /**
+     * Replaces the HttpClient by a new one built from the current configuration. The previous client is closed once
+     * the requests using it have completed.
+     * <p/>
+     * When the configuration returned by {@link #getConfiguration()} was changed, the changed configuration is applied
+     * as if it was passed to {@link #onConfigurationChanged(Configuration)}.
+     */
+    public synchronized void reinitializeHttpClient() {
+        Configuration editable = editableConfiguration;
+        if (editable != null && !editable.toProperties().equals(configuration.get().toProperties())) {
+            applyConfiguration(editable);
+        } else {
+            buildHttpClient();
+        }
+    }
+
+    private void buildHttpClient() {
+        if (closed) {
+            return;
+        }
+
+        HttpClientHandle previous = httpClient;
+        httpClient = new HttpClientHandle(clientBuilder.build(configuration.get()));
+
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    /**
+     * Acquires the current HttpClient for a request, see {@link HttpClientHandle#acquire()}.
+     *
+     * @throws LocalizableException when this service has been closed.
+     */
+    private HttpClientHandle acquireHttpClient() {
+        while (true) {
+            HttpClientHandle handle = httpClient;
+
+            if (handle == null) {
+                throw new LocalizableException(CLOSED_MESSAGE);
+            }
+
+            // Fails when the client was replaced concurrently, so the new client is used instead.
+            if (handle.acquire()) {
+                return handle;
+            }
+        }
+    }
+
+    /**
+     * Returns a mutable copy of the configuration in use. Changes to it take effect when
+     * {@link #reinitializeHttpClient()} is called, or when it is passed to
+     * {@link #onConfigurationChanged(Configuration)}. Every call returns the same copy, until another configuration
+     * is applied.
+     *
+     * @return Mutable copy of the configuration in use.
+     * @see #getConfigurationSnapshot()
+     */
+    public synchronized Configuration getConfiguration() {
+        if (editableConfiguration == null) {
+            editableConfiguration = configuration.get().copy();
+        }
+
+        return editableConfiguration;
+    }
+
+    /**
+     * @return Immutable snapshot of the configuration in use. Its setters throw an
+     *         {@link UnsupportedOperationException}.
+     */
+    public Configuration getConfigurationSnapshot() {
+        return configuration.get();
+    }
+
+    /**
+     * Sets a filter of the users known to MyTimetable. Users which are not in the filter are rejected without
+     * sending a request to the MyTimetable API.
+     *
+     * @param knownUserFilter Filter to use, or {@code null} to send requests for all users.
+     */
+    public void setKnownUserFilter(KnownUserFilter knownUserFilter) {
+        this.knownUserFilter = knownUserFilter;
+    }
+
+    /**
+     * Sets a cache for upcoming events, which is consulted before calling the MyTimetable API. The provider is not
+     * closed when this service is closed. A provider can be shared by services with different timetable types.
+     *
+     * @param cacheProvider Provider to use, e.g. a {@link nl.eveoh.mytimetable.apiclient.cache.PeerTimetableCacheProvider}
+     *                      to share fetched events with the other nodes of a cluster, or {@code null} to disable.
+     */
+    public void setCacheProvider(TimetableCacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
     }
 
-    public Configuration getConfiguration() {
-        return configuration;
+    /**
+     * Limits the number of cached events below the <tt>eventCacheMaxEvents</tt> setting, e.g. to divide a memory
+     * budget between several services.
+     *
+     * @param eventCacheQuota Maximum number of cached events.
+     */
+    public void setEventCacheQuota(int eventCacheQuota) {
+        this.eventCacheQuota = eventCacheQuota;
+        eventCache.setMaximumEvents(Math.min(configuration.get().getEventCacheMaxEvents(), eventCacheQuota));
+    }
+
+    /**
+     * Sets a listener receiving the timing breakdown of requests to the MyTimetable API, e.g. a
+     * {@link SlowRequestLogger}. A {@link ClientEventListener} is notified of failovers and configuration changes as
+     * well.
+     *
+     * @param listener   Listener to use, or {@code null} to disable reporting.
+     * @param sampleRate Fraction of the requests to report the timing of, between 0 and 1.
+     */
+    public void setRequestTimingListener(RequestTimingListener listener, double sampleRate) {
+        this.timingSampleRate = sampleRate;
+        this.timingListener = listener;
+    }
+
+    /**
+     * Returns the cache holding the events fetched by this service, e.g. to register an
+     * {@link nl.eveoh.mytimetable.apiclient.cache.EventIndex} on.
+     */
+    public EventRangeCache getEventCache() {
+        return eventCache;
     }
 
     @Override
@@ -102,94 +399,876 @@ public List<Event> getUpcomingEvents(String username) {
 
     @Override
     public List<Event> getUpcomingEvents(String username, Locale locale) {
-        ArrayList<HttpUriRequest> requests = getApiRequests(username, locale);
+        Configuration config = configuration.get();
+        String apiUsername = getApiUsername(config, username);
+
+        if (isUnknownUser(apiUsername)) {
+            return null;
+        }
 
-        for (HttpUriRequest request : requests) {
-            CloseableHttpResponse response = null;
+        String key = getCacheKey(apiUsername, locale);
+        Date now = new Date();
 
+        List<Event> events = null;
+
+        if (eventCache.isEnabled()) {
+            events = eventCache.getUpcomingEvents(key, now.getTime(), config.getMaxNumberOfEvents());
+        }
+
+        TimetableCacheProvider provider = cacheProvider;
+        if (events == null && provider != null) {
+            List<Event> shared = provider.get(getProviderKey(config, key));
+            if (shared != null) {
+                // Shared providers may return copies, for example after deserializing them.
+                events = eventInterner.internAll(removeEndedEvents(shared, now));
+            }
+        }
+
+        if (events == null) {
+            events = fetchUpcomingEvents(config, apiUsername, key, locale, now);
+        }
+
+        PrefetchScheduler scheduler = prefetchScheduler;
+        if (scheduler != null) {
+            scheduler.recordAccess(username, locale, now.getTime(), events);
+        }
+
+        return events;
+    }
+
+    /**
+     * Fetches the upcoming events of a user from the MyTimetable API, replacing the cached upcoming events. Other
+     * cached ranges of the user are kept. The request is sent with {@link RequestPriority#BACKGROUND} priority.
+     *
+     * @return The upcoming events, or {@code null} if they could not be fetched.
+     */
+    List<Event> prefetchUpcomingEvents(String username, Locale locale) {
+        Configuration config = configuration.get();
+        String apiUsername = getApiUsername(config, username);
+
+        if (isUnknownUser(apiUsername)) {
+            return null;
+        }
+
+        RequestPriority previous = RequestPriority.set(RequestPriority.BACKGROUND);
+        try {
+            return fetchUpcomingEvents(config, apiUsername, getCacheKey(apiUsername, locale), locale, new Date());
+        } finally {
+            RequestPriority.set(previous);
+        }
+    }
+
+    /**
+     * Fetches the upcoming events of a user, and stores them in the caches. Events which are still cached are
+     * replaced.
+     */
+    private List<Event> fetchUpcomingEvents(Configuration config, String apiUsername, String key, Locale locale,
+                                            Date now) {
+        List<Event> events = fetchEvents(config, apiUsername, getApiRequests(config, apiUsername, locale, now, null,
+                config.getMaxNumberOfEvents()));
+
+        if (events == null) {
+            return null;
+        }
+
+        TimetableCacheProvider provider = cacheProvider;
+        if (!eventCache.isEnabled() && provider == null) {
+            // Nothing is shared, so the events are returned as fetched, and can be modified by the caller.
+            return events;
+        }
+
+        // Return the same immutable instances as the caches, also when the events are not served from them.
+        List<Event> interned = eventInterner.internAll(events);
+
+        if (eventCache.isEnabled()) {
+            eventCache.putUpcoming(key, now.getTime(), config.getMaxNumberOfEvents(), interned);
+        }
+
+        if (provider != null) {
+            // Providers may keep the list itself, which the caller is allowed to modify.
+            provider.put(getProviderKey(config, key), ImmutableList.copyOf(interned));
+        }
+
+        return interned;
+    }
+
+    @Override
+    public Map<String, List<Event>> getUpcomingEvents(Collection<String> usernames, Locale locale) {
+        final Locale requestLocale = locale;
+        final RequestPriority priority = RequestPriority.get();
+
+        Map<String, Future<List<Event>>> futures = new LinkedHashMap<String, Future<List<Event>>>();
+        try {
+            for (final String username : usernames) {
+                futures.put(username, getExecutor().submit(new Callable<List<Event>>() {
+                    @Override
+                    public List<Event> call() {
+                        RequestPriority previous = RequestPriority.set(priority);
+                        try {
+                            return getUpcomingEvents(username, requestLocale);
+                        } finally {
+                            RequestPriority.set(previous);
+                        }
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            // The service was closed concurrently.
+            for (Future<List<Event>> future : futures.values()) {
+                future.cancel(true);
+            }
+
+            throw new LocalizableException(CLOSED_MESSAGE, e);
+        }
+
+        Map<String, List<Event>> ret = new LinkedHashMap<String, List<Event>>();
+        for (Map.Entry<String, Future<List<Event>>> entry : futures.entrySet()) {
             try {
-                response = client.execute(request);
-
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    InputStream stream = entity.getContent();
-
-                    try {
-                        return mapper.readValue(stream, mapper.getTypeFactory().constructCollectionType(List.class, Event.class));
-                    } catch (JsonParseException e) {
-                        log.error("Could not fetch results from MyTimetable API.", e);
-                    } catch (JsonMappingException e) {
-                        log.error("Could not fetch results from MyTimetable API.", e);
-                    } finally {
-                        stream.close();
+                ret.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                log.error("Could not fetch upcoming events for user " + entry.getKey() + ".", e.getCause());
+                ret.put(entry.getKey(), null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                for (Future<List<Event>> future : futures.values()) {
+                    future.cancel(true);
+                }
+
+                throw new LocalizableException("Interrupted while fetching upcoming events.", e);
+            }
+        }
+
+        return ret;
+    }
+
+    @Override
+    public List<Event> getEvents(String username, Date from, Date to, Locale locale) {
+        if (from == null || to == null || to.before(from)) {
+            throw new IllegalArgumentException("Invalid date range.");
+        }
+
+        Configuration config = configuration.get();
+        String apiUsername = getApiUsername(config, username);
+
+        if (isUnknownUser(apiUsername)) {
+            return null;
+        }
+
+        if (!eventCache.isEnabled()) {
+            return fetchEvents(config, apiUsername, getApiRequests(config, apiUsername, locale, from, to, 0));
+        }
+
+        String key = getCacheKey(apiUsername, locale);
+
+        List<TimeRange> missing = new ArrayList<TimeRange>();
+        List<Event> cached = eventCache.getCachedEvents(key, from.getTime(), to.getTime(), missing);
+        if (missing.isEmpty()) {
+            return cached;
+        }
+
+        // Only fetch the parts of the range which are not cached yet. The result is assembled here, instead of read
+        // back from the cache, so the user being evicted in the meantime does not cause the range to be fetched again.
+        Set<Event> ret = new LinkedHashSet<Event>(cached);
+
+        for (TimeRange range : missing) {
+            List<Event> events = fetchEvents(config, apiUsername, getApiRequests(config, apiUsername, locale,
+                    range.getStartDate(), range.getEndDate(), 0));
+
+            if (events == null) {
+                return null;
+            }
+
+            // Share equal activities between the cached timetables of all users.
+            List<Event> interned = eventInterner.internAll(events);
+            eventCache.put(key, range, interned);
+
+            // Events overlapping the boundary of a cached part are returned by both.
+            ret.addAll(interned);
+        }
+
+        List<Event> events = new ArrayList<Event>(ret);
+        Collections.sort(events, START_DATE_ORDER);
+        return events;
+    }
+
+    @Override
+    public EventStream streamEvents(String username, Date from, Date to, Locale locale) {
+        if (from == null || to == null || to.before(from)) {
+            throw new IllegalArgumentException("Invalid date range.");
+        }
+
+        Configuration config = configuration.get();
+        String apiUsername = getApiUsername(config, username);
+
+        if (isUnknownUser(apiUsername)) {
+            return null;
+        }
+
+        ArrayList<HttpUriRequest> requests = getApiRequests(config, apiUsername, locale, from, to, 0);
+        int unknownUserStatus = 0;
+
+        HttpClientHandle client = acquireHttpClient();
+        EventStream stream = null;
+
+        try {
+            for (HttpUriRequest request : requests) {
+                CloseableHttpResponse response = null;
+                JsonParser parser = null;
+
+                try {
+                    response = client.getClient().execute(request);
+
+                    int status = response.getStatusLine().getStatusCode();
+                    HttpEntity entity = response.getEntity();
+
+                    if (isUnknownUserStatus(status)) {
+                        unknownUserStatus = status;
+                    } else if (!isSuccessStatus(status)) {
+                        log.error("Could not fetch results from MyTimetable API: HTTP status {}.", status);
+                    } else if (entity != null) {
+                        parser = mapper.getFactory().createParser(entity.getContent());
+
+                        if (parser.nextToken() == JsonToken.START_ARRAY) {
+                            stream = new EventStream(request, response, parser, mapper, client);
+                            return stream;
+                        }
+
+                        log.error("Could not fetch results from MyTimetable API: response is not a list of events.");
+                    }
+                } catch (IOException e) {
+                    log.error("Could not fetch results from MyTimetable API.", e);
+                } finally {
+                    // The stream could not be started, release the connection before trying the next endpoint.
+                    if (stream == null) {
+                        closeStreamRequest(request, response, parser);
                     }
                 }
-            } catch (ClientProtocolException e) {
-                log.error("Could not fetch results from MyTimetable API.", e);
+            }
+        } finally {
+            // A stream releases the client when it is closed. Otherwise release it here, also on a RuntimeException.
+            if (stream == null) {
+                client.release();
+            }
+        }
+
+        if (unknownUserStatus != 0) {
+            rememberUnknownUser(apiUsername, unknownUserStatus);
+        }
+
+        return null;
+    }
+
+    /**
+     * Aborts a request of which the response cannot be streamed, and closes its response.
+     */
+    private static void closeStreamRequest(HttpUriRequest request, CloseableHttpResponse response, JsonParser parser) {
+        request.abort();
+
+        if (parser != null) {
+            try {
+                parser.close();
             } catch (IOException e) {
-                log.error("Could not fetch results from MyTimetable API.", e);
-            } finally {
-                if (response != null) {
-                    try {
-                        response.close();
-                    } catch (IOException e) {
-                        log.warn("Error while closing HttpResponse.", e);
+                log.debug("Error while closing JSON parser.", e);
+            }
+        }
+
+        if (response != null) {
+            try {
+                response.close();
+            } catch (IOException e) {
+                log.warn("Error while closing HttpResponse.", e);
+            }
+        }
+    }
+
+    /**
+     * Executes the given requests until a result is acquired. When hedging is configured, the next request is sent
+     * as soon as the previous one did not respond within the hedge delay.
+     *
+     * @param config Configuration the requests were created with.
+     * @param apiUsername Username the requests are for, as returned by {@link #getApiUsername(Configuration, String)}.
+     * @param requests Requests as created by
+     *                 {@link #getApiRequests(Configuration, String, Locale, Date, Date, int)}.
+     * @return List of events, or {@code null} if none of the requests succeeded.
+     */
+    private List<Event> fetchEvents(Configuration config, String apiUsername, List<HttpUriRequest> requests) {
+        // Once per call, not per endpoint or hedged request, so failovers do not add to the retry budget.
+        retryPolicy.recordRequest();
+
+        try {
+            if (config.getApiHedgeDelay() > 0 && requests.size() > 1) {
+                return fetchEventsHedged(requests, config.getApiHedgeDelay());
+            }
+
+            return executeRequests(requests, 0);
+        } catch (UnknownUserException e) {
+            rememberUnknownUser(apiUsername, e.getStatus());
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether the user is known not to exist in MyTimetable, so no request has to be sent.
+     */
+    private boolean isUnknownUser(String apiUsername) {
+        KnownUserFilter filter = knownUserFilter;
+        if (filter != null && !filter.mightBeKnown(apiUsername)) {
+            log.debug("User {} is not in the known user filter.", apiUsername);
+            return true;
+        }
+
+        Cache<String, Boolean> cache = unknownUsers;
+        return cache != null && cache.getIfPresent(apiUsername) != null;
+    }
+
+    private void rememberUnknownUser(String apiUsername, int status) {
+        log.warn("User {} is unknown to MyTimetable (HTTP status {}).", apiUsername, status);
+
+        Cache<String, Boolean> cache = unknownUsers;
+        if (cache != null) {
+            cache.put(apiUsername, Boolean.TRUE);
+        }
+    }
+
+    private static Cache<String, Boolean> createUnknownUserCache(Configuration configuration) {
+        if (configuration.getNegativeCacheTimeToLive() <= 0) {
+            return null;
+        }
+
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(configuration.getNegativeCacheTimeToLive(), TimeUnit.SECONDS)
+                .maximumSize(10000)
+                .build();
+    }
+
+    private static EndpointAffinity createEndpointAffinity(Configuration configuration) {
+        if (!configuration.isApiEndpointAffinity()) {
+            return null;
+        }
+
+        return new EndpointAffinity(configuration.getApiEndpointUris());
+    }
+
+    /**
+     * @return The endpoints to send the requests for the given user to, in failover order.
+     */
+    private List<String> getEndpoints(Configuration config, String username) {
+        EndpointAffinity affinity = endpointAffinity;
+
+        // The affinity may have been created for a newer configuration than the one of the request.
+        if (affinity == null || !affinity.hasEndpoints(config.getApiEndpointUris())) {
+            return config.getApiEndpointUris();
+        }
+
+        return affinity.getEndpoints(username);
+    }
+
+    /**
+     * @return The socket timeout for a request to the given URI, derived from the recent response times of its host
+     *         when adaptive timeouts are enabled.
+     */
+    private int getAdaptiveSocketTimeout(Configuration config, URI uri) {
+        int maxTimeout = config.getApiSocketTimeout();
+        HttpHost host = URIUtils.extractHost(uri);
+
+        if (config.getApiAdaptiveTimeoutFactor() <= 0 || host == null) {
+            return maxTimeout;
+        }
+
+        long percentile = latencies.getPercentile(host);
+        if (percentile < 0) {
+            return maxTimeout;
+        }
+
+        long timeout = Math.max(percentile * config.getApiAdaptiveTimeoutFactor(), config.getApiAdaptiveTimeoutMin());
+
+        // A socket timeout of 0 means no timeout at all.
+        if (maxTimeout > 0) {
+            timeout = Math.min(timeout, maxTimeout);
+        }
+
+        return (int) Math.min(timeout, Integer.MAX_VALUE);
+    }
+
+    private static boolean isSuccessStatus(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * The MyTimetable API responds with 404 when the requested user does not exist. Other failures, including 403 for
+     * an API key which is not allowed access, are not specific to the user, so they must not mark the user as unknown.
+     */
+    private static boolean isUnknownUserStatus(int status) {
+        return status == HttpStatus.SC_NOT_FOUND;
+    }
+
+    /**
+     * Sends the requests concurrently, each one <tt>hedgeDelay</tt> milliseconds after the previous one, or
+     * immediately after the previous one failed. The other requests are aborted as soon as one of them succeeds.
+     */
+    private List<Event> fetchEventsHedged(List<HttpUriRequest> requests, long hedgeDelay)
+            throws UnknownUserException {
+        CompletionService<List<Event>> completionService = new ExecutorCompletionService<List<Event>>(getExecutor());
+        List<Future<List<Event>>> futures = new ArrayList<Future<List<Event>>>();
+
+        int next = 0;
+        int running = 0;
+        UnknownUserException unknownUser = null;
+
+        try {
+            while (running > 0 || next < requests.size()) {
+                if (running == 0) {
+                    if (next > 0) {
+                        notifyFailover(requests.get(next - 1), requests.get(next), next, null);
+                    }
+
+                    futures.add(completionService.submit(new RequestTask(requests.get(next), next)));
+                    next++;
+                    running++;
+                }
+
+                Future<List<Event>> done;
+                if (next < requests.size()) {
+                    done = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                } else {
+                    done = completionService.take();
+                }
+
+                if (done == null) {
+                    log.debug("No response within {} ms, sending hedged request.", hedgeDelay);
+                    notifyFailover(requests.get(next - 1), requests.get(next), next, null);
+                    futures.add(completionService.submit(new RequestTask(requests.get(next), next)));
+                    next++;
+                    running++;
+                    continue;
+                }
+
+                running--;
+
+                List<Event> result = null;
+                try {
+                    result = done.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UnknownUserException) {
+                        unknownUser = (UnknownUserException) e.getCause();
+                    } else {
+                        log.error("Could not fetch results from MyTimetable API.", e.getCause());
                     }
                 }
+
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            if (unknownUser != null) {
+                throw unknownUser;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            // The service was closed concurrently.
+            throw new LocalizableException(CLOSED_MESSAGE, e);
+        } finally {
+            for (Future<List<Event>> future : futures) {
+                future.cancel(true);
+            }
+
+            for (int i = 0; i < next; i++) {
+                requests.get(i).abort();
             }
         }
 
         return null;
     }
 
-    @Override
-    public void close() {
-        if (client != null) {
+    /**
+     * @return Whether the timing of a request should be reported to the timing listener.
+     */
+    private boolean isTimingSampled() {
+        if (timingListener == null) {
+            return false;
+        }
+
+        double rate = timingSampleRate;
+        return rate >= 1 || (rate > 0 && SAMPLING_RANDOM.get().nextDouble() < rate);
+    }
+
+    /**
+     * Starts timing a request. When adaptive timeouts are enabled, all requests are timed, as their response times are
+     * used for the timeouts, but only the timings of sampled requests are reported.
+     */
+    private RequestTimer startTimer(HttpUriRequest request, int attempt, int retry) {
+        Header username = request.getFirstHeader(USERNAME_HEADER);
+        int userHash = 0;
+        if (username != null) {
+            userHash = USER_HASH_FUNCTION.hashString(username.getValue(), Charsets.UTF_8).asInt();
+        }
+
+        return RequestTimer.start(URIUtils.extractHost(request.getURI()), userHash, attempt, retry);
+    }
+
+    /**
+     * Notifies the {@link ClientEventListener}, if any, of a request being sent to the next endpoint.
+     */
+    private void notifyFailover(HttpUriRequest from, HttpUriRequest to, int attempt, RequestTiming.Outcome reason) {
+        RequestTimingListener listener = timingListener;
+        if (!(listener instanceof ClientEventListener)) {
+            return;
+        }
+
+        try {
+            ((ClientEventListener) listener).onFailover(getEndpoint(from), getEndpoint(to), attempt, reason);
+        } catch (RuntimeException e) {
+            log.warn("Error while notifying client event listener.", e);
+        }
+    }
+
+    private static String getEndpoint(HttpUriRequest request) {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        return host != null ? host.toHostString() : null;
+    }
+
+    /**
+     * Records the response time of a finished request, and reports its timing if it was sampled.
+     */
+    private void finishTimer(RequestTimer timer, boolean sampled, HttpHost host, RequestTiming.Outcome outcome,
+                             int status) {
+        if (timer == null) {
+            return;
+        }
+
+        RequestTiming timing = timer.finish(outcome, status);
+
+        // Only the time until the response headers are received counts, not the time spent waiting for a pooled
+        // connection or connecting. Errors may be returned immediately, they do not tell how long a response takes.
+        long waiting = timing.getDuration(RequestTiming.Phase.WAITING, TimeUnit.MILLISECONDS);
+        if (host != null && waiting >= 0 && status > 0 && status < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            latencies.record(host, waiting);
+        }
+
+        if (!sampled) {
+            return;
+        }
+
+        RequestTimingListener listener = timingListener;
+        if (listener != null) {
             try {
-                client.close();
-                client = null;
-            } catch (IOException e) {
-                log.warn("Could not close HttpClient", e);
+                listener.onRequestCompleted(timing);
+            } catch (RuntimeException e) {
+                log.warn("Error while notifying request timing listener.", e);
             }
         }
     }
 
     /**
-     * Creates a request for each MyTimetable API endpoint defined in the configuration.
+     * Executes the given requests in order, until a result is acquired. Requests which fail transiently are retried
+     * as allowed by the {@link RetryPolicy}, before failing over to the next request.
      *
-     * @param username Username the fetch the upcoming events for.
-     * @param locale Locale to get the response in
-     * @return List of {@link HttpUriRequest} objects, which should be executed in order, until a result is acquired.
+     * @param firstAttempt index of the first request in the failover order of all endpoints.
+     * @throws UnknownUserException when no request succeeded, and at least one endpoint reported the user as unknown.
      */
-    private ArrayList<HttpUriRequest> getApiRequests(String username, Locale locale) {
+    private List<Event> executeRequests(List<HttpUriRequest> requests, int firstAttempt) throws UnknownUserException {
+        HttpClientHandle handle = acquireHttpClient();
+
+        try {
+            return executeRequests(handle.getClient(), requests, firstAttempt);
+        } finally {
+            handle.release();
+        }
+    }
+
+    private List<Event> executeRequests(CloseableHttpClient client, List<HttpUriRequest> requests, int firstAttempt)
+            throws UnknownUserException {
+        RetryPolicy policy = retryPolicy;
+
+        EndpointAffinity affinity = endpointAffinity;
+
+        // Without adaptive timeouts, only sampled requests need to be timed.
+        boolean timeAll = configuration.get().getApiAdaptiveTimeoutFactor() > 0;
+
+        int unknownUserStatus = 0;
+
+        for (int i = 0; i < requests.size(); i++) {
+            HttpUriRequest request = requests.get(i);
+            HttpHost host = URIUtils.extractHost(request.getURI());
+            RequestTiming.Outcome lastOutcome = null;
+            int retries = 0;
+
+            while (true) {
+                CloseableHttpResponse response = null;
+                boolean retryable = false;
+
+                boolean sampled = isTimingSampled();
+                RequestTimer timer = sampled || timeAll ? startTimer(request, firstAttempt + i, retries) : null;
+                RequestTiming.Outcome outcome = RequestTiming.Outcome.IO_ERROR;
+                int status = 0;
+
+                if (affinity != null && host != null) {
+                    affinity.requestStarted(host);
+                }
+
+                try {
+                    response = client.execute(request);
+
+                    status = response.getStatusLine().getStatusCode();
+                    HttpEntity entity = response.getEntity();
+
+                    if (isUnknownUserStatus(status)) {
+                        unknownUserStatus = status;
+                        outcome = RequestTiming.Outcome.UNKNOWN_USER;
+                    } else if (!isSuccessStatus(status)) {
+                        log.error("Could not fetch results from MyTimetable API: HTTP status {}.", status);
+                        retryable = policy.isRetryable(status);
+                        outcome = RequestTiming.Outcome.HTTP_ERROR;
+                    } else if (entity != null) {
+                        InputStream stream = entity.getContent();
+                        outcome = RequestTiming.Outcome.INVALID_RESPONSE;
+
+                        if (sampled) {
+                            stream = timer.wrap(stream);
+                            timer.startDeserialization();
+                        }
+
+                        try {
+                            List<Event> events = mapper.readValue(stream,
+                                    mapper.getTypeFactory().constructCollectionType(List.class, Event.class));
+                            outcome = RequestTiming.Outcome.SUCCESS;
+                            return events;
+                        } catch (JsonParseException e) {
+                            log.error("Could not fetch results from MyTimetable API.", e);
+                        } catch (JsonMappingException e) {
+                            log.error("Could not fetch results from MyTimetable API.", e);
+                        } finally {
+                            if (sampled) {
+                                timer.endDeserialization();
+                            }
+
+                            stream.close();
+                        }
+                    } else {
+                        outcome = RequestTiming.Outcome.INVALID_RESPONSE;
+                    }
+                } catch (ClientProtocolException e) {
+                    log.error("Could not fetch results from MyTimetable API.", e);
+                } catch (IOException e) {
+                    log.error("Could not fetch results from MyTimetable API.", e);
+                    retryable = policy.isRetryable(e);
+                } finally {
+                    if (response != null) {
+                        try {
+                            response.close();
+                        } catch (IOException e) {
+                            log.warn("Error while closing HttpResponse.", e);
+                        }
+                    }
+
+                    finishTimer(timer, sampled, host, outcome, status);
+
+                    lastOutcome = outcome;
+
+                    if (affinity != null && host != null) {
+                        affinity.requestFinished(host);
+                    }
+                }
+
+                if (!retryable || request.isAborted() || !policy.tryRetry(retries)) {
+                    break;
+                }
+
+                long delay = policy.getBackoffDelay(retries++);
+                log.debug("Retrying request to MyTimetable API in {} ms.", delay);
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            if (i + 1 < requests.size()) {
+                notifyFailover(request, requests.get(i + 1), firstAttempt + i + 1, lastOutcome);
+            }
+        }
+
+        if (unknownUserStatus != 0) {
+            throw new UnknownUserException(unknownUserStatus);
+        }
+
+        return null;
+    }
+
+    /**
+     * Sets the executor used for bulk and hedged requests. The executor is not shut down when this service is
+     * closed. By default, an executor from {@link MyTimetableExecutors#newExecutor(int)}, limited to the maximum
+     * number of API connections, is created on first use.
+     *
+     * @param executor Executor to use, e.g. one running each task on a virtual thread.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        shutdownExecutor();
+
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (closed) {
+            throw new LocalizableException(CLOSED_MESSAGE);
+        }
+
+        if (executor == null) {
+            executor = MyTimetableExecutors.newExecutor(configuration.get().getApiMaxConnections());
+            ownsExecutor = true;
+        }
+
+        return executor;
+    }
+
+    /**
+     * Limits a platform thread pool created by this service to the new maximum number of API connections.
+     */
+    private synchronized void resizeExecutor(Configuration configuration) {
+        if (ownsExecutor && executor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) executor).setMaximumPoolSize(configuration.getApiMaxConnections());
+        }
+    }
+
+    private synchronized void shutdownExecutor() {
+        if (executor != null && ownsExecutor) {
+            executor.shutdownNow();
+        }
+
+        executor = null;
+    }
+
+    /**
+     * Shuts down this service. Requests in progress are completed, new requests fail with a
+     * {@link LocalizableException}.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        closePrefetchScheduler();
+
+        HttpClientHandle previous = httpClient;
+        httpClient = null;
+        if (previous != null) {
+            previous.retire();
+        }
+
+        shutdownExecutor();
+    }
+
+    /**
+     * Starts, stops or reconfigures prefetching, according to the <tt>prefetchRequestsPerMinute</tt> setting.
+     */
+    private synchronized void updatePrefetchScheduler(Configuration configuration) {
+        int requestsPerMinute = configuration.getPrefetchRequestsPerMinute();
+
+        if (requestsPerMinute <= 0 || closed) {
+            closePrefetchScheduler();
+        } else if (prefetchScheduler == null) {
+            prefetchScheduler = new PrefetchScheduler(this, requestsPerMinute);
+        } else {
+            prefetchScheduler.setRequestsPerMinute(requestsPerMinute);
+        }
+    }
+
+    private synchronized void closePrefetchScheduler() {
+        if (prefetchScheduler != null) {
+            prefetchScheduler.close();
+            prefetchScheduler = null;
+        }
+    }
+
+    /**
+     * Returns the username as known by MyTimetable, by applying the configured domain prefix and postfix.
+     *
+     * @param username Username to fetch the events for.
+     * @return Username to pass to the MyTimetable API.
+     */
+    private String getApiUsername(Configuration config, String username) {
         if (StringUtils.isBlank(username)) {
             log.error("Username cannot be empty.");
             throw new LocalizableException("Username cannot be empty.", "notLoggedIn");
         }
 
-        if (StringUtils.isBlank(configuration.getApiKey())) {
-            log.error("API key cannot be empty.");
-            throw new LocalizableException("API key cannot be empty.");
-        }
-
         // Prefix the username, for example when MyTimetable is used in a domain.
-        String domainPrefix = configuration.getUsernameDomainPrefix();
+        String domainPrefix = config.getUsernameDomainPrefix();
         if (domainPrefix != null && !domainPrefix.isEmpty()) {
             username = domainPrefix + '\\' + username;
         }
 
         // Postfix the username, for example when usernames need a domain postfix
-        String postfix = configuration.getUsernamePostfix();
+        String postfix = config.getUsernamePostfix();
         if (postfix != null && !postfix.isEmpty()) {
             username = username + postfix;
         }
 
-        // build request URI
-        Date currentTime = new Date();
+        return username;
+    }
+
+    /**
+     * Removes the events which have ended from a list of previously fetched upcoming events.
+     */
+    private static List<Event> removeEndedEvents(List<Event> events, Date now) {
+        List<Event> ret = new ArrayList<Event>(events.size());
+        for (Event event : events) {
+            long end = event.getEndTime();
+            if (end == Long.MIN_VALUE || end > now.getTime()) {
+                ret.add(event);
+            }
+        }
+
+        return ret;
+    }
+
+    private static String getCacheKey(String apiUsername, Locale locale) {
+        return locale != null ? apiUsername + '|' + locale : apiUsername;
+    }
+
+    /**
+     * Returns the key of a user in the {@link TimetableCacheProvider}. A provider may be shared with services using
+     * other timetable types, e.g. for the widgets on different pages, so the timetable types are part of the key. They
+     * are sorted, so services with equal sets of types share the cached events.
+     */
+    private static String getProviderKey(Configuration config, String key) {
+        return key + '|' + Joiner.on(',').join(new TreeSet<String>(config.getTimetableTypes()));
+    }
 
+    /**
+     * Creates a request for each MyTimetable API endpoint defined in the configuration.
+     *
+     * @param config Configuration to create the requests with.
+     * @param username Username, as returned by {@link #getApiUsername(Configuration, String)}, to fetch the events
+     *                 for.
+     * @param locale Locale to get the response in
+     * @param startDate Date to fetch the events from.
+     * @param endDate Date to fetch the events until, or {@code null} for no end date.
+     * @param limit Maximum number of events to fetch, or 0 for no limit.
+     * @return List of {@link HttpUriRequest} objects, which should be executed in order, until a result is acquired.
+     */
+    private ArrayList<HttpUriRequest> getApiRequests(Configuration config, String username, Locale locale,
+                                                     Date startDate, Date endDate, int limit) {
+        if (StringUtils.isBlank(config.getApiKey())) {
+            log.error("API key cannot be empty.");
+            throw new LocalizableException("API key cannot be empty.");
+        }
+
+        // build request URI
         ArrayList<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
 
-        for (String uri : configuration.getApiEndpointUris()) {
+        List<String> endpoints = getEndpoints(config, username);
+
+        for (int i = 0; i < endpoints.size(); i++) {
+            String uri = endpoints.get(i);
             String baseUrl;
 
             if (uri.endsWith("/")) {
@@ -200,18 +1279,25 @@ private ArrayList<HttpUriRequest> getApiRequests(String username, Locale locale)
 
             try {
                 URIBuilder uriBuilder = new URIBuilder(baseUrl);
-                uriBuilder.addParameter("startDate", Long.toString(currentTime.getTime()));
-                uriBuilder.addParameter("limit", Integer.toString(configuration.getMaxNumberOfEvents()));
+                uriBuilder.addParameter("startDate", Long.toString(startDate.getTime()));
+
+                if (endDate != null) {
+                    uriBuilder.addParameter("endDate", Long.toString(endDate.getTime()));
+                }
+
+                if (limit > 0) {
+                    uriBuilder.addParameter("limit", Integer.toString(limit));
+                }
 
-                for (String type : configuration.getTimetableTypes()) {
+                for (String type : config.getTimetableTypes()) {
                     uriBuilder.addParameter("type", type);
                 }
 
                 URI apiUri = uriBuilder.build();
 
                 HttpGet request = new HttpGet(apiUri);
-                request.addHeader("apiToken", configuration.getApiKey());
-                request.addHeader("requestedAuth", username);
+                request.addHeader("apiToken", config.getApiKey());
+                request.addHeader(USERNAME_HEADER, username);
 
                 if (locale != null && !locale.getLanguage().isEmpty()) {
                     if (!locale.getCountry().isEmpty()) {
@@ -221,10 +1307,15 @@ private ArrayList<HttpUriRequest> getApiRequests(String username, Locale locale)
                     }
                 }
 
-                // Configure request timeouts.
+                // Configure request timeouts. The last endpoint always waits for the configured timeout.
+                int socketTimeout = config.getApiSocketTimeout();
+                if (i < endpoints.size() - 1) {
+                    socketTimeout = getAdaptiveSocketTimeout(config, apiUri);
+                }
+
                 RequestConfig requestConfig = RequestConfig.custom()
-                        .setSocketTimeout(configuration.getApiSocketTimeout())
-                        .setConnectTimeout(configuration.getApiConnectTimeout())
+                        .setSocketTimeout(socketTimeout)
+                        .setConnectTimeout(config.getApiConnectTimeout())
                         .build();
 
                 request.setConfig(requestConfig);
@@ -242,4 +1333,54 @@ private ArrayList<HttpUriRequest> getApiRequests(String username, Locale locale)
 
         return requests;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Executes a single API request.
+     */
+    private class RequestTask implements Callable<List<Event>> {
+
+        private final HttpUriRequest request;
+
+        private final int attempt;
+
+        /**
+         * Priority of the thread creating the task.
+         */
+        private final RequestPriority priority = RequestPriority.get();
+
+        private RequestTask(HttpUriRequest request, int attempt) {
+            this.request = request;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public List<Event> call() throws UnknownUserException {
+            RequestPriority previous = RequestPriority.set(priority);
+            try {
+                return executeRequests(Collections.singletonList(request), attempt);
+            } finally {
+                RequestPriority.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Thrown when the MyTimetable API reports that the requested user does not exist.
+     */
+    private static class UnknownUserException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private UnknownUserException(int status) {
+            super("Unknown user, HTTP status " + status);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.exception.LocalizableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Registry of MyTimetable services for several tenants (institutions), each with its own {@link Configuration}.
+ * <p/>
+ * All services share a single connection pool (see {@link SharedHttpClientBuilder}), a single executor for bulk and
+ * hedged requests, and a budget for the number of cached events. The budget is divided equally between the tenants,
+ * and redivided whenever a tenant is added or removed, so adding a tenant costs little more than its configuration.
+ * <p/>
+ * Calls are routed using {@link #getService(String)}, which does not take any locks.
+ */
+public class MyTimetableServiceRegistry implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MyTimetableServiceRegistry.class);
+
+    private final ConcurrentMap<String, MyTimetableServiceImpl> services =
+            new ConcurrentHashMap<String, MyTimetableServiceImpl>();
+
+    private final SharedHttpClientBuilder clientBuilder;
+
+    private final ExecutorService executor;
+
+    private final int maxCachedEvents;
+
+
+    /**
+     * @param maxTotalConnections maximum number of connections to the MyTimetable APIs, over all tenants.
+     * @param maxCachedEvents     maximum number of cached events, over all tenants.
+     */
+    public MyTimetableServiceRegistry(int maxTotalConnections, int maxCachedEvents) {
+        this.clientBuilder = new SharedHttpClientBuilder(maxTotalConnections);
+        this.executor = MyTimetableExecutors.newExecutor(maxTotalConnections);
+        this.maxCachedEvents = maxCachedEvents;
+    }
+
+    /**
+     * Adds a tenant, or replaces the configuration of an existing tenant.
+     *
+     * @param tenantId      identifier of the tenant.
+     * @param configuration configuration of the tenant.
+     * @return The service of the tenant.
+     */
+    public synchronized MyTimetableServiceImpl putTenant(String tenantId, Configuration configuration) {
+        MyTimetableServiceImpl service = services.get(tenantId);
+
+        if (service != null) {
+            service.onConfigurationChanged(configuration);
+        } else {
+            service = new MyTimetableServiceImpl(configuration, clientBuilder);
+            service.setExecutor(executor);
+            services.put(tenantId, service);
+
+            log.info("Added MyTimetable tenant {}.", tenantId);
+        }
+
+        updateCacheQuotas();
+        return service;
+    }
+
+    /**
+     * Removes a tenant, and closes its service.
+     *
+     * @param tenantId identifier of the tenant.
+     */
+    public synchronized void removeTenant(String tenantId) {
+        MyTimetableServiceImpl service = services.remove(tenantId);
+
+        if (service != null) {
+            service.close();
+            updateCacheQuotas();
+
+            log.info("Removed MyTimetable tenant {}.", tenantId);
+        }
+    }
+
+    /**
+     * Returns the service of the given tenant.
+     *
+     * @param tenantId identifier of the tenant.
+     * @return The service of the tenant.
+     * @throws LocalizableException when the tenant does not exist.
+     */
+    public MyTimetableRangeService getService(String tenantId) {
+        MyTimetableRangeService service = services.get(tenantId);
+
+        if (service == null) {
+            log.error("Unknown MyTimetable tenant {}.", tenantId);
+            throw new LocalizableException("Unknown MyTimetable tenant " + tenantId + ".");
+        }
+
+        return service;
+    }
+
+    public Set<String> getTenantIds() {
+        return Collections.unmodifiableSet(services.keySet());
+    }
+
+    /**
+     * Closes the services of all tenants, and the shared connection pool and executor.
+     */
+    @Override
+    public synchronized void close() {
+        for (MyTimetableServiceImpl service : services.values()) {
+            service.close();
+        }
+
+        services.clear();
+        clientBuilder.close();
+        executor.shutdownNow();
+    }
+
+    private void updateCacheQuotas() {
+        if (services.isEmpty()) {
+            return;
+        }
+
+        int quota = maxCachedEvents / services.size();
+        for (MyTimetableServiceImpl service : services.values()) {
+            service.setEventCacheQuota(quota);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the upcoming events of users shortly before they are expected to visit.
+ * <p/>
+ * For every user, the service records when the user visits, relative to the start of the user's next event and as a
+ * time of day. The statistics decay with a half-life of a week, so they follow changes in the timetable, and only the
+ * most recently active users are tracked. Every minute, the users which are expected to visit in a few minutes are
+ * refreshed, most likely visitors first, within a budget of API requests per minute.
+ */
+class PrefetchScheduler implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PrefetchScheduler.class);
+
+    private static final long MINUTE = 60 * 1000L;
+
+    private static final long TICK_INTERVAL = MINUTE;
+
+    /**
+     * Time before the expected visit at which the events are refreshed.
+     */
+    private static final long PREFETCH_MARGIN = 2 * MINUTE;
+
+    /**
+     * Time after a visit or refresh in which the events of a user are not refreshed again.
+     */
+    private static final long MIN_REFRESH_INTERVAL = 10 * MINUTE;
+
+    /**
+     * Maximum time between a visit and the start of the next event, for the visit to count as preceding the event.
+     */
+    private static final long MAX_LEAD_TIME = 60 * MINUTE;
+
+    private static final long HALF_LIFE = 7 * 24 * 60 * MINUTE;
+
+    private static final int SLOT_LENGTH_MINUTES = 15;
+
+    private static final int SLOTS = 24 * 60 / SLOT_LENGTH_MINUTES;
+
+    private static final int MAXIMUM_USERS = 10000;
+
+    /**
+     * Minimum decayed number of visits before a prediction is trusted.
+     */
+    private static final double MIN_CONFIDENCE = 2;
+
+    private static final int MAX_UPCOMING_STARTS = 10;
+
+    private final MyTimetableServiceImpl service;
+
+    private final Cache<String, AccessStatistics> statistics = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_USERS)
+            .expireAfterAccess(4 * HALF_LIFE, TimeUnit.MILLISECONDS)
+            .build();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("mytimetable-prefetch-%d").setDaemon(true).build());
+
+    private volatile int requestsPerMinute;
+
+
+    PrefetchScheduler(MyTimetableServiceImpl service, int requestsPerMinute) {
+        this.service = service;
+        this.requestsPerMinute = requestsPerMinute;
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetch(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    log.error("Error while prefetching upcoming events.", e);
+                }
+            }
+        }, TICK_INTERVAL, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    void setRequestsPerMinute(int requestsPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+    }
+
+    /**
+     * Records a visit of a user.
+     *
+     * @param upcoming upcoming events of the user, as returned by the visit.
+     */
+    void recordAccess(String username, Locale locale, long now, List<Event> upcoming) {
+        String key = username + "|" + locale;
+
+        AccessStatistics stats = statistics.getIfPresent(key);
+        if (stats == null) {
+            stats = new AccessStatistics(username, locale);
+            AccessStatistics existing = statistics.asMap().putIfAbsent(key, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+
+        stats.recordAccess(now, upcoming);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Refreshes the events of the users which are expected to visit soon.
+     */
+    void prefetch(long now) {
+        List<AccessStatistics> candidates = new ArrayList<AccessStatistics>();
+        long windowStart = now + PREFETCH_MARGIN;
+        long windowEnd = windowStart + TICK_INTERVAL;
+
+        for (AccessStatistics stats : statistics.asMap().values()) {
+            if (stats.updateScore(now, windowStart, windowEnd) > 0) {
+                candidates.add(stats);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(candidates, new Comparator<AccessStatistics>() {
+            @Override
+            public int compare(AccessStatistics o1, AccessStatistics o2) {
+                return Double.compare(o2.score, o1.score);
+            }
+        });
+
+        int budget = Math.min(requestsPerMinute, candidates.size());
+        log.debug("Prefetching upcoming events of {} of {} expected users.", budget, candidates.size());
+
+        for (int i = 0; i < budget && !Thread.currentThread().isInterrupted(); i++) {
+            AccessStatistics stats = candidates.get(i);
+
+            try {
+                stats.recordPrefetch(now, service.prefetchUpcomingEvents(stats.username, stats.locale));
+            } catch (RuntimeException e) {
+                log.warn("Could not prefetch upcoming events of user " + stats.username + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Decaying statistics of the visits of a single user.
+     */
+    private static class AccessStatistics {
+
+        private final String username;
+
+        private final Locale locale;
+
+        /**
+         * Decayed number of visits, by time of day.
+         */
+        private final float[] slots = new float[SLOTS];
+
+        /**
+         * Decayed number of visits preceding an event.
+         */
+        private double leadWeight = 0;
+
+        /**
+         * Decayed mean time between a visit and the start of the next event.
+         */
+        private double leadMean = 0;
+
+        private long[] upcomingStarts = new long[0];
+
+        private long lastDecay;
+
+        private long lastRefresh = 0;
+
+        /**
+         * Likelihood of a visit in the window of the current prefetch run, only used by the scheduler thread.
+         */
+        private double score;
+
+
+        private AccessStatistics(String username, Locale locale) {
+            this.username = username;
+            this.locale = locale;
+            this.lastDecay = System.currentTimeMillis();
+        }
+
+        private synchronized void recordAccess(long now, List<Event> upcoming) {
+            decay(now);
+
+            slots[getSlot(now)] += 1;
+            lastRefresh = now;
+
+            if (upcoming != null) {
+                updateUpcomingStarts(now, upcoming);
+
+                for (long start : upcomingStarts) {
+                    long lead = start - now;
+
+                    if (lead > 0 && lead <= MAX_LEAD_TIME) {
+                        leadWeight += 1;
+                        leadMean += (lead - leadMean) / leadWeight;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private synchronized void recordPrefetch(long now, List<Event> upcoming) {
+            lastRefresh = now;
+
+            if (upcoming != null) {
+                updateUpcomingStarts(now, upcoming);
+            }
+        }
+
+        /**
+         * Calculates the likelihood of a visit between <tt>windowStart</tt> and <tt>windowEnd</tt>.
+         *
+         * @return The score, 0 if no visit is expected or the events were refreshed recently.
+         */
+        private synchronized double updateScore(long now, long windowStart, long windowEnd) {
+            score = 0;
+
+            if (now - lastRefresh < MIN_REFRESH_INTERVAL) {
+                return score;
+            }
+
+            decay(now);
+
+            // Visits shortly before the next event of the user.
+            if (leadWeight >= MIN_CONFIDENCE) {
+                for (long start : upcomingStarts) {
+                    long expected = start - (long) leadMean;
+
+                    if (expected >= windowStart && expected < windowEnd) {
+                        score = leadWeight;
+                        break;
+                    }
+                }
+            }
+
+            // Visits at the same time of day.
+            float slot = slots[getSlot(windowStart)];
+            if (slot >= MIN_CONFIDENCE) {
+                score = Math.max(score, slot);
+            }
+
+            return score;
+        }
+
+        private void updateUpcomingStarts(long now, List<Event> upcoming) {
+            List<Long> starts = new ArrayList<Long>();
+
+            for (Event event : upcoming) {
+                long start = event.getStartTime();
+                if (start > now) {
+                    starts.add(start);
+
+                    if (starts.size() == MAX_UPCOMING_STARTS) {
+                        break;
+                    }
+                }
+            }
+
+            upcomingStarts = new long[starts.size()];
+            for (int i = 0; i < upcomingStarts.length; i++) {
+                upcomingStarts[i] = starts.get(i);
+            }
+        }
+
+        private void decay(long now) {
+            long elapsed = now - lastDecay;
+            if (elapsed <= 0) {
+                return;
+            }
+
+            double factor = Math.pow(0.5, (double) elapsed / HALF_LIFE);
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] *= factor;
+            }
+
+            leadWeight *= factor;
+            lastDecay = now;
+        }
+
+        private static int getSlot(long time) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(time);
+
+            return (calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE)) / SLOT_LENGTH_MINUTES;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection manager which separates the connection leases of interactive and background requests, see
+ * {@link RequestPriority}.
+ * <p/>
+ * Background leases are limited to a number of connections, so the remaining connections of the pool are reserved
+ * for interactive requests. Within their share, background leases do not wait for interactive leases, so they cannot
+ * starve under a constant interactive load.
+ */
+class PriorityConnectionManager implements HttpClientConnectionManager {
+
+    private final HttpClientConnectionManager delegate;
+
+    private final int maxBackgroundConnections;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    /**
+     * Connections leased by background requests, and not yet released.
+     */
+    private final Set<HttpClientConnection> backgroundConnections =
+            Collections.newSetFromMap(new ConcurrentHashMap<HttpClientConnection, Boolean>());
+
+    /**
+     * Number of background leases in progress or leased, guarded by {@link #lock}.
+     */
+    private int backgroundLeases = 0;
+
+    private volatile boolean shutdown = false;
+
+
+    /**
+     * @param delegate                 connection manager to lease the connections from.
+     * @param maxBackgroundConnections maximum number of connections leased by background requests, at least 1.
+     */
+    PriorityConnectionManager(HttpClientConnectionManager delegate, int maxBackgroundConnections) {
+        this.delegate = delegate;
+        this.maxBackgroundConnections = Math.max(1, maxBackgroundConnections);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        if (RequestPriority.get() == RequestPriority.BACKGROUND) {
+            return new BackgroundConnectionRequest(route, state);
+        }
+
+        return delegate.requestConnection(route, state);
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration,
+                                  TimeUnit timeUnit) {
+        // The connection is detached from the pool on release, after which the methods of conn (including hashCode)
+        // throw, so it is looked up first.
+        boolean background = backgroundConnections.remove(conn);
+
+        try {
+            delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+        } finally {
+            if (background) {
+                releaseBackgroundLease();
+            }
+        }
+    }
+
+    @Override
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+            throws IOException {
+        delegate.connect(conn, route, connectTimeout, context);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context)
+            throws IOException {
+        delegate.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+        delegate.closeIdleConnections(idleTime, timeUnit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        delegate.shutdown();
+    }
+
+    private void releaseBackgroundLease() {
+        lock.lock();
+        try {
+            backgroundLeases--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Waits for a background lease to become available, before leasing a connection from the pool.
+     */
+    private class BackgroundConnectionRequest implements ConnectionRequest {
+
+        private final HttpRoute route;
+
+        private final Object state;
+
+        private volatile boolean cancelled = false;
+
+        private volatile ConnectionRequest request;
+
+
+        private BackgroundConnectionRequest(HttpRoute route, Object state) {
+            this.route = route;
+            this.state = state;
+        }
+
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit tunit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+            // A timeout of 0 or less waits indefinitely, like the pool itself.
+            long deadline = timeout > 0 ? System.nanoTime() + tunit.toNanos(timeout) : 0;
+
+            lock.lock();
+            try {
+                while (backgroundLeases >= maxBackgroundConnections) {
+                    if (cancelled) {
+                        throw new InterruptedException("Operation aborted");
+                    }
+
+                    if (shutdown) {
+                        throw new IllegalStateException("Connection pool shut down");
+                    }
+
+                    if (deadline == 0) {
+                        changed.await();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new ConnectionPoolTimeoutException("Timeout waiting for background connection");
+                        }
+
+                        changed.awaitNanos(remaining);
+                    }
+                }
+
+                backgroundLeases++;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean leased = false;
+            try {
+                request = delegate.requestConnection(route, state);
+                if (cancelled) {
+                    request.cancel();
+                }
+
+                long remaining = 0;
+                if (deadline != 0) {
+                    remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                }
+
+                HttpClientConnection conn = request.get(remaining, TimeUnit.MILLISECONDS);
+
+                backgroundConnections.add(conn);
+                leased = true;
+                return conn;
+            } finally {
+                if (!leased) {
+                    releaseBackgroundLease();
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            ConnectionRequest current = request;
+            return current == null || current.cancel();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+/**
+ * Priority of the requests to the MyTimetable API made by the current thread.
+ * <p/>
+ * Background requests, e.g. for prefetching, synchronization jobs or exports, lease their connections from the same
+ * pool as interactive requests. They may use at most <tt>apiMaxConnections - apiReservedConnections</tt> connections,
+ * so when connections are reserved, background work cannot use up the pool. Wrap background work as follows:
+ * <pre>
+ * RequestPriority previous = RequestPriority.set(RequestPriority.BACKGROUND);
+ * try {
+ *     service.getEvents(username, from, to, locale);
+ * } finally {
+ *     RequestPriority.set(previous);
+ * }
+ * </pre>
+ * Requests the service sends from other threads on behalf of a call, e.g. hedged and bulk requests, have the
+ * priority of the calling thread.
+ */
+public enum RequestPriority {
+
+    /**
+     * Requests on behalf of a user who is waiting for the response. This is the default.
+     */
+    INTERACTIVE,
+
+    /**
+     * Requests nobody is waiting for.
+     */
+    BACKGROUND;
+
+    private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<RequestPriority>();
+
+
+    /**
+     * @return Priority of the requests made by the current thread.
+     */
+    public static RequestPriority get() {
+        RequestPriority priority = CURRENT.get();
+        return priority != null ? priority : INTERACTIVE;
+    }
+
+    /**
+     * Sets the priority of the requests made by the current thread.
+     *
+     * @param priority priority to use, or {@code null} for the default.
+     * @return The previous priority, to restore afterwards.
+     */
+    public static RequestPriority set(RequestPriority priority) {
+        RequestPriority previous = get();
+
+        if (priority == null || priority == INTERACTIVE) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(priority);
+        }
+
+        return previous;
+    }
+}
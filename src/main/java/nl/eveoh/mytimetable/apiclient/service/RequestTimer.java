@@ -0,0 +1,381 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of a request to the MyTimetable API, see {@link RequestTiming}.
+ * <p/>
+ * HttpClient does not pass the request to all of its components, so the timer of the request being executed is kept
+ * in a thread local, and read by the instrumented components created by the static methods of this class. When no
+ * request is timed on the current thread, these components only cost a thread local lookup.
+ */
+final class RequestTimer {
+
+    private static final ThreadLocal<RequestTimer> CURRENT = new ThreadLocal<RequestTimer>();
+
+    private final String endpoint;
+
+    private final int userHash;
+
+    private final int attempt;
+
+    private final int retry;
+
+    private final long start = System.nanoTime();
+
+    private final long[] durations = new long[RequestTiming.Phase.values().length];
+
+    private long bytesRead = 0;
+
+    private long handshakeStart = -1;
+
+    private long deserializationStart = -1;
+
+    private long transferBeforeDeserialization;
+
+
+    private RequestTimer(String endpoint, int userHash, int attempt, int retry) {
+        this.endpoint = endpoint;
+        this.userHash = userHash;
+        this.attempt = attempt;
+        this.retry = retry;
+
+        Arrays.fill(durations, -1);
+    }
+
+    /**
+     * Starts timing a request on the current thread.
+     */
+    static RequestTimer start(HttpHost host, int userHash, int attempt, int retry) {
+        RequestTimer timer = new RequestTimer(host != null ? host.toHostString() : null, userHash, attempt, retry);
+        CURRENT.set(timer);
+        return timer;
+    }
+
+    /**
+     * Stops timing the request on the current thread.
+     */
+    RequestTiming finish(RequestTiming.Outcome outcome, int status) {
+        CURRENT.remove();
+        return new RequestTiming(endpoint, userHash, attempt, retry, durations, System.nanoTime() - start, bytesRead,
+                outcome, status);
+    }
+
+    /**
+     * Wraps the response body, to measure the transfer and count the bytes read.
+     */
+    InputStream wrap(InputStream in) {
+        return new TimedInputStream(in, this);
+    }
+
+    void startDeserialization() {
+        deserializationStart = System.nanoTime();
+        transferBeforeDeserialization = Math.max(durations[RequestTiming.Phase.TRANSFER.ordinal()], 0);
+    }
+
+    void endDeserialization() {
+        if (deserializationStart >= 0) {
+            long transfer = Math.max(durations[RequestTiming.Phase.TRANSFER.ordinal()], 0)
+                    - transferBeforeDeserialization;
+            add(RequestTiming.Phase.DESERIALIZATION, System.nanoTime() - deserializationStart - transfer);
+            deserializationStart = -1;
+        }
+    }
+
+    private void add(RequestTiming.Phase phase, long duration) {
+        int i = phase.ordinal();
+        durations[i] = Math.max(durations[i], 0) + duration;
+    }
+
+    /**
+     * Records the start of a TLS handshake of a request timed on the current thread. Called by socket factories just
+     * before the handshake.
+     */
+    static void handshakeStarted() {
+        RequestTimer timer = CURRENT.get();
+        if (timer != null) {
+            timer.handshakeStart = System.nanoTime();
+        }
+    }
+
+    static DnsResolver timeDnsResolver(DnsResolver delegate) {
+        return new TimedDnsResolver(delegate);
+    }
+
+    static HttpClientConnectionManager timeLeases(HttpClientConnectionManager delegate) {
+        return new TimedConnectionManager(delegate);
+    }
+
+    static ConnectionSocketFactory timeConnects(ConnectionSocketFactory delegate) {
+        if (delegate instanceof LayeredConnectionSocketFactory) {
+            return new TimedLayeredConnectionSocketFactory((LayeredConnectionSocketFactory) delegate);
+        }
+
+        return new TimedConnectionSocketFactory(delegate);
+    }
+
+    static HttpRequestExecutor newRequestExecutor() {
+        return new TimedRequestExecutor();
+    }
+
+
+    private static class TimedInputStream extends FilterInputStream {
+
+        private final RequestTimer timer;
+
+        private TimedInputStream(InputStream in, RequestTimer timer) {
+            super(in);
+            this.timer = timer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            timer.add(RequestTiming.Phase.TRANSFER, System.nanoTime() - start);
+
+            if (b >= 0) {
+                timer.bytesRead++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = super.read(b, off, len);
+            timer.add(RequestTiming.Phase.TRANSFER, System.nanoTime() - start);
+
+            if (n > 0) {
+                timer.bytesRead += n;
+            }
+
+            return n;
+        }
+    }
+
+    private static class TimedDnsResolver implements DnsResolver {
+
+        private final DnsResolver delegate;
+
+        private TimedDnsResolver(DnsResolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            RequestTimer timer = CURRENT.get();
+            if (timer == null) {
+                return delegate.resolve(host);
+            }
+
+            long start = System.nanoTime();
+            try {
+                return delegate.resolve(host);
+            } finally {
+                timer.add(RequestTiming.Phase.DNS, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class TimedConnectionSocketFactory implements ConnectionSocketFactory {
+
+        private final ConnectionSocketFactory delegate;
+
+        private TimedConnectionSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            RequestTimer timer = CURRENT.get();
+            if (timer == null) {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            }
+
+            long start = System.nanoTime();
+            timer.handshakeStart = -1;
+
+            try {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            } finally {
+                long end = System.nanoTime();
+
+                if (timer.handshakeStart >= 0) {
+                    timer.add(RequestTiming.Phase.CONNECT, timer.handshakeStart - start);
+                    timer.add(RequestTiming.Phase.TLS_HANDSHAKE, end - timer.handshakeStart);
+                } else {
+                    timer.add(RequestTiming.Phase.CONNECT, end - start);
+                }
+            }
+        }
+    }
+
+    private static class TimedLayeredConnectionSocketFactory extends TimedConnectionSocketFactory
+            implements LayeredConnectionSocketFactory {
+
+        private final LayeredConnectionSocketFactory delegate;
+
+        private TimedLayeredConnectionSocketFactory(LayeredConnectionSocketFactory delegate) {
+            super(delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+                throws IOException {
+            RequestTimer timer = CURRENT.get();
+            if (timer == null) {
+                return delegate.createLayeredSocket(socket, target, port, context);
+            }
+
+            long start = System.nanoTime();
+            try {
+                return delegate.createLayeredSocket(socket, target, port, context);
+            } finally {
+                timer.add(RequestTiming.Phase.TLS_HANDSHAKE, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class TimedRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            RequestTimer timer = CURRENT.get();
+            if (timer == null) {
+                return super.execute(request, conn, context);
+            }
+
+            long start = System.nanoTime();
+            try {
+                return super.execute(request, conn, context);
+            } finally {
+                timer.add(RequestTiming.Phase.WAITING, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class TimedConnectionManager implements HttpClientConnectionManager {
+
+        private final HttpClientConnectionManager delegate;
+
+        private TimedConnectionManager(HttpClientConnectionManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = delegate.requestConnection(route, state);
+
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit tunit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    RequestTimer timer = CURRENT.get();
+                    if (timer == null) {
+                        return request.get(timeout, tunit);
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, tunit);
+                    } finally {
+                        timer.add(RequestTiming.Phase.POOL_LEASE, System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration,
+                                      TimeUnit timeUnit) {
+            delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+        }
+
+        @Override
+        public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+                throws IOException {
+            delegate.connect(conn, route, connectTimeout, context);
+        }
+
+        @Override
+        public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            delegate.upgrade(conn, route, context);
+        }
+
+        @Override
+        public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context)
+                throws IOException {
+            delegate.routeComplete(conn, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+            delegate.closeIdleConnections(idleTime, timeUnit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            delegate.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
+}
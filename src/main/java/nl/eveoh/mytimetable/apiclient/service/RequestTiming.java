@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breakdown of the time spent on a single request to the MyTimetable API.
+ * <p/>
+ * Phases which did not take place for the request, such as connecting when a pooled connection was reused, have a
+ * duration of -1. Phases are only measured by HttpClients built by {@link MyTimetableHttpClientBuilderImpl} and its
+ * subclasses; other clients only report the transfer and deserialization of the response.
+ */
+public final class RequestTiming {
+
+    public enum Phase {
+        /**
+         * Waiting for a connection from the connection pool.
+         */
+        POOL_LEASE,
+
+        /**
+         * Resolving the host name of the endpoint.
+         */
+        DNS,
+
+        /**
+         * Opening the TCP connection.
+         */
+        CONNECT,
+
+        /**
+         * Performing the TLS handshake.
+         */
+        TLS_HANDSHAKE,
+
+        /**
+         * Sending the request, and waiting for the response headers (time to first byte).
+         */
+        WAITING,
+
+        /**
+         * Reading the response body.
+         */
+        TRANSFER,
+
+        /**
+         * Mapping the response body to events, excluding the time spent reading it.
+         */
+        DESERIALIZATION
+    }
+
+    public enum Outcome {
+        SUCCESS,
+
+        /**
+         * The API reported the user as unknown (HTTP 404).
+         */
+        UNKNOWN_USER,
+
+        /**
+         * The API responded with an unexpected HTTP status.
+         */
+        HTTP_ERROR,
+
+        /**
+         * The response could not be read or mapped to events.
+         */
+        INVALID_RESPONSE,
+
+        /**
+         * The request failed with an I/O error, e.g. a timeout or a refused connection.
+         */
+        IO_ERROR
+    }
+
+    private final String endpoint;
+
+    private final int userHash;
+
+    private final int attempt;
+
+    private final int retry;
+
+    private final long[] durations;
+
+    private final long totalTime;
+
+    private final long bytesRead;
+
+    private final Outcome outcome;
+
+    private final int status;
+
+
+    RequestTiming(String endpoint, int userHash, int attempt, int retry, long[] durations, long totalTime,
+                  long bytesRead, Outcome outcome, int status) {
+        this.endpoint = endpoint;
+        this.userHash = userHash;
+        this.attempt = attempt;
+        this.retry = retry;
+        this.durations = durations;
+        this.totalTime = totalTime;
+        this.bytesRead = bytesRead;
+        this.outcome = outcome;
+        this.status = status;
+    }
+
+    /**
+     * @return Host and port of the API endpoint the request was sent to.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return Hash of the username the request was for, to correlate the requests of a user without recording the
+     *         username itself.
+     */
+    public int getUserHash() {
+        return userHash;
+    }
+
+    /**
+     * @return Index of the endpoint in the failover order, 0 for the first endpoint.
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * @return Number of times the request to this endpoint was retried before, 0 for the first try.
+     */
+    public int getRetry() {
+        return retry;
+    }
+
+    /**
+     * @return Duration of the given phase in the given unit, or -1 if the phase did not take place.
+     */
+    public long getDuration(Phase phase, TimeUnit unit) {
+        long duration = durations[phase.ordinal()];
+        return duration < 0 ? -1 : unit.convert(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Total duration of the request in the given unit.
+     */
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Number of bytes read from the response body.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return HTTP status of the response, or 0 if no response was received.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(endpoint)
+                .append(" attempt=").append(attempt)
+                .append(" retry=").append(retry)
+                .append(" outcome=").append(outcome)
+                .append(" status=").append(status)
+                .append(" total=").append(getTotalTime(TimeUnit.MILLISECONDS)).append("ms");
+
+        for (Phase phase : Phase.values()) {
+            long duration = durations[phase.ordinal()];
+            if (duration >= 0) {
+                sb.append(' ').append(phase.name().toLowerCase()).append('=')
+                        .append(TimeUnit.NANOSECONDS.toMillis(duration)).append("ms");
+            }
+        }
+
+        return sb.append(" bytes=").append(bytesRead).toString();
+    }
+}
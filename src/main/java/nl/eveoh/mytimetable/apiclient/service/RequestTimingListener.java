@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+/**
+ * Receives the timing breakdown of requests to the MyTimetable API, see
+ * {@link MyTimetableServiceImpl#setRequestTimingListener(RequestTimingListener, double)}.
+ */
+public interface RequestTimingListener {
+
+    /**
+     * Called after each (sampled) request, on the thread which executed it. Implementations should be fast and must
+     * be thread-safe.
+     */
+    public void onRequestCompleted(RequestTiming timing);
+}
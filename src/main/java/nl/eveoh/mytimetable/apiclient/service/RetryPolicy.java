@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.Random;
+
+/**
+ * Decides whether, and when, a failed request to an API endpoint is retried.
+ * <p/>
+ * Only transient failures are retried: connections which were closed or reset by the server (typically stale pooled
+ * connections), and HTTP 502, 503 and 504 responses. Timeouts and refused connections are not retried, the service
+ * fails over to the next endpoint instead. Retries are delayed with exponential backoff and full jitter.
+ * <p/>
+ * The number of retries is capped by a budget: every request adds a fraction of a token to it, and every retry takes
+ * a whole token. This keeps retries below a percentage of the traffic, so a struggling API is not overloaded by a
+ * storm of retries. This class is thread-safe.
+ */
+public class RetryPolicy {
+
+    /**
+     * Maximum number of tokens in the budget, which is also the number of retries allowed in a burst.
+     */
+    private static final double MAX_BALANCE = 10;
+
+    private final Random random = new Random();
+
+    private final int maxRetries;
+
+    private final long baseDelay;
+
+    private final long maxDelay;
+
+    private final double tokensPerRequest;
+
+    private double balance = MAX_BALANCE;
+
+
+    /**
+     * @param maxRetries       maximum number of retries of a single request.
+     * @param baseDelay        delay before the first retry, in milliseconds. Doubles with every next retry.
+     * @param maxDelay         maximum delay before a retry, in milliseconds.
+     * @param budgetPercentage maximum number of retries, as a percentage of the number of requests.
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, int budgetPercentage) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.tokensPerRequest = budgetPercentage / 100.0;
+    }
+
+    public RetryPolicy(Configuration configuration) {
+        this(configuration.getApiMaxRetries(), configuration.getApiRetryBaseDelay(),
+                configuration.getApiRetryMaxDelay(), configuration.getApiRetryBudgetPercentage());
+    }
+
+    /**
+     * @return Whether a request which failed with the given exception may succeed when retried.
+     */
+    public boolean isRetryable(IOException e) {
+        return e instanceof NoHttpResponseException
+                || (e instanceof SocketException && !(e instanceof ConnectException));
+    }
+
+    /**
+     * @return Whether a request which received a response with the given status may succeed when retried.
+     */
+    public boolean isRetryable(int status) {
+        return status == HttpStatus.SC_BAD_GATEWAY
+                || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+                || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Records that a request is made, adding to the retry budget.
+     */
+    public synchronized void recordRequest() {
+        balance = Math.min(MAX_BALANCE, balance + tokensPerRequest);
+    }
+
+    /**
+     * Takes a retry from the budget, if allowed.
+     *
+     * @param retries number of times the request has been retried already.
+     * @return Whether the request may be retried.
+     */
+    public synchronized boolean tryRetry(int retries) {
+        if (retries >= maxRetries || balance < 1) {
+            return false;
+        }
+
+        balance -= 1;
+        return true;
+    }
+
+    /**
+     * @param retries number of times the request has been retried already.
+     * @return Time to wait before the next retry, in milliseconds.
+     */
+    public long getBackoffDelay(int retries) {
+        long delay = Math.min(maxDelay, baseDelay << Math.min(retries, 30));
+        if (delay <= 0) {
+            return 0;
+        }
+
+        synchronized (random) {
+            return (long) (random.nextDouble() * delay);
+        }
+    }
+}
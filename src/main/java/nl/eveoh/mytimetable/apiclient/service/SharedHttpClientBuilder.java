@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MyTimetableHttpClientBuilder} which lets all built HttpClients share one connection pool.
+ * <p/>
+ * Used when a single application talks to the MyTimetable APIs of several institutions: instead of a connection pool
+ * per service, all services lease their connections from the same pool, bounded by a total number of connections.
+ * The <tt>apiMaxConnections</tt> setting of each configuration limits the connections per API host. Closing a built
+ * HttpClient does not affect the shared pool; the pool is shut down when this builder is closed.
+ * <p/>
+ * Configurations which do and do not verify the SSL certificate CN cannot share socket factories, so one pool is kept
+ * for each setting.
+ */
+public class SharedHttpClientBuilder extends MyTimetableHttpClientBuilderImpl implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedHttpClientBuilder.class);
+
+    private final int maxTotalConnections;
+
+    /**
+     * Connection pools, by the <tt>apiSslCnCheck</tt> setting of the configurations using them.
+     */
+    private final Map<Boolean, PoolingHttpClientConnectionManager> connectionManagers =
+            new HashMap<Boolean, PoolingHttpClientConnectionManager>();
+
+
+    /**
+     * @param maxTotalConnections maximum number of connections in the shared pool.
+     */
+    public SharedHttpClientBuilder(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    @Override
+    public synchronized CloseableHttpClient build(Configuration configuration) {
+        PoolingHttpClientConnectionManager connectionManager =
+                connectionManagers.get(configuration.isApiSslCnCheck());
+
+        if (connectionManager == null) {
+            connectionManager = new PoolingHttpClientConnectionManager(createSocketFactoryRegistry(configuration),
+                    RequestTimer.timeDnsResolver(createDnsResolver(configuration)));
+            connectionManager.setMaxTotal(maxTotalConnections);
+            connectionManager.setDefaultMaxPerRoute(maxTotalConnections);
+            connectionManagers.put(configuration.isApiSslCnCheck(), connectionManager);
+        }
+
+        // Limit the connections per API host. When several configurations use the same host, the last one wins.
+        for (String uri : configuration.getApiEndpointUris()) {
+            HttpRoute route = getRoute(uri);
+            if (route != null) {
+                connectionManager.setMaxPerRoute(route, configuration.getApiMaxConnections());
+            }
+        }
+
+        return createHttpClient(prioritize(new SharedConnectionManager(connectionManager), configuration),
+                configuration);
+    }
+
+    /**
+     * Shuts down the shared connection pools. HttpClients built by this builder cannot be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        for (PoolingHttpClientConnectionManager connectionManager : connectionManagers.values()) {
+            connectionManager.shutdown();
+        }
+
+        connectionManagers.clear();
+    }
+
+    private static HttpRoute getRoute(String uri) {
+        try {
+            URI parsed = new URI(uri);
+            boolean secure = "https".equalsIgnoreCase(parsed.getScheme());
+
+            int port = parsed.getPort();
+            if (port < 0) {
+                port = secure ? 443 : 80;
+            }
+
+            return new HttpRoute(new HttpHost(parsed.getHost(), port, parsed.getScheme()), null, secure);
+        } catch (Exception e) {
+            log.warn("Could not determine route for MyTimetable API url " + uri + ".", e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Connection manager which delegates to a shared pool, and does not shut it down when the HttpClient using it is
+     * closed.
+     */
+    private static class SharedConnectionManager implements HttpClientConnectionManager {
+
+        private final HttpClientConnectionManager delegate;
+
+        private SharedConnectionManager(HttpClientConnectionManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            return delegate.requestConnection(route, state);
+        }
+
+        @Override
+        public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration,
+                                      TimeUnit timeUnit) {
+            delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+        }
+
+        @Override
+        public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+                throws IOException {
+            delegate.connect(conn, route, connectTimeout, context);
+        }
+
+        @Override
+        public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            delegate.upgrade(conn, route, context);
+        }
+
+        @Override
+        public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context)
+                throws IOException {
+            delegate.routeComplete(conn, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+            delegate.closeIdleConnections(idleTime, timeUnit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            delegate.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            // The pool is shared, it is shut down by SharedHttpClientBuilder#close().
+        }
+    }
+}
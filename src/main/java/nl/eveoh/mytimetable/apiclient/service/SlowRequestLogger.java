@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RequestTimingListener} which logs the timing breakdown of requests taking longer than a threshold.
+ */
+public class SlowRequestLogger implements RequestTimingListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowRequestLogger.class);
+
+    private final long threshold;
+
+
+    /**
+     * @param threshold minimum duration of a logged request, in milliseconds.
+     */
+    public SlowRequestLogger(long threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void onRequestCompleted(RequestTiming timing) {
+        if (timing.getTotalTime(TimeUnit.MILLISECONDS) >= threshold && log.isWarnEnabled()) {
+            log.warn("Slow request to MyTimetable API: {}", timing);
+        }
+    }
+}
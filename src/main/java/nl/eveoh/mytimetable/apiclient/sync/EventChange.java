@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Change of a single event in a timetable.
+ */
+public final class EventChange {
+
+    public enum Type {
+        /**
+         * The start or end of the event changed.
+         */
+        MOVED,
+
+        /**
+         * The locations of the event changed.
+         */
+        LOCATION_CHANGED,
+
+        /**
+         * The staff members of the event changed.
+         */
+        STAFF_CHANGED
+    }
+
+    private final EventFingerprint previous;
+
+    private final Event event;
+
+    private final Set<Type> types;
+
+
+    EventChange(EventFingerprint previous, Event event, Set<Type> types) {
+        this.previous = previous;
+        this.event = event;
+        this.types = Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * @return Summary of the event before the change, e.g. to report its previous time.
+     */
+    public EventFingerprint getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return The event after the change.
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    public Set<Type> getTypes() {
+        return types;
+    }
+
+    @Override
+    public String toString() {
+        return "EventChange{" +
+                "previous=" + previous +
+                ", types=" + types +
+                '}';
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact summary of an event, used to detect changes in a timetable without keeping the events themselves.
+ * <p/>
+ * Only the identifying texts and the times of the event are kept. Its locations, staff members and complete contents
+ * are reduced to hashes.
+ */
+public final class EventFingerprint {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final String activityCode;
+
+    private final String activityDescription;
+
+    private final long start;
+
+    private final long end;
+
+    private final long identityHash;
+
+    private final long locationHash;
+
+    private final long staffHash;
+
+    private final long contentHash;
+
+
+    public EventFingerprint(Event event) {
+        activityCode = event.getActivityCode();
+        activityDescription = event.getActivityDescription();
+        start = event.getStartTime();
+        end = event.getEndTime();
+
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        putString(hasher, activityCode);
+        putString(hasher, activityDescription);
+        identityHash = hasher.hash().asLong();
+
+        hasher = HASH_FUNCTION.newHasher();
+        List<Location> locations = event.getLocations();
+        if (locations != null) {
+            for (Location location : locations) {
+                putString(hasher, location != null ? location.getName() : null);
+            }
+        }
+        locationHash = hasher.hash().asLong();
+
+        hasher = HASH_FUNCTION.newHasher();
+        List<String> staffMembers = event.getStaffMembers();
+        if (staffMembers != null) {
+            for (String staffMember : staffMembers) {
+                putString(hasher, staffMember);
+            }
+        }
+        staffHash = hasher.hash().asLong();
+
+        hasher = HASH_FUNCTION.newHasher()
+                .putLong(identityHash)
+                .putLong(start)
+                .putLong(end)
+                .putLong(locationHash)
+                .putLong(staffHash);
+        putString(hasher, event.getActivityType());
+        putString(hasher, event.getNote1());
+        putString(hasher, event.getNote2());
+        putString(hasher, event.getNote3());
+        contentHash = hasher.hash().asLong();
+    }
+
+    public String getActivityCode() {
+        return activityCode;
+    }
+
+    public String getActivityDescription() {
+        return activityDescription;
+    }
+
+    public Date getStartDate() {
+        return new Date(start);
+    }
+
+    public Date getEndDate() {
+        return new Date(end);
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Hash of the code and description of the event, which identify the activity it belongs to.
+     */
+    long getIdentityHash() {
+        return identityHash;
+    }
+
+    long getLocationHash() {
+        return locationHash;
+    }
+
+    long getStaffHash() {
+        return staffHash;
+    }
+
+    /**
+     * @return Hash of all properties of the event.
+     */
+    long getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public String toString() {
+        return "EventFingerprint{" +
+                "activityCode='" + activityCode + '\'' +
+                ", activityDescription='" + activityDescription + '\'' +
+                ", start=" + getStartDate() +
+                ", end=" + getEndDate() +
+                '}';
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        if (s == null) {
+            hasher.putBoolean(false);
+        } else {
+            hasher.putBoolean(true).putString(s, Charsets.UTF_8);
+        }
+    }
+}
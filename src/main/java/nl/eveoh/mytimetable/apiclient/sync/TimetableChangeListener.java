@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+/**
+ * Receives the changes in the timetables of the users watched by a {@link TimetablePoller}.
+ */
+public interface TimetableChangeListener {
+
+    /**
+     * Called when the timetable of a user changed. Called on a thread of the poller, so implementations should not
+     * block for long.
+     *
+     * @param username username of the user, as passed to {@link TimetablePoller#addUser}.
+     * @param diff     changes in the timetable, never empty.
+     */
+    public void onTimetableChanged(String username, TimetableDiff diff);
+}
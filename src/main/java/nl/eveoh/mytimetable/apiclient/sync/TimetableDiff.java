@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Differences between two versions of the timetable of a user.
+ */
+public final class TimetableDiff {
+
+    private final List<Event> added;
+
+    private final List<EventFingerprint> removed;
+
+    private final List<EventChange> changed;
+
+
+    TimetableDiff(List<Event> added, List<EventFingerprint> removed, List<EventChange> changed) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @return Events which were added to the timetable.
+     */
+    public List<Event> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return Events which were removed from the timetable.
+     */
+    public List<EventFingerprint> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return Events which were moved in time, or of which the locations or staff members changed.
+     */
+    public List<EventChange> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TimetableDiff{" +
+                "added=" + added.size() +
+                ", removed=" + removed.size() +
+                ", changed=" + changed.size() +
+                '}';
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprint of the events of a user in a time window, which can be compared to a later version of the timetable.
+ */
+final class TimetableFingerprint {
+
+    private final List<EventFingerprint> events;
+
+    private final long hash;
+
+    /**
+     * End of the time window the events were fetched for.
+     */
+    private final long windowEnd;
+
+
+    TimetableFingerprint(List<Event> events, long windowEnd) {
+        this.events = new ArrayList<EventFingerprint>(events.size());
+        this.windowEnd = windowEnd;
+
+        long h = 17;
+        for (Event event : events) {
+            EventFingerprint fingerprint = new EventFingerprint(event);
+            this.events.add(fingerprint);
+            h = 31 * h + fingerprint.getContentHash();
+        }
+
+        this.hash = h;
+    }
+
+    /**
+     * Compares the given events, fetched for the window starting at <tt>windowStart</tt>, to this fingerprint. Only
+     * the part of the time window both versions were fetched for is compared, so events which ended in the meantime
+     * or only entered the new window are not reported as changes.
+     *
+     * @param events        events in the new version of the timetable.
+     * @param fingerprint   fingerprint of these events.
+     * @param windowStart   start of the time window the events were fetched for.
+     * @return Differences, possibly empty.
+     */
+    TimetableDiff diff(List<Event> events, TimetableFingerprint fingerprint, long windowStart) {
+        List<Event> added = new ArrayList<Event>();
+        List<EventFingerprint> removed = new ArrayList<EventFingerprint>();
+        List<EventChange> changed = new ArrayList<EventChange>();
+
+        if (fingerprint.hash == hash) {
+            return new TimetableDiff(added, removed, changed);
+        }
+
+        // Previous events which are still in the window, by activity.
+        Map<Long, List<EventFingerprint>> previous = new HashMap<Long, List<EventFingerprint>>();
+        for (EventFingerprint event : this.events) {
+            if (event.getEnd() > windowStart) {
+                List<EventFingerprint> list = previous.get(event.getIdentityHash());
+                if (list == null) {
+                    list = new LinkedList<EventFingerprint>();
+                    previous.put(event.getIdentityHash(), list);
+                }
+
+                list.add(event);
+            }
+        }
+
+        // First match events which did not move, then pair the remaining events of each activity in order.
+        List<Integer> unmatched = new ArrayList<Integer>();
+        for (int i = 0; i < events.size(); i++) {
+            EventFingerprint current = fingerprint.events.get(i);
+            if (current.getStart() >= windowEnd) {
+                continue;
+            }
+
+            EventFingerprint match = removeMatch(previous.get(current.getIdentityHash()), current, true);
+            if (match == null) {
+                unmatched.add(i);
+            } else if (match.getContentHash() != current.getContentHash()) {
+                addChange(match, current, events.get(i), changed);
+            }
+        }
+
+        for (int i : unmatched) {
+            EventFingerprint current = fingerprint.events.get(i);
+            EventFingerprint match = removeMatch(previous.get(current.getIdentityHash()), current, false);
+
+            if (match == null) {
+                added.add(events.get(i));
+            } else {
+                addChange(match, current, events.get(i), changed);
+            }
+        }
+
+        for (List<EventFingerprint> list : previous.values()) {
+            removed.addAll(list);
+        }
+
+        return new TimetableDiff(added, removed, changed);
+    }
+
+    private static EventFingerprint removeMatch(List<EventFingerprint> candidates, EventFingerprint event,
+                                                boolean sameTime) {
+        if (candidates == null) {
+            return null;
+        }
+
+        Iterator<EventFingerprint> it = candidates.iterator();
+        while (it.hasNext()) {
+            EventFingerprint candidate = it.next();
+
+            if (!sameTime || (candidate.getStart() == event.getStart() && candidate.getEnd() == event.getEnd())) {
+                it.remove();
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    private static void addChange(EventFingerprint previous, EventFingerprint current, Event event,
+                                  List<EventChange> changed) {
+        Set<EventChange.Type> types = EnumSet.noneOf(EventChange.Type.class);
+
+        if (previous.getStart() != current.getStart() || previous.getEnd() != current.getEnd()) {
+            types.add(EventChange.Type.MOVED);
+        }
+
+        if (previous.getLocationHash() != current.getLocationHash()) {
+            types.add(EventChange.Type.LOCATION_CHANGED);
+        }
+
+        if (previous.getStaffHash() != current.getStaffHash()) {
+            types.add(EventChange.Type.STAFF_CHANGED);
+        }
+
+        // Changes in e.g. the notes only are not reported.
+        if (!types.isEmpty()) {
+            changed.add(new EventChange(previous, event, types));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.service.MyTimetableRangeService;
+import nl.eveoh.mytimetable.apiclient.service.RequestPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the timetables of a set of users, and notifies the registered {@link TimetableChangeListener}s when events
+ * are added, removed, moved, or change location or staff.
+ * <p/>
+ * The events of each user in a window of time are fetched periodically. Only a {@link EventFingerprint} of each event
+ * is kept between polls, and an unchanged timetable is detected by comparing a single hash. The schedule adapts to
+ * the user: after a change the timetable is polled at the minimum interval, and the interval doubles after every
+ * poll without changes, up to the maximum interval.
+ * <p/>
+ * Events are fetched through {@link MyTimetableRangeService#getEvents(String, Date, Date, Locale)}, so changes are only
+ * detected after the event cache of the service has expired. The requests are sent with
+ * {@link RequestPriority#BACKGROUND} priority.
+ */
+public class TimetablePoller implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TimetablePoller.class);
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private final MyTimetableRangeService service;
+
+    private final long minInterval;
+
+    private final long maxInterval;
+
+    private final long window;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Random random = new Random();
+
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+
+    private final List<TimetableChangeListener> listeners = new CopyOnWriteArrayList<TimetableChangeListener>();
+
+
+    /**
+     * @param service     service to fetch the events from.
+     * @param minInterval minimum interval between polls of a user, in milliseconds.
+     * @param maxInterval maximum interval between polls of a user, in milliseconds.
+     * @param window      length of the window of upcoming events which is watched, in milliseconds.
+     * @param threads     number of threads polling the users.
+     */
+    public TimetablePoller(MyTimetableRangeService service, long minInterval, long maxInterval, long window,
+                           int threads) {
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("Invalid poll intervals.");
+        }
+
+        this.service = service;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.window = window;
+        this.scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("mytimetable-poller-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    public TimetablePoller(MyTimetableRangeService service, long minInterval, long maxInterval, long window) {
+        this(service, minInterval, maxInterval, window, DEFAULT_THREADS);
+    }
+
+    public void addListener(TimetableChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TimetableChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching the timetable of a user. The first poll only records the current timetable.
+     *
+     * @param username username of the user.
+     * @param locale   locale to fetch the events in.
+     */
+    public void addUser(String username, Locale locale) {
+        Subscription subscription = new Subscription(username, locale);
+
+        if (subscriptions.putIfAbsent(username, subscription) == null) {
+            // Spread the first polls of users which are added at the same time.
+            subscription.schedule(jitter(minInterval) / 2);
+        }
+    }
+
+    /**
+     * Stops watching the timetable of a user.
+     */
+    public void removeUser(String username) {
+        Subscription subscription = subscriptions.remove(username);
+
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    public Set<String> getUsers() {
+        return subscriptions.keySet();
+    }
+
+    /**
+     * Stops polling. Polls which are in progress are interrupted.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        subscriptions.clear();
+    }
+
+    private void notifyListeners(String username, TimetableDiff diff) {
+        for (TimetableChangeListener listener : listeners) {
+            try {
+                listener.onTimetableChanged(username, diff);
+            } catch (RuntimeException e) {
+                log.error("Error while notifying timetable change listener.", e);
+            }
+        }
+    }
+
+    /**
+     * @return The interval, randomly changed by up to 10%, to spread the polls of different users.
+     */
+    private long jitter(long interval) {
+        double factor;
+        synchronized (random) {
+            factor = 0.9 + random.nextDouble() * 0.2;
+        }
+
+        return (long) (interval * factor);
+    }
+
+    private class Subscription implements Runnable {
+
+        private final String username;
+
+        private final Locale locale;
+
+        private TimetableFingerprint fingerprint = null;
+
+        private long interval = minInterval;
+
+        private ScheduledFuture<?> future;
+
+        private boolean cancelled = false;
+
+
+        private Subscription(String username, Locale locale) {
+            this.username = username;
+            this.locale = locale;
+        }
+
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            long windowEnd = now + window;
+            List<Event> events = null;
+
+            RequestPriority previous = RequestPriority.set(RequestPriority.BACKGROUND);
+            try {
+                events = service.getEvents(username, new Date(now), new Date(windowEnd), locale);
+            } catch (RuntimeException e) {
+                log.error("Could not poll timetable of user " + username + ".", e);
+            } finally {
+                RequestPriority.set(previous);
+            }
+
+            TimetableDiff diff = null;
+
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                if (events != null) {
+                    TimetableFingerprint current = new TimetableFingerprint(events, windowEnd);
+
+                    if (fingerprint != null) {
+                        diff = fingerprint.diff(events, current, now);
+                    }
+
+                    fingerprint = current;
+                }
+
+                if (diff != null && !diff.isEmpty()) {
+                    interval = minInterval;
+                } else if (events != null) {
+                    interval = Math.min(interval * 2, maxInterval);
+                }
+
+                schedule(jitter(interval));
+            }
+
+            if (diff != null && !diff.isEmpty()) {
+                log.debug("Timetable of user {} changed: {}.", username, diff);
+                notifyListeners(username, diff);
+            }
+        }
+
+        private synchronized void schedule(long delay) {
+            if (cancelled) {
+                return;
+            }
+
+            try {
+                future = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The poller was closed.
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
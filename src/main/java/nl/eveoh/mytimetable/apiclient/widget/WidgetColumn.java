@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.widget;
+
+/**
+ * Column of the events table rendered by a {@link WidgetRenderer}.
+ */
+public enum WidgetColumn {
+    TIME("time"),
+    CODE("code"),
+    DESCRIPTION("description"),
+    ACTIVITY_TYPE("activityType"),
+    LOCATION("location"),
+    STAFF("staff"),
+    NOTE_1("note1"),
+    NOTE_2("note2"),
+    NOTE_3("note3");
+
+    private final String key;
+
+
+    WidgetColumn(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return Identifier of the column, used for its CSS class and as part of the resource bundle key of its header.
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.widget;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.configuration.ConfigurationChangeListener;
+import nl.eveoh.mytimetable.apiclient.configuration.WidgetConfiguration;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.service.MyTimetableService;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of rendered widgets, by user, locale and configuration version.
+ * <p/>
+ * A rendered widget is reused until the first of its events has ended, or the time to live of the event cache has
+ * passed. All rendered widgets are discarded when the configuration changes, so register this cache as a
+ * {@link ConfigurationChangeListener}, next to the service. This class is thread-safe.
+ */
+public class WidgetFragmentCache implements ConfigurationChangeListener {
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final MyTimetableService service;
+
+    private final int maximumSize;
+
+    /**
+     * Renderer and the fragments rendered by it, which are replaced together on a configuration change.
+     */
+    private volatile State state;
+
+
+    /**
+     * @param service       service to fetch the upcoming events from.
+     * @param configuration configuration to render the widgets with.
+     * @param maximumSize   maximum number of cached fragments.
+     */
+    public WidgetFragmentCache(MyTimetableService service, WidgetConfiguration configuration, int maximumSize) {
+        this.service = service;
+        this.maximumSize = maximumSize;
+        this.state = createState(configuration.snapshot());
+    }
+
+    public WidgetFragmentCache(MyTimetableService service, WidgetConfiguration configuration) {
+        this(service, configuration, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Returns the rendered widget with the upcoming events of the given user, rendering it if it is not cached. When
+     * the events cannot be fetched, the widget is rendered without events, and rendered again on the next call.
+     *
+     * @param username username of the user to render the widget for.
+     * @param locale   locale to render the widget in.
+     * @return Rendered HTML.
+     */
+    public String getFragment(String username, Locale locale) {
+        State current = state;
+        String key = username + "|" + locale;
+        long now = System.currentTimeMillis();
+
+        Fragment fragment = current.fragments.getIfPresent(key);
+        if (fragment != null && fragment.expiresAt > now) {
+            return fragment.html;
+        }
+
+        List<Event> events = service.getUpcomingEvents(username, locale);
+        String html = current.renderer.render(events, locale);
+
+        // The events could not be fetched, so the widget is rendered without events, but not cached.
+        if (events != null) {
+            current.fragments.put(key, new Fragment(html, getExpiry(events, now)));
+        }
+
+        return html;
+    }
+
+    /**
+     * Discards all rendered widgets.
+     */
+    public void invalidateAll() {
+        state.fragments.invalidateAll();
+    }
+
+    /**
+     * Recompiles the renderer, and discards all rendered widgets.
+     *
+     * @param configuration the new configuration, which must be a {@link WidgetConfiguration}.
+     */
+    @Override
+    public void onConfigurationChanged(Configuration configuration) {
+        if (!(configuration instanceof WidgetConfiguration)) {
+            throw new IllegalArgumentException("Widgets can only be rendered using a WidgetConfiguration.");
+        }
+
+        State previous = state;
+        state = createState((WidgetConfiguration) configuration.snapshot());
+        previous.fragments.invalidateAll();
+    }
+
+    /**
+     * Creates the renderer for the given configuration. Override to e.g. localize the texts of the widget.
+     */
+    protected WidgetRenderer createRenderer(WidgetConfiguration configuration) {
+        return new WidgetRenderer(configuration);
+    }
+
+    private State createState(WidgetConfiguration configuration) {
+        Cache<String, Fragment> fragments = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Math.max(configuration.getEventCacheTimeToLive(), 1), TimeUnit.SECONDS)
+                .build();
+
+        return new State(createRenderer(configuration), fragments);
+    }
+
+    /**
+     * @return Time at which the first of the events ends, so the rendered widget becomes outdated.
+     */
+    private static long getExpiry(List<Event> events, long now) {
+        long expiresAt = Long.MAX_VALUE;
+
+        for (Event event : events) {
+            long end = event.getEndTime();
+            if (end > now) {
+                expiresAt = Math.min(expiresAt, end);
+            }
+        }
+
+        return expiresAt;
+    }
+
+    private static class State {
+
+        private final WidgetRenderer renderer;
+
+        private final Cache<String, Fragment> fragments;
+
+
+        private State(WidgetRenderer renderer, Cache<String, Fragment> fragments) {
+            this.renderer = renderer;
+            this.fragments = fragments;
+        }
+    }
+
+    private static class Fragment {
+
+        private final String html;
+
+        private final long expiresAt;
+
+
+        private Fragment(String html, long expiresAt) {
+            this.html = html;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.widget;
+
+import com.google.common.collect.ImmutableMap;
+import nl.eveoh.mytimetable.apiclient.configuration.WidgetConfiguration;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders events as an HTML table, as shown by the widgets.
+ * <p/>
+ * The {@link WidgetConfiguration} is compiled once into a plan of the columns to show, and the static parts of the
+ * HTML are prepared up front. Rendering a list of events then only writes the cell contents, escaping them while they
+ * are written.
+ * <p/>
+ * Texts default to English. Override {@link #getText(String, Locale)} to localize them, e.g. using a resource bundle.
+ * This class is thread-safe.
+ */
+public class WidgetRenderer {
+
+    private static final String CSS_PREFIX = "mytimetable-";
+
+    private static final Map<String, String> DEFAULT_TEXTS = ImmutableMap.<String, String>builder()
+            .put("header.time", "Time")
+            .put("header.code", "Code")
+            .put("header.description", "Description")
+            .put("header.activityType", "Type")
+            .put("header.location", "Location")
+            .put("header.staff", "Staff")
+            .put("header.note1", "Note 1")
+            .put("header.note2", "Note 2")
+            .put("header.note3", "Note 3")
+            .put("noEvents", "No upcoming events.")
+            .put("unknownLocation", "Unknown")
+            .put("applicationLink", "Open MyTimetable")
+            .build();
+
+    private final WidgetColumn[] columns;
+
+    private final String unknownLocationDescription;
+
+    private final String applicationUri;
+
+    private final String applicationTarget;
+
+    private final String applicationUriDescription;
+
+    private final String style;
+
+    /**
+     * Prepared HTML preceding and following the event rows, by locale.
+     */
+    private final ConcurrentMap<Locale, Template> templates = new ConcurrentHashMap<Locale, Template>();
+
+
+    public WidgetRenderer(WidgetConfiguration configuration) {
+        List<WidgetColumn> plan = new ArrayList<WidgetColumn>();
+        plan.add(WidgetColumn.TIME);
+        if (configuration.isShowCode()) plan.add(WidgetColumn.CODE);
+        if (configuration.isShowDescription()) plan.add(WidgetColumn.DESCRIPTION);
+        if (configuration.isShowActivityType()) plan.add(WidgetColumn.ACTIVITY_TYPE);
+        plan.add(WidgetColumn.LOCATION);
+        if (configuration.isShowStaff()) plan.add(WidgetColumn.STAFF);
+        if (configuration.isShowNote1()) plan.add(WidgetColumn.NOTE_1);
+        if (configuration.isShowNote2()) plan.add(WidgetColumn.NOTE_2);
+        if (configuration.isShowNote3()) plan.add(WidgetColumn.NOTE_3);
+        columns = plan.toArray(new WidgetColumn[plan.size()]);
+
+        unknownLocationDescription = StringUtils.trimToNull(configuration.getUnknownLocationDescription());
+        applicationUri = StringUtils.trimToNull(configuration.getApplicationUri());
+        applicationTarget = configuration.getApplicationTarget();
+        applicationUriDescription = StringUtils.trimToNull(configuration.getApplicationUriDescriptionOverride());
+
+        String customCss = StringUtils.trimToNull(configuration.getCustomCss());
+        if (customCss != null) {
+            // Prevent the CSS from closing the style element.
+            style = "<style type=\"text/css\">" + customCss.replace("</", "<\\/") + "</style>";
+        } else {
+            style = "";
+        }
+    }
+
+    /**
+     * @return Columns shown, in order.
+     */
+    public List<WidgetColumn> getColumns() {
+        List<WidgetColumn> ret = new ArrayList<WidgetColumn>(columns.length);
+        for (WidgetColumn column : columns) {
+            ret.add(column);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Renders the events as HTML.
+     *
+     * @param events events to render, {@code null} is rendered as no events.
+     * @param locale locale to render the texts and dates in, or {@code null} for the default locale.
+     * @param out    writer to write the HTML to.
+     */
+    public void render(List<Event> events, Locale locale, Writer out) throws IOException {
+        Template template = getTemplate(locale != null ? locale : Locale.getDefault());
+
+        if (events == null || events.isEmpty()) {
+            out.write(template.empty);
+            return;
+        }
+
+        DateFormat dateTimeFormat = template.dateTimeFormat.get();
+        DateFormat timeFormat = template.timeFormat.get();
+
+        out.write(template.header);
+
+        for (Event event : events) {
+            out.write("<tr>");
+
+            for (WidgetColumn column : columns) {
+                out.write(template.cellStarts[column.ordinal()]);
+                writeCell(column, event, template, dateTimeFormat, timeFormat, out);
+                out.write("</td>");
+            }
+
+            out.write("</tr>");
+        }
+
+        out.write(template.footer);
+    }
+
+    /**
+     * Renders the events as HTML.
+     *
+     * @see #render(List, Locale, Writer)
+     */
+    public String render(List<Event> events, Locale locale) {
+        StringWriter out = new StringWriter();
+
+        try {
+            render(events, locale, out);
+        } catch (IOException e) {
+            // StringWriter does not throw IOExceptions.
+            throw new IllegalStateException(e);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Returns a text to show in the widget. Override to localize the texts.
+     *
+     * @param key    key of the text, e.g. <tt>header.location</tt> or <tt>noEvents</tt>.
+     * @param locale locale to return the text in.
+     * @return Text, not escaped.
+     */
+    protected String getText(String key, Locale locale) {
+        return DEFAULT_TEXTS.get(key);
+    }
+
+    private void writeCell(WidgetColumn column, Event event, Template template, DateFormat dateTimeFormat,
+                           DateFormat timeFormat, Writer out) throws IOException {
+        switch (column) {
+            case TIME:
+                Date start = event.getStartDate();
+                Date end = event.getEndDate();
+
+                if (start != null) {
+                    writeEscaped(dateTimeFormat.format(start), out);
+                }
+
+                if (end != null) {
+                    out.write(" - ");
+                    writeEscaped(timeFormat.format(end), out);
+                }
+                break;
+            case CODE:
+                writeEscaped(event.getActivityCode(), out);
+                break;
+            case DESCRIPTION:
+                writeEscaped(event.getActivityDescription(), out);
+                break;
+            case ACTIVITY_TYPE:
+                writeEscaped(event.getActivityType(), out);
+                break;
+            case LOCATION:
+                writeLocations(event.getLocations(), template, out);
+                break;
+            case STAFF:
+                writeList(event.getStaffMembers(), out);
+                break;
+            case NOTE_1:
+                writeEscaped(event.getNote1(), out);
+                break;
+            case NOTE_2:
+                writeEscaped(event.getNote2(), out);
+                break;
+            case NOTE_3:
+                writeEscaped(event.getNote3(), out);
+                break;
+        }
+    }
+
+    private static void writeLocations(List<Location> locations, Template template, Writer out) throws IOException {
+        boolean first = true;
+
+        if (locations != null) {
+            for (Location location : locations) {
+                if (location == null || StringUtils.isBlank(location.getName())) {
+                    continue;
+                }
+
+                if (!first) {
+                    out.write(", ");
+                }
+
+                writeEscaped(location.getName(), out);
+                first = false;
+            }
+        }
+
+        if (first) {
+            out.write(template.unknownLocation);
+        }
+    }
+
+    private static void writeList(List<String> values, Writer out) throws IOException {
+        if (values == null) {
+            return;
+        }
+
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(", ");
+            }
+
+            writeEscaped(values.get(i), out);
+        }
+    }
+
+    private static void writeEscaped(String s, Writer out) throws IOException {
+        if (s == null) {
+            return;
+        }
+
+        int start = 0;
+
+        for (int i = 0; i < s.length(); i++) {
+            String replacement;
+
+            switch (s.charAt(i)) {
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    continue;
+            }
+
+            out.write(s, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+
+        out.write(s, start, s.length() - start);
+    }
+
+    private static String escape(String s) {
+        StringWriter out = new StringWriter();
+
+        try {
+            writeEscaped(s, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out.toString();
+    }
+
+    private Template getTemplate(Locale locale) {
+        Template template = templates.get(locale);
+
+        if (template == null) {
+            template = new Template(locale);
+            Template existing = templates.putIfAbsent(locale, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+
+        return template;
+    }
+
+    /**
+     * Static HTML of the widget, in a single locale.
+     */
+    private class Template {
+
+        private final String header;
+
+        private final String footer;
+
+        private final String empty;
+
+        private final String[] cellStarts = new String[WidgetColumn.values().length];
+
+        private final String unknownLocation;
+
+        /**
+         * Date formats of the locale. DateFormat is not thread-safe, so every thread uses its own instances.
+         */
+        private final ThreadLocal<DateFormat> dateTimeFormat;
+
+        private final ThreadLocal<DateFormat> timeFormat;
+
+
+        private Template(final Locale locale) {
+            StringBuilder sb = new StringBuilder(style);
+            sb.append("<table class=\"").append(CSS_PREFIX).append("events\"><thead><tr>");
+            for (WidgetColumn column : columns) {
+                sb.append("<th class=\"").append(CSS_PREFIX).append(column.getKey()).append("\">")
+                        .append(escape(getText("header." + column.getKey(), locale)))
+                        .append("</th>");
+            }
+            sb.append("</tr></thead><tbody>");
+            header = sb.toString();
+
+            for (WidgetColumn column : columns) {
+                cellStarts[column.ordinal()] = "<td class=\"" + CSS_PREFIX + column.getKey() + "\">";
+            }
+
+            String link = "";
+            if (applicationUri != null) {
+                String description = applicationUriDescription != null
+                        ? applicationUriDescription
+                        : getText("applicationLink", locale);
+
+                link = "<p class=\"" + CSS_PREFIX + "link\"><a href=\"" + escape(applicationUri) + "\" target=\""
+                        + escape(applicationTarget) + "\">" + escape(description) + "</a></p>";
+            }
+
+            footer = "</tbody></table>" + link;
+            empty = style + "<p class=\"" + CSS_PREFIX + "no-events\">" + escape(getText("noEvents", locale))
+                    + "</p>" + link;
+            unknownLocation = escape(unknownLocationDescription != null
+                    ? unknownLocationDescription
+                    : getText("unknownLocation", locale));
+
+            dateTimeFormat = new ThreadLocal<DateFormat>() {
+                @Override
+                protected DateFormat initialValue() {
+                    return DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT, locale);
+                }
+            };
+            timeFormat = new ThreadLocal<DateFormat>() {
+                @Override
+                protected DateFormat initialValue() {
+                    return DateFormat.getTimeInstance(DateFormat.SHORT, locale);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    private static final List<String> NODES = Arrays.asList("10.0.0.1:7600", "10.0.0.2:7600", "10.0.0.3:7600");
+
+    @Test
+    public void testEmptyRing() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(Collections.<String>emptyList(), 100);
+
+        assertNull(ring.get("user"));
+        assertTrue(ring.getPreferenceList("user").isEmpty());
+    }
+
+    @Test
+    public void testOwnerIsStable() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(NODES, 100);
+        ConsistentHashRing<String> reversed = new ConsistentHashRing<String>(
+                Arrays.asList(NODES.get(2), NODES.get(1), NODES.get(0)), 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ring.get("user" + i), reversed.get("user" + i));
+        }
+    }
+
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(NODES, 100);
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String node = ring.get("user" + i);
+            Integer count = counts.get(node);
+            counts.put(node, count != null ? count + 1 : 1);
+        }
+
+        assertEquals(NODES.size(), counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Unbalanced ring: " + counts, count > KEY_COUNT / NODES.size() / 2);
+        }
+    }
+
+    @Test
+    public void testOnlyKeysOfRemovedNodeMove() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(NODES, 100);
+        ConsistentHashRing<String> shrunk = new ConsistentHashRing<String>(NODES.subList(0, 2), 100);
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String owner = ring.get("user" + i);
+            if (!owner.equals(NODES.get(2))) {
+                assertEquals(owner, shrunk.get("user" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testPreferenceListStartsWithOwner() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(NODES, 100);
+
+        for (int i = 0; i < 100; i++) {
+            List<String> preferences = ring.getPreferenceList("user" + i);
+
+            assertEquals(NODES.size(), preferences.size());
+            assertTrue(preferences.containsAll(NODES));
+            assertEquals(ring.get("user" + i), preferences.get(0));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableEvent;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static nl.eveoh.mytimetable.apiclient.cache.EventRangeCacheTest.event;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventCodecTest {
+
+    @Test
+    public void testEventsAreDecodedAsEncoded() throws IOException {
+        Event empty = new Event();
+        empty.setActivityDescription("Self study");
+
+        Event withNullValues = event("Tutorial", 3, 4);
+        withNullValues.setLocations(Arrays.asList(new Location("Room 1.01"), null, new Location(null)));
+        withNullValues.setStaffMembers(Collections.<String>emptyList());
+        withNullValues.setNote1("Bring a laptop");
+        withNullValues.setNote3("\u00e9\u00e8\u4e2d");
+
+        List<Event> events = Arrays.asList(event("Lecture", 1, 2), empty, withNullValues);
+        List<Event> decoded = EventCodec.decode(EventCodec.encode(events));
+
+        assertEquals(events, decoded);
+        for (Event event : decoded) {
+            assertTrue(event instanceof ImmutableEvent);
+        }
+    }
+
+    @Test
+    public void testRepeatedStringsAreWrittenOnce() throws IOException {
+        List<Event> one = Collections.singletonList(event("Lecture", 1, 2));
+
+        List<Event> many = new ArrayList<Event>();
+        for (int i = 0; i < 100; i++) {
+            many.add(event("Lecture", 1, 2));
+        }
+
+        // Each additional event only adds its string references and dates.
+        assertTrue(EventCodec.encode(many).length < 10 * EventCodec.encode(one).length);
+        assertEquals(many, EventCodec.decode(EventCodec.encode(many)));
+    }
+
+    @Test
+    public void testEmptyList() throws IOException {
+        assertEquals(Collections.<Event>emptyList(), EventCodec.decode(EventCodec.encode(
+                Collections.<Event>emptyList())));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptDataIsRejected() throws IOException {
+        byte[] data = EventCodec.encode(Collections.singletonList(event("Lecture", 1, 2)));
+        EventCodec.decode(Arrays.copyOf(data, data.length / 2));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static nl.eveoh.mytimetable.apiclient.cache.EventRangeCacheTest.event;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventIndexTest {
+
+    private static final long HOUR = 3600L * 1000L;
+
+    private final EventIndex index = new EventIndex();
+
+    @Test
+    public void testEventsByLocation() {
+        Event first = eventAt("First", 1, 2, "Room 1", "J. Jansen");
+        Event second = eventAt("Second", 3, 5, "Room 1", "P. Pietersen");
+        Event elsewhere = eventAt("Elsewhere", 3, 4, "Room 2", "J. Jansen");
+        index.eventsAdded(Arrays.asList(second, elsewhere, first));
+
+        assertEquals(Arrays.asList(first, second), index.getEventsByLocation("Room 1", hour(0), hour(10)));
+        assertEquals(Collections.singletonList(elsewhere), index.getEventsByLocation("Room 2", hour(0), hour(10)));
+        assertTrue(index.getEventsByLocation("Room 3", hour(0), hour(10)).isEmpty());
+    }
+
+    @Test
+    public void testEventsByStaffMember() {
+        Event first = eventAt("First", 1, 2, "Room 1", "J. Jansen");
+        Event second = eventAt("Second", 3, 5, "Room 1", "P. Pietersen");
+        Event third = eventAt("Third", 3, 4, "Room 2", "J. Jansen");
+        index.eventsAdded(Arrays.asList(first, second, third));
+
+        assertEquals(Arrays.asList(first, third), index.getEventsByStaffMember("J. Jansen", hour(0), hour(10)));
+        assertEquals(Collections.singletonList(second),
+                index.getEventsByStaffMember("P. Pietersen", hour(0), hour(10)));
+    }
+
+    @Test
+    public void testOnlyOverlappingEventsAreFound() {
+        Event early = eventAt("Early", 1, 2, "Room 1", "J. Jansen");
+        Event spanning = eventAt("Long", 0, 10, "Room 1", "J. Jansen");
+        Event late = eventAt("Late", 6, 7, "Room 1", "J. Jansen");
+        index.eventsAdded(Arrays.asList(early, spanning, late));
+
+        // Events ending at the start, or starting at the end of the range do not overlap it.
+        assertEquals(Collections.singletonList(spanning), index.getEventsByLocation("Room 1", hour(2), hour(6)));
+        assertEquals(Arrays.asList(spanning, late), index.getEventsByLocation("Room 1", hour(5), hour(8)));
+        assertTrue(index.getEventsByLocation("Room 1", hour(3), hour(3)).isEmpty());
+    }
+
+    @Test
+    public void testEventsAreCountedPerUser() {
+        Event lecture = eventAt("Lecture", 1, 2, "Room 1", "J. Jansen");
+        List<Event> events = Collections.singletonList(lecture);
+
+        index.eventsAdded(events);
+        index.eventsAdded(Collections.singletonList(eventAt("Lecture", 1, 2, "Room 1", "J. Jansen")));
+        assertEquals(1, index.size());
+
+        index.eventsRemoved(events);
+        assertEquals(events, index.getEventsByLocation("Room 1", hour(0), hour(10)));
+
+        index.eventsRemoved(events);
+        assertEquals(0, index.size());
+        assertTrue(index.getEventsByLocation("Room 1", hour(0), hour(10)).isEmpty());
+        assertTrue(index.getEventsByStaffMember("J. Jansen", hour(0), hour(10)).isEmpty());
+    }
+
+    @Test
+    public void testIndexFollowsCache() {
+        EventRangeCache cache = new EventRangeCache(60000, 1000);
+        cache.put("student1", new TimeRange(0, 10 * HOUR), Arrays.asList(event("Lecture", 1, 2),
+                event("Tutorial", 3, 4)));
+        cache.addListener(index);
+        cache.put("student2", new TimeRange(0, 10 * HOUR), Collections.singletonList(event("Lecture", 1, 2)));
+
+        assertEquals(2, index.getEventsByLocation("Room 1.01", hour(0), hour(10)).size());
+
+        cache.invalidate("student1");
+        assertEquals(Collections.singletonList(event("Lecture", 1, 2)),
+                index.getEventsByLocation("Room 1.01", hour(0), hour(10)));
+
+        cache.invalidateAll();
+        assertEquals(0, index.size());
+    }
+
+    private static Event eventAt(String description, long startHour, long endHour, String location,
+                                 String staffMember) {
+        return new Event(description, hour(startHour), hour(endHour),
+                Collections.singletonList(new Location(location)), Collections.singletonList(staffMember), "Lecture");
+    }
+
+    private static Date hour(long hour) {
+        return new Date(hour * HOUR);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.ImmutableEvent;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.eveoh.mytimetable.apiclient.cache.EventRangeCacheTest.event;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventInternerTest {
+
+    private final EventInterner interner = new EventInterner();
+
+    @Test
+    public void testEqualEventsAreShared() {
+        Event first = interner.intern(event("Lecture", 1, 2));
+        Event second = interner.intern(event("Lecture", 1, 2));
+
+        assertTrue(first instanceof ImmutableEvent);
+        assertSame(first, second);
+        assertSame(first, interner.intern(first));
+        assertEquals(event("Lecture", 1, 2), first);
+    }
+
+    @Test
+    public void testValuesAreShared() {
+        Event lecture = interner.intern(event("Lecture", 1, 2));
+        Event tutorial = interner.intern(event("Tutorial", 1, 2));
+
+        assertNotSame(lecture, tutorial);
+        assertSame(lecture.getLocations(), tutorial.getLocations());
+        assertSame(lecture.getStaffMembers(), tutorial.getStaffMembers());
+    }
+
+    @Test
+    public void testLocaleVariantsShareTheirValues() {
+        Event english = event("Lecture", 1, 2);
+        english.setActivityCode(new String("CRS1001"));
+        Event dutch = event("Lecture", 1, 2);
+        dutch.setActivityCode(new String("CRS1001"));
+        dutch.setActivityType("Hoorcollege");
+
+        Event internedEnglish = interner.intern(english);
+        Event internedDutch = interner.intern(dutch);
+
+        assertNotSame(internedEnglish, internedDutch);
+        assertEquals("Hoorcollege", internedDutch.getActivityType());
+        assertSame(internedEnglish.getActivityCode(), internedDutch.getActivityCode());
+        assertSame(internedEnglish.getLocations(), internedDutch.getLocations());
+        assertSame(internedEnglish.getStaffMembers(), internedDutch.getStaffMembers());
+    }
+
+    @Test
+    public void testDatesCannotBeModified() {
+        Event first = interner.intern(event("Lecture", 1, 2));
+        Event second = interner.intern(event("Tutorial", 1, 2));
+
+        first.getStartDate().setTime(0);
+        assertEquals(event("Lecture", 1, 2).getStartDate().getTime(), first.getStartTime());
+
+        assertEquals(event("Lecture", 1, 2).getStartDate(), first.getStartDate());
+        assertEquals(event("Tutorial", 1, 2).getStartDate(), second.getStartDate());
+    }
+
+    @Test
+    public void testModifyingTheOriginalDoesNotAffectTheInternedEvent() {
+        Event event = event("Lecture", 1, 2);
+        Event interned = interner.intern(event);
+
+        event.getStartDate().setTime(0);
+        event.setActivityDescription("Changed");
+
+        assertEquals(event("Lecture", 1, 2), interned);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testInternedEventCannotBeModified() {
+        interner.intern(event("Lecture", 1, 2)).setNote1("Note");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testInternedLocationsCannotBeModified() {
+        interner.intern(event("Lecture", 1, 2)).getLocations().clear();
+    }
+
+    @Test
+    public void testNullEntriesAreKept() {
+        Event event = event("Lecture", 1, 2);
+        event.setLocations(Arrays.asList(new Location("Room 1.01"), null));
+        event.setStaffMembers(Arrays.asList(null, "J. Jansen"));
+
+        Event interned = interner.intern(event);
+
+        assertEquals(event, interned);
+        assertEquals(Arrays.asList(new Location("Room 1.01"), null), interned.getLocations());
+        assertEquals(Arrays.asList(null, "J. Jansen"), interned.getStaffMembers());
+    }
+
+    @Test
+    public void testInternAllKeepsOrder() {
+        List<Event> events = Arrays.asList(event("B", 3, 4), event("A", 1, 2), event("B", 3, 4));
+        List<Event> interned = interner.internAll(events);
+
+        assertEquals(events, interned);
+        assertSame(interned.get(0), interned.get(2));
+    }
+}
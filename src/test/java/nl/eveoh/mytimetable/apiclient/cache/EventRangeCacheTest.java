@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventRangeCacheTest {
+
+    private static final long HOUR = 3600L * 1000L;
+
+    private static final String KEY = "student";
+
+    private EventRangeCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new EventRangeCache(HOUR, 1000);
+    }
+
+    @Test
+    public void testUncachedRangeIsMissing() {
+        assertNull(cache.getEvents(KEY, 0, 10 * HOUR));
+        assertEquals(Collections.singletonList(new TimeRange(0, 10 * HOUR)),
+                cache.getMissingRanges(KEY, 0, 10 * HOUR));
+    }
+
+    @Test
+    public void testCachedRangeIsServed() {
+        Event first = event("First", 1, 2);
+        Event second = event("Second", 5, 6);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Arrays.asList(second, first));
+
+        assertEquals(Arrays.asList(first, second), cache.getEvents(KEY, 0, 10 * HOUR));
+        assertEquals(Collections.singletonList(second), cache.getEvents(KEY, 3 * HOUR, 10 * HOUR));
+        assertTrue(cache.getMissingRanges(KEY, 2 * HOUR, 8 * HOUR).isEmpty());
+    }
+
+    @Test
+    public void testOverlappingEventsAreIncluded() {
+        Event event = event("Lecture", 1, 4);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Collections.singletonList(event));
+
+        assertEquals(Collections.singletonList(event), cache.getEvents(KEY, 2 * HOUR, 3 * HOUR));
+        assertTrue(cache.getEvents(KEY, 4 * HOUR, 5 * HOUR).isEmpty());
+    }
+
+    @Test
+    public void testOnlyMissingPartsAreReported() {
+        cache.put(KEY, new TimeRange(2 * HOUR, 4 * HOUR), Collections.<Event>emptyList());
+        cache.put(KEY, new TimeRange(6 * HOUR, 8 * HOUR), Collections.<Event>emptyList());
+
+        assertEquals(Arrays.asList(new TimeRange(0, 2 * HOUR), new TimeRange(4 * HOUR, 6 * HOUR),
+                new TimeRange(8 * HOUR, 10 * HOUR)), cache.getMissingRanges(KEY, 0, 10 * HOUR));
+        assertEquals(Collections.singletonList(new TimeRange(4 * HOUR, 5 * HOUR)),
+                cache.getMissingRanges(KEY, 3 * HOUR, 5 * HOUR));
+        assertNull(cache.getEvents(KEY, 3 * HOUR, 7 * HOUR));
+    }
+
+    @Test
+    public void testPartlyCachedEventsAreReturned() {
+        Event first = event("First", 1, 2);
+        Event second = event("Second", 3, 7);
+        cache.put(KEY, new TimeRange(0, 4 * HOUR), Arrays.asList(second, first));
+
+        List<TimeRange> missing = new ArrayList<TimeRange>();
+        assertEquals(Arrays.asList(first, second), cache.getCachedEvents(KEY, 0, 10 * HOUR, missing));
+        assertEquals(Collections.singletonList(new TimeRange(4 * HOUR, 10 * HOUR)), missing);
+
+        missing.clear();
+        assertTrue(cache.getCachedEvents("other", 0, 10 * HOUR, missing).isEmpty());
+        assertEquals(Collections.singletonList(new TimeRange(0, 10 * HOUR)), missing);
+    }
+
+    @Test
+    public void testAdjacentRangesAreMerged() {
+        Event first = event("First", 1, 2);
+        Event second = event("Second", 5, 6);
+        cache.put(KEY, new TimeRange(0, 4 * HOUR), Collections.singletonList(first));
+        cache.put(KEY, new TimeRange(4 * HOUR, 8 * HOUR), Collections.singletonList(second));
+
+        assertTrue(cache.getMissingRanges(KEY, 0, 8 * HOUR).isEmpty());
+        assertEquals(Arrays.asList(first, second), cache.getEvents(KEY, 0, 8 * HOUR));
+    }
+
+    @Test
+    public void testOverlappingRangesAreMerged() {
+        Event first = event("First", 1, 2);
+        Event second = event("Second", 5, 6);
+        cache.put(KEY, new TimeRange(0, 6 * HOUR), Arrays.asList(first, second));
+        cache.put(KEY, new TimeRange(3 * HOUR, 8 * HOUR), Collections.singletonList(second));
+
+        assertEquals(Arrays.asList(first, second), cache.getEvents(KEY, 0, 8 * HOUR));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRefetchedRangeReplacesEvents() {
+        Event cancelled = event("Cancelled", 1, 2);
+        Event moved = event("Moved", 5, 6);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Arrays.asList(cancelled, moved));
+        cache.put(KEY, new TimeRange(0, 4 * HOUR), Collections.<Event>emptyList());
+
+        assertEquals(Collections.singletonList(moved), cache.getEvents(KEY, 0, 10 * HOUR));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testExpiredRangesAreRemoved() throws InterruptedException {
+        cache = new EventRangeCache(20, 1000);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Collections.singletonList(event("Lecture", 1, 2)));
+        assertNotNull(cache.getEvents(KEY, 0, 10 * HOUR));
+
+        Thread.sleep(50);
+
+        assertNull(cache.getEvents(KEY, 0, 10 * HOUR));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUsersAreEvicted() {
+        cache = new EventRangeCache(HOUR, 3);
+        cache.put("first", new TimeRange(0, 10 * HOUR), Arrays.asList(event("A", 1, 2), event("B", 3, 4)));
+        cache.put("second", new TimeRange(0, 10 * HOUR), Collections.singletonList(event("C", 1, 2)));
+
+        // Use the first user, so the second one is evicted.
+        assertNotNull(cache.getEvents("first", 0, 10 * HOUR));
+        cache.put("third", new TimeRange(0, 10 * HOUR), Collections.singletonList(event("D", 1, 2)));
+
+        assertNotNull(cache.getEvents("first", 0, 10 * HOUR));
+        assertNull(cache.getEvents("second", 0, 10 * HOUR));
+        assertNotNull(cache.getEvents("third", 0, 10 * HOUR));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testFetchedUpcomingEventsAreServedForTheSameLimit() {
+        List<Event> events = Arrays.asList(event("A", 1, 2), event("B", 2, 3), event("C", 3, 4), event("D", 4, 5),
+                event("E", 5, 6));
+        cache.putUpcoming(KEY, 0, 5, events);
+
+        assertEquals(events, cache.getUpcomingEvents(KEY, 0, 5));
+        assertEquals(events.subList(0, 3), cache.getUpcomingEvents(KEY, 0, 3));
+    }
+
+    @Test
+    public void testUpcomingEventsBeyondTheFetchedLimitAreMissing() {
+        List<Event> events = Arrays.asList(event("A", 1, 2), event("B", 2, 3), event("C", 3, 4));
+        cache.putUpcoming(KEY, 0, 3, events);
+
+        assertNull(cache.getUpcomingEvents(KEY, 0, 4));
+
+        // The first event has ended, so the next event after the last fetched one would be needed.
+        assertNull(cache.getUpcomingEvents(KEY, 2 * HOUR, 3));
+        assertEquals(events.subList(1, 3), cache.getUpcomingEvents(KEY, 2 * HOUR, 2));
+    }
+
+    @Test
+    public void testUpcomingEventsBelowTheLimitAreComplete() {
+        List<Event> events = Arrays.asList(event("A", 1, 2), event("B", 3, 4));
+        cache.putUpcoming(KEY, 0, 5, events);
+
+        assertEquals(events, cache.getUpcomingEvents(KEY, 0, 5));
+        assertEquals(events.subList(1, 2), cache.getUpcomingEvents(KEY, 2 * HOUR, 5));
+        assertTrue(cache.getUpcomingEvents(KEY, 5 * HOUR, 5).isEmpty());
+    }
+
+    @Test
+    public void testUpcomingEventsDoNotCompleteARange() {
+        cache.putUpcoming(KEY, 0, 2, Arrays.asList(event("A", 1, 2), event("B", 3, 4)));
+
+        // More events may start at the start of the last event.
+        assertNotNull(cache.getEvents(KEY, 0, 3 * HOUR));
+        assertNull(cache.getEvents(KEY, 0, 3 * HOUR + 1));
+    }
+
+    @Test
+    public void testUpcomingEventsAreServedFromAFetchedRange() {
+        List<Event> events = Arrays.asList(event("A", 1, 2), event("B", 3, 4), event("C", 5, 6));
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), events);
+
+        assertEquals(events.subList(0, 2), cache.getUpcomingEvents(KEY, 0, 2));
+        assertNull(cache.getUpcomingEvents(KEY, 0, 4));
+        assertNull(cache.getUpcomingEvents(KEY, 11 * HOUR, 1));
+    }
+
+    @Test
+    public void testRefreshedRangeKeepsTheOtherRanges() throws InterruptedException {
+        cache = new EventRangeCache(400, 1000);
+        Event first = event("First", 1, 2);
+        Event last = event("Last", 8, 9);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Arrays.asList(first, event("Old", 5, 6), last));
+
+        Thread.sleep(250);
+
+        Event refreshed = event("Refreshed", 5, 6);
+        cache.put(KEY, new TimeRange(4 * HOUR, 7 * HOUR), Collections.singletonList(refreshed));
+        assertEquals(Arrays.asList(first, refreshed, last), cache.getEvents(KEY, 0, 10 * HOUR));
+
+        // The refreshed range outlives the parts of the range fetched before it.
+        Thread.sleep(250);
+
+        assertNull(cache.getEvents(KEY, 0, 10 * HOUR));
+        assertEquals(Collections.singletonList(refreshed), cache.getEvents(KEY, 4 * HOUR, 7 * HOUR));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDisabledCacheStoresNothing() {
+        cache = new EventRangeCache(0, 1000);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Collections.singletonList(event("Lecture", 1, 2)));
+
+        assertNull(cache.getEvents(KEY, 0, 10 * HOUR));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testListenersAreNotified() {
+        final List<Event> added = new ArrayList<Event>();
+        final List<Event> removed = new ArrayList<Event>();
+        cache.addListener(new CachedEventsListener() {
+            @Override
+            public void eventsAdded(List<Event> events) {
+                added.addAll(events);
+            }
+
+            @Override
+            public void eventsRemoved(List<Event> events) {
+                removed.addAll(events);
+            }
+        });
+
+        Event event = event("Lecture", 1, 2);
+        cache.put(KEY, new TimeRange(0, 10 * HOUR), Collections.singletonList(event));
+        cache.invalidate(KEY);
+
+        assertEquals(Collections.singletonList(event), added);
+        assertEquals(Collections.singletonList(event), removed);
+    }
+
+    static Event event(String description, long startHour, long endHour) {
+        return new Event(description, new Date(startHour * HOUR), new Date(endHour * HOUR),
+                Collections.singletonList(new Location("Room 1.01")), Collections.singletonList("J. Jansen"),
+                "Lecture");
+    }
+}
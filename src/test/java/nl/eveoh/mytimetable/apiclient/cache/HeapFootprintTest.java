@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tracks the estimated heap footprint of cached timetables, for a synthetic cohort of students who share courses.
+ * <p/>
+ * The thresholds have some headroom over the current footprint, about 604 bytes per event for the plain timetables
+ * and 8 bytes per event for the interned timetables. When a change to the model or the caches fails this
+ * test, either reduce the footprint again, or raise the thresholds deliberately.
+ */
+public class HeapFootprintTest {
+
+    private static final int USERS = 500;
+
+    private static final int COURSES = 40;
+
+    private static final int COURSES_PER_USER = 5;
+
+    private static final int EVENTS_PER_COURSE = 20;
+
+    private static final long HOUR = 3600L * 1000L;
+
+    private static final double MAX_PLAIN_BYTES_PER_EVENT = 700;
+
+    private static final double MAX_PLAIN_BYTES_PER_USER = 70000;
+
+    private static final double MAX_INTERNED_BYTES_PER_EVENT = 10;
+
+    private static final double MAX_INTERNED_BYTES_PER_USER = 1000;
+
+    @Test
+    public void testPlainFootprint() {
+        HeapFootprint footprint = new HeapFootprint();
+        for (List<Event> timetable : createCohort()) {
+            footprint.addTimetable(timetable);
+        }
+
+        assertEquals(USERS * COURSES_PER_USER * EVENTS_PER_COURSE, footprint.getEvents());
+        assertTrue(footprint.toString(), footprint.getBytesPerEvent() <= MAX_PLAIN_BYTES_PER_EVENT);
+        assertTrue(footprint.toString(), footprint.getBytesPerTimetable() <= MAX_PLAIN_BYTES_PER_USER);
+    }
+
+    @Test
+    public void testInternedFootprint() {
+        EventInterner interner = new EventInterner();
+
+        HeapFootprint footprint = new HeapFootprint();
+        for (List<Event> timetable : createCohort()) {
+            footprint.addTimetable(interner.internAll(timetable));
+        }
+
+        assertTrue(footprint.toString(), footprint.getBytesPerEvent() <= MAX_INTERNED_BYTES_PER_EVENT);
+        assertTrue(footprint.toString(), footprint.getBytesPerTimetable() <= MAX_INTERNED_BYTES_PER_USER);
+    }
+
+    @Test
+    public void testCachedFootprint() {
+        EventInterner interner = new EventInterner();
+        EventRangeCache cache = new EventRangeCache(HOUR, Integer.MAX_VALUE);
+
+        List<List<Event>> cohort = createCohort();
+        for (int i = 0; i < cohort.size(); i++) {
+            cache.put("user" + i, new TimeRange(0, 1000 * HOUR), interner.internAll(cohort.get(i)));
+        }
+
+        HeapFootprint footprint = cache.estimateFootprint();
+
+        assertEquals(USERS, footprint.getTimetables());
+        assertTrue(footprint.toString(), footprint.getBytesPerEvent() <= MAX_INTERNED_BYTES_PER_EVENT);
+        assertTrue(footprint.toString(), footprint.getBytesPerTimetable() <= MAX_INTERNED_BYTES_PER_USER);
+    }
+
+    @Test
+    public void testSharedObjectsAreCountedOnce() {
+        Event event = createEvent(0, 0);
+
+        HeapFootprint single = new HeapFootprint();
+        single.addTimetable(Collections.singletonList(event));
+
+        HeapFootprint shared = new HeapFootprint();
+        shared.addTimetable(Collections.singletonList(event));
+        shared.addTimetable(Collections.singletonList(event));
+
+        HeapFootprint copied = new HeapFootprint();
+        copied.addTimetable(Collections.singletonList(event));
+        copied.addTimetable(Collections.singletonList(createEvent(0, 0)));
+
+        // Only the list of the second timetable is added: a 24 byte ArrayList with a 24 byte array of one reference.
+        assertEquals(48, shared.getBytes() - single.getBytes());
+        assertEquals(2 * single.getBytes(), copied.getBytes());
+    }
+
+    /**
+     * Creates the timetables of the cohort, as deserialized from separate API responses: equal values are separate
+     * objects in every timetable.
+     */
+    private static List<List<Event>> createCohort() {
+        Random random = new Random(0);
+        List<List<Event>> ret = new ArrayList<List<Event>>();
+
+        for (int user = 0; user < USERS; user++) {
+            List<Event> timetable = new ArrayList<Event>();
+
+            int firstCourse = random.nextInt(COURSES);
+            for (int i = 0; i < COURSES_PER_USER; i++) {
+                int course = (firstCourse + i * 7) % COURSES;
+
+                for (int j = 0; j < EVENTS_PER_COURSE; j++) {
+                    timetable.add(createEvent(course, j));
+                }
+            }
+
+            ret.add(timetable);
+        }
+
+        return ret;
+    }
+
+    private static Event createEvent(int course, int index) {
+        long start = (course * 3 + index * 24) * HOUR;
+
+        Event event = new Event(new String("Introduction to course number " + course),
+                new Date(start), new Date(start + 2 * HOUR),
+                new ArrayList<Location>(Arrays.asList(new Location(new String("Building " + course % 5 + ", room "
+                        + index % 12)))),
+                new ArrayList<String>(Arrays.asList(new String("Lecturer " + course), new String("Assistant "
+                        + course))),
+                new String("Lecture"));
+        event.setActivityCode(new String("CRS" + (1000 + course)));
+        event.setNote1(new String(""));
+        return event;
+    }
+}
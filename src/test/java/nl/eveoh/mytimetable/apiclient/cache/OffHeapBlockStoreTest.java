@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapBlockStoreTest {
+
+    private final OffHeapBlockStore store = new OffHeapBlockStore(1024, 256);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlockLargerThanSlabIsRejected() {
+        new OffHeapBlockStore(4L * 1024 * 1024, 2 * 1024 * 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaximumSizeSmallerThanBlockIsRejected() {
+        new OffHeapBlockStore(100, 256);
+    }
+
+    @Test
+    public void testValueSpanningBlocksIsReturned() {
+        byte[] data = bytes(600, 1);
+        assertTrue(store.put("a", data, 42L));
+
+        OffHeapBlockStore.Value value = store.take("a");
+        assertArrayEquals(data, value.getData());
+        assertEquals(42L, value.getWritten());
+
+        // Taking a value removes it.
+        assertNull(store.take("a"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testLeastRecentlyStoredValuesAreEvicted() {
+        assertTrue(store.put("a", bytes(512, 1), 0L));
+        assertTrue(store.put("b", bytes(512, 2), 0L));
+        assertTrue(store.put("c", bytes(256, 3), 0L));
+
+        assertEquals(2, store.size());
+        assertNull(store.take("a"));
+        assertArrayEquals(bytes(512, 2), store.take("b").getData());
+        assertArrayEquals(bytes(256, 3), store.take("c").getData());
+    }
+
+    @Test
+    public void testBlocksAreReused() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(store.put("a", bytes(300, i), 0L));
+            assertTrue(store.put("b", bytes(200, i), 0L));
+            store.remove("b");
+        }
+
+        assertEquals(1024, store.getAllocatedSize());
+        assertArrayEquals(bytes(300, 99), store.take("a").getData());
+    }
+
+    @Test
+    public void testTooLargeValueIsNotStored() {
+        assertTrue(store.put("a", bytes(100, 1), 0L));
+        assertFalse(store.put("b", bytes(1025, 2), 0L));
+
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testClearReleasesSlabs() {
+        store.put("a", bytes(100, 1), 0L);
+        store.clear();
+
+        assertEquals(0, store.size());
+        assertEquals(0, store.getAllocatedSize());
+        assertTrue(store.put("a", bytes(1024, 2), 0L));
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] ret = new byte[length];
+        Arrays.fill(ret, (byte) seed);
+        ret[0] = (byte) (seed + 1);
+        ret[length - 1] = (byte) (seed + 2);
+        return ret;
+    }
+}
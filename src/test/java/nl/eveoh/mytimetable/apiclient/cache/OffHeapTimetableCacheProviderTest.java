@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static nl.eveoh.mytimetable.apiclient.cache.EventRangeCacheTest.event;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapTimetableCacheProviderTest {
+
+    private OffHeapTimetableCacheProvider provider;
+
+    @After
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Test
+    public void testEvictedUsersMoveOffHeapAndBack() {
+        provider = new OffHeapTimetableCacheProvider(60000L, 1, 1024 * 1024);
+
+        List<Event> first = Arrays.asList(event("Lecture", 1, 2), event("Tutorial", 3, 4));
+        List<Event> second = Collections.singletonList(event("Lecture", 5, 6));
+
+        provider.put("first", first);
+        assertSame(first, provider.get("first"));
+
+        provider.put("second", second);
+        assertEquals(1, provider.getOffHeapUserCount());
+        assertTrue(provider.getOffHeapSize() > 0);
+
+        // Accessing the off-heap user moves it back to the heap, and evicts the other one.
+        assertEquals(first, provider.get("first"));
+        assertEquals(1, provider.getOffHeapUserCount());
+        assertEquals(second, provider.get("second"));
+    }
+
+    @Test
+    public void testEventsExpireInBothTiers() throws InterruptedException {
+        provider = new OffHeapTimetableCacheProvider(100L, 1, 1024 * 1024);
+
+        provider.put("first", Collections.singletonList(event("Lecture", 1, 2)));
+        provider.put("second", Collections.singletonList(event("Lecture", 3, 4)));
+        assertEquals(1, provider.getOffHeapUserCount());
+
+        Thread.sleep(200L);
+
+        assertNull(provider.get("first"));
+        assertNull(provider.get("second"));
+    }
+
+    @Test
+    public void testInvalidateRemovesFromBothTiers() {
+        provider = new OffHeapTimetableCacheProvider(60000L, 1, 1024 * 1024);
+
+        provider.put("first", Collections.singletonList(event("Lecture", 1, 2)));
+        provider.put("second", Collections.singletonList(event("Lecture", 3, 4)));
+
+        provider.invalidate("first");
+        provider.invalidate("second");
+
+        assertEquals(0, provider.getOffHeapUserCount());
+        assertNull(provider.get("first"));
+        assertNull(provider.get("second"));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static nl.eveoh.mytimetable.apiclient.cache.EventRangeCacheTest.event;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeerTimetableCacheProviderTest {
+
+    private static final int USER_COUNT = 50;
+
+    private int firstPort;
+
+    private int secondPort;
+
+    private PeerTimetableCacheProvider first;
+
+    private PeerTimetableCacheProvider second;
+
+    @Before
+    public void setUp() throws IOException {
+        firstPort = getFreePort();
+        secondPort = getFreePort();
+
+        // The nodes are configured differently, by host name and by IP address.
+        first = start(new InetSocketAddress("localhost", firstPort),
+                Arrays.asList(new InetSocketAddress("localhost", firstPort),
+                        new InetSocketAddress("localhost", secondPort)));
+        second = start(new InetSocketAddress("127.0.0.1", secondPort),
+                Arrays.asList(new InetSocketAddress("127.0.0.1", firstPort),
+                        new InetSocketAddress("127.0.0.1", secondPort)));
+    }
+
+    @After
+    public void tearDown() {
+        first.close();
+        second.close();
+    }
+
+    private static PeerTimetableCacheProvider start(InetSocketAddress self, List<InetSocketAddress> nodes)
+            throws IOException {
+        PeerTimetableCacheProvider provider = new PeerTimetableCacheProvider(self, nodes, 60000, 1000);
+        provider.start();
+        return provider;
+    }
+
+    private static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testNodeKeyIsNormalized() {
+        assertEquals("127.0.0.1:7600", PeerTimetableCacheProvider.getNodeKey(new InetSocketAddress("127.0.0.1", 7600)));
+        assertEquals("127.0.0.1:7600", PeerTimetableCacheProvider.getNodeKey(new InetSocketAddress("localhost", 7600)));
+        assertEquals("[0:0:0:0:0:0:0:1]:7600",
+                PeerTimetableCacheProvider.getNodeKey(new InetSocketAddress("::1", 7600)));
+        assertEquals("cache.example.org:7600",
+                PeerTimetableCacheProvider.getNodeKey(InetSocketAddress.createUnresolved("Cache.Example.org", 7600)));
+    }
+
+    @Test
+    public void testNodesAgreeOnOwners() {
+        for (int i = 0; i < USER_COUNT; i++) {
+            first.put("user" + i, events(i));
+        }
+
+        for (int i = 0; i < USER_COUNT; i++) {
+            assertEquals(events(i), second.get("user" + i));
+            assertEquals(events(i), first.get("user" + i));
+        }
+    }
+
+    @Test
+    public void testInvalidatedEventsAreRemoved() {
+        for (int i = 0; i < USER_COUNT; i++) {
+            second.put("user" + i, events(i));
+            first.invalidate("user" + i);
+        }
+
+        for (int i = 0; i < USER_COUNT; i++) {
+            assertNull(second.get("user" + i));
+        }
+    }
+
+    @Test
+    public void testConnectionsAreReused() {
+        for (int i = 0; i < USER_COUNT; i++) {
+            first.put("user" + i, events(i));
+            first.get("user" + i);
+        }
+
+        assertEquals(1, second.getAcceptedConnectionCount());
+    }
+
+    @Test
+    public void testClosedConnectionIsReplaced() throws InterruptedException {
+        // Let the second node close idle connections before the first node stops using them.
+        second.setIdleTimeout(100);
+
+        for (int i = 0; i < USER_COUNT; i++) {
+            first.put("user" + i, events(i));
+        }
+
+        Thread.sleep(500);
+
+        for (int i = 0; i < USER_COUNT; i++) {
+            assertEquals(events(i), first.get("user" + i));
+        }
+
+        assertEquals(2, second.getAcceptedConnectionCount());
+    }
+
+    @Test
+    public void testUnreachablePeerIsMiss() {
+        second.close();
+
+        int misses = 0;
+        for (int i = 0; i < USER_COUNT; i++) {
+            first.put("user" + i, events(i));
+            if (first.get("user" + i) == null) {
+                misses++;
+            }
+        }
+
+        // Only the users owned by the second node are not cached.
+        assertTrue(misses > 0);
+        assertTrue(misses < USER_COUNT);
+    }
+
+    @Test
+    public void testConnectionFromOtherAddressIsRejected() throws IOException {
+        Socket socket = new Socket();
+        try {
+            // Any 127.x.x.x address is a loopback address, but only 127.0.0.1 is a cluster node.
+            socket.bind(new InetSocketAddress("127.0.0.2", 0));
+            socket.connect(new InetSocketAddress("127.0.0.1", secondPort));
+            socket.setSoTimeout(1000);
+
+            int read;
+            try {
+                read = socket.getInputStream().read();
+            } catch (SocketException e) {
+                read = -1;
+            }
+
+            assertEquals(-1, read);
+            assertEquals(0, second.getAcceptedConnectionCount());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelfMustBeNode() {
+        new PeerTimetableCacheProvider(new InetSocketAddress("127.0.0.1", firstPort),
+                Collections.singletonList(new InetSocketAddress("127.0.0.1", secondPort)), 60000, 1000);
+    }
+
+    private static List<Event> events(int user) {
+        return Arrays.asList(event("Lecture " + user, user, user + 1), event("Tutorial " + user, user + 2, user + 3));
+    }
+}
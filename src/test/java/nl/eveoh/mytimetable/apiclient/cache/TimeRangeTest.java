@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TimeRangeTest {
+
+    @Test
+    public void testEquality() {
+        assertEquals(new TimeRange(1, 2), new TimeRange(1, 2));
+        assertEquals(new TimeRange(1, 2).hashCode(), new TimeRange(1, 2).hashCode());
+        assertFalse(new TimeRange(1, 2).equals(new TimeRange(1, 3)));
+    }
+
+    @Test
+    public void testEmptyRangeIsAllowed() {
+        TimeRange range = new TimeRange(5, 5);
+        assertEquals(range.getStart(), range.getEnd());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEndBeforeStartIsRejected() {
+        new TimeRange(5, 4);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private ConfigurationFileWatcher watcher;
+
+    private final List<Configuration> changes = new ArrayList<Configuration>();
+
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile("mytimetable.properties");
+        write("key", 1000);
+
+        watcher = new ConfigurationFileWatcher(file);
+        watcher.addListener(new ConfigurationChangeListener() {
+            @Override
+            public void onConfigurationChanged(Configuration configuration) {
+                changes.add(configuration);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        watcher.close();
+    }
+
+    @Test
+    public void testConfigurationIsLoaded() {
+        assertEquals("key", watcher.getConfiguration().getApiKey());
+        assertTrue(watcher.getConfiguration().isImmutable());
+    }
+
+    @Test
+    public void testListenersAreNotifiedOfChanges() throws IOException {
+        write("other", 2000);
+        watcher.checkForChanges();
+
+        assertEquals(1, changes.size());
+        assertEquals("other", changes.get(0).getApiKey());
+        assertTrue(changes.get(0).isImmutable());
+        assertEquals("other", watcher.getConfiguration().getApiKey());
+    }
+
+    @Test
+    public void testChangeWithSameModificationTimeIsDetected() throws IOException {
+        write("other", 1000);
+        watcher.checkForChanges();
+
+        assertEquals(1, changes.size());
+        assertEquals("other", changes.get(0).getApiKey());
+    }
+
+    @Test
+    public void testUnchangedValuesAreNotReported() throws IOException {
+        write("key", 2000);
+        watcher.checkForChanges();
+
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testUnmodifiedFileIsNotReloaded() {
+        watcher.checkForChanges();
+
+        assertTrue(changes.isEmpty());
+    }
+
+    private void write(String apiKey, long modified) throws IOException {
+        Configuration configuration = new Configuration();
+        configuration.setApiKey(apiKey);
+        Properties properties = configuration.toProperties();
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+
+        // File systems may only store modification times in whole seconds.
+        assertTrue(file.setLastModified(modified));
+    }
+}
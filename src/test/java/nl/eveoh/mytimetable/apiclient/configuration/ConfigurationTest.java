@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.configuration;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationTest {
+
+    @Test
+    public void testSnapshotIsIndependentOfTheOriginal() {
+        Configuration configuration = new Configuration();
+        configuration.setApiKey("key");
+        configuration.getApiEndpointUris().add("https://demo.eveoh.nl/api/v0/");
+
+        Configuration snapshot = configuration.snapshot();
+        configuration.setApiKey("other");
+        configuration.getApiEndpointUris().add("https://other.eveoh.nl/api/v0/");
+        configuration.getTimetableTypes().clear();
+
+        assertTrue(snapshot.isImmutable());
+        assertEquals("key", snapshot.getApiKey());
+        assertEquals(1, snapshot.getApiEndpointUris().size());
+        assertFalse(snapshot.getTimetableTypes().isEmpty());
+        assertSame(snapshot, snapshot.snapshot());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotSettersThrow() {
+        new Configuration().snapshot().setApiKey("key");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotEndpointsCannotBeModified() {
+        new Configuration().snapshot().getApiEndpointUris().add("https://demo.eveoh.nl/api/v0/");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotTimetableTypesCannotBeModified() {
+        new Configuration().snapshot().getTimetableTypes().clear();
+    }
+
+    @Test
+    public void testCopyOfSnapshotIsMutable() {
+        Configuration copy = new Configuration(new Configuration().snapshot());
+        copy.setApiSocketTimeout(5000);
+
+        assertFalse(copy.isImmutable());
+        assertEquals(5000, copy.getApiSocketTimeout());
+    }
+
+    @Test
+    public void testPropertiesRoundTrip() {
+        Configuration configuration = new Configuration();
+        configuration.setApiKey("key");
+        configuration.getApiEndpointUris().add("https://demo.eveoh.nl/api/v0/");
+        configuration.setEventCacheTimeToLive(60);
+
+        Configuration read = new Configuration(configuration.toProperties());
+
+        assertEquals("key", read.getApiKey());
+        assertEquals(configuration.getApiEndpointUris(), read.getApiEndpointUris());
+        assertEquals(60, read.getEventCacheTimeToLive());
+        assertEquals(configuration.getTimetableTypes(), read.getTimetableTypes());
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.ical;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IcsWriterTest {
+
+    private static final long HOUR = 3600L * 1000L;
+
+    @Test
+    public void testCalendarStructure() throws IOException {
+        List<String> lines = unfold(write(Collections.singletonList(event("Lecture", 1, 2))));
+
+        assertEquals("BEGIN:VCALENDAR", lines.get(0));
+        assertTrue(lines.contains("X-WR-CALNAME:My timetable"));
+        assertTrue(lines.contains("BEGIN:VEVENT"));
+        assertTrue(lines.contains("DTSTART:19700101T010000Z"));
+        assertTrue(lines.contains("DTEND:19700101T020000Z"));
+        assertTrue(lines.contains("SUMMARY:Lecture"));
+        assertTrue(lines.contains("LOCATION:Room 1.01\\, Room 1.02"));
+        assertTrue(lines.contains("CATEGORIES:Lecture"));
+        assertTrue(lines.contains("DESCRIPTION:Staff: J. Jansen\\, P. Pietersen"));
+        assertTrue(lines.contains("END:VEVENT"));
+        assertEquals("END:VCALENDAR", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testEventsWithoutDatesAreSkipped() throws IOException {
+        Event event = event("Lecture", 1, 2);
+        event.setEndDate(null);
+
+        assertFalse(unfold(write(Collections.singletonList(event))).contains("BEGIN:VEVENT"));
+    }
+
+    @Test
+    public void testTextIsEscaped() throws IOException {
+        Event event = event("Lecture; part 1, \\ 2\r\nof 3\u0007", 1, 2);
+        event.setNote1("First note");
+        event.setNote2("Second note");
+
+        List<String> lines = unfold(write(Collections.singletonList(event)));
+
+        assertTrue(lines.contains("SUMMARY:Lecture\\; part 1\\, \\\\ 2\\nof 3"));
+        assertTrue(lines.contains("DESCRIPTION:Staff: J. Jansen\\, P. Pietersen\\nFirst note\\nSecond note"));
+    }
+
+    @Test
+    public void testLongLinesAreFolded() throws IOException {
+        String ascii = Strings.repeat("Lecture ", 40);
+        String accented = Strings.repeat("\u00e9\u00e8", 60);
+        String supplementary = Strings.repeat("\ud83d\udcda", 50);
+
+        byte[] ics = write(Arrays.asList(event(ascii, 1, 2), event(accented, 1, 2), event(supplementary, 1, 2)));
+
+        CharsetDecoder decoder = Charsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        int start = 0;
+        for (int i = 0; i + 1 < ics.length; i++) {
+            if (ics[i] == '\r' && ics[i + 1] == '\n') {
+                assertTrue("Line too long", i - start <= 75);
+
+                // Lines are only folded between characters.
+                decode(decoder, ics, start, i - start);
+                start = i + 2;
+            }
+        }
+
+        List<String> lines = unfold(ics);
+        assertTrue(lines.contains("SUMMARY:" + ascii));
+        assertTrue(lines.contains("SUMMARY:" + accented));
+        assertTrue(lines.contains("SUMMARY:" + supplementary));
+    }
+
+    @Test
+    public void testChannelOutputEqualsStreamOutput() throws IOException {
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 500; i++) {
+            events.add(event("Lecture " + i, i, i + 1));
+        }
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        IcsWriter writer = new IcsWriter(Channels.newChannel(channelOut));
+        writer.write("My timetable", events);
+        writer.close();
+
+        assertEquals(withoutTimestamps(unfold(write(events))), withoutTimestamps(unfold(channelOut.toByteArray())));
+    }
+
+    @Test
+    public void testETagChangesWithEvents() {
+        List<Event> events = Arrays.asList(event("Lecture", 1, 2), event("Tutorial", 3, 4));
+        String eTag = IcsWriter.getETag(events);
+
+        assertEquals(eTag, IcsWriter.getETag(Arrays.asList(event("Lecture", 1, 2), event("Tutorial", 3, 4))));
+        assertNotEquals(eTag, IcsWriter.getETag(Arrays.asList(event("Lecture", 1, 2), event("Tutorial", 3, 5))));
+        assertNotEquals(eTag, IcsWriter.getETag(Collections.singletonList(event("Lecture", 1, 2))));
+
+        Event moved = event("Tutorial", 3, 4);
+        moved.setLocations(Collections.singletonList(new Location("Room 2.01")));
+        assertNotEquals(eTag, IcsWriter.getETag(Arrays.asList(event("Lecture", 1, 2), moved)));
+    }
+
+    @Test
+    public void testParallelEventsHaveDifferentUids() throws IOException {
+        Event parallel = event("Lecture", 1, 2);
+        parallel.setLocations(Collections.singletonList(new Location("Room 2.01")));
+
+        List<String> uids = new ArrayList<String>();
+        for (String line : unfold(write(Arrays.asList(event("Lecture", 1, 2), parallel)))) {
+            if (line.startsWith("UID:")) {
+                uids.add(line);
+            }
+        }
+
+        assertEquals(2, uids.size());
+        assertNotEquals(uids.get(0), uids.get(1));
+    }
+
+    @Test
+    public void testNotModified() {
+        String eTag = IcsWriter.getETag(Collections.singletonList(event("Lecture", 1, 2)));
+
+        assertTrue(IcsWriter.isNotModified(eTag, eTag));
+        assertTrue(IcsWriter.isNotModified("\"other\", W/" + eTag, eTag));
+        assertTrue(IcsWriter.isNotModified("*", eTag));
+        assertFalse(IcsWriter.isNotModified(null, eTag));
+        assertFalse(IcsWriter.isNotModified("\"other\"", eTag));
+    }
+
+    private static byte[] write(List<Event> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IcsWriter writer = new IcsWriter(out);
+        writer.write("My timetable", events);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The unfolded lines of an iCalendar document.
+     */
+    private static List<String> unfold(byte[] ics) {
+        String s = new String(ics, Charsets.UTF_8);
+        assertTrue(s.endsWith("\r\n"));
+
+        return Arrays.asList(s.replace("\r\n ", "").split("\r\n"));
+    }
+
+    private static List<String> withoutTimestamps(List<String> lines) {
+        List<String> ret = new ArrayList<String>();
+        for (String line : lines) {
+            if (!line.startsWith("DTSTAMP:")) {
+                ret.add(line);
+            }
+        }
+
+        return ret;
+    }
+
+    private static void decode(CharsetDecoder decoder, byte[] bytes, int offset, int length) {
+        try {
+            decoder.decode(ByteBuffer.wrap(bytes, offset, length));
+        } catch (CharacterCodingException e) {
+            throw new AssertionError("Line is not valid UTF-8.");
+        }
+    }
+
+    private static Event event(String description, long startHour, long endHour) {
+        return new Event(description, new Date(startHour * HOUR), new Date(endHour * HOUR),
+                Arrays.asList(new Location("Room 1.01"), new Location("Room 1.02")),
+                Arrays.asList("J. Jansen", "P. Pietersen"), "Lecture");
+    }
+}
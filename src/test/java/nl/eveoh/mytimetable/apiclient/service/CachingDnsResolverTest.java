@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CachingDnsResolverTest {
+
+    @Test
+    public void testAddressesAreCached() throws UnknownHostException {
+        CountingResolver delegate = new CountingResolver(address(1));
+        CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60000L, 1000L);
+
+        assertArrayEquals(new InetAddress[]{address(1)}, resolver.resolve("api.example.com"));
+        assertArrayEquals(new InetAddress[]{address(1)}, resolver.resolve("api.example.com"));
+        assertEquals(1, delegate.lookups.get());
+
+        resolver.clear();
+        resolver.resolve("api.example.com");
+        assertEquals(2, delegate.lookups.get());
+    }
+
+    @Test
+    public void testAddressesAreReturnedInRoundRobinOrder() throws UnknownHostException {
+        CachingDnsResolver resolver = new CachingDnsResolver(new CountingResolver(address(1), address(2),
+                address(3)), 60000L, 1000L);
+
+        assertArrayEquals(new InetAddress[]{address(1), address(2), address(3)}, resolver.resolve("host"));
+        assertArrayEquals(new InetAddress[]{address(2), address(3), address(1)}, resolver.resolve("host"));
+        assertArrayEquals(new InetAddress[]{address(3), address(1), address(2)}, resolver.resolve("host"));
+        assertArrayEquals(new InetAddress[]{address(1), address(2), address(3)}, resolver.resolve("host"));
+    }
+
+    @Test
+    public void testUnknownHostIsCachedBriefly() throws Exception {
+        CountingResolver delegate = new CountingResolver();
+        CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60000L, 50L);
+
+        assertUnknown(resolver);
+        assertUnknown(resolver);
+        assertEquals(1, delegate.lookups.get());
+
+        Thread.sleep(100L);
+        assertUnknown(resolver);
+        assertEquals(2, delegate.lookups.get());
+    }
+
+    @Test
+    public void testAddressesAreRefreshedInBackground() throws Exception {
+        CountingResolver delegate = new CountingResolver(address(1));
+        CachingDnsResolver resolver = new CachingDnsResolver(delegate, 400L, 100L);
+
+        resolver.resolve("host");
+        Thread.sleep(320L);
+
+        // Past three quarters of the time to live the cached addresses are still returned, and refreshed.
+        delegate.addresses = new InetAddress[]{address(2)};
+        assertArrayEquals(new InetAddress[]{address(1)}, resolver.resolve("host"));
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!resolver.resolve("host")[0].equals(address(2))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Addresses were not refreshed.");
+            }
+
+            Thread.sleep(5L);
+        }
+
+        assertEquals(2, delegate.lookups.get());
+    }
+
+    private static void assertUnknown(CachingDnsResolver resolver) {
+        try {
+            resolver.resolve("unknown");
+            fail("UnknownHostException expected.");
+        } catch (UnknownHostException e) {
+            // Expected.
+        }
+    }
+
+    private static InetAddress address(int i) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) i});
+    }
+
+    private static class CountingResolver implements DnsResolver {
+
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private volatile InetAddress[] addresses;
+
+
+        private CountingResolver(InetAddress... addresses) {
+            this.addresses = addresses;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+
+            if (addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+
+            return addresses;
+        }
+    }
+}
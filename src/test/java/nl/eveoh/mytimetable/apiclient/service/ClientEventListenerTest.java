@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientEventListenerTest {
+
+    private StubApiServer failing;
+
+    private StubApiServer server;
+
+    private MyTimetableServiceImpl service;
+
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        failing = new StubApiServer();
+        failing.setStatus(500);
+        server = new StubApiServer();
+
+        service = new MyTimetableServiceImpl(createConfiguration(), new TestHttpClientBuilder());
+
+        // Failovers and configuration changes are reported regardless of the sample rate.
+        listener = new RecordingListener();
+        service.setRequestTimingListener(listener, 0.0);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        failing.stop();
+        server.stop();
+    }
+
+    private Configuration createConfiguration() {
+        Configuration configuration = MyTimetableServiceImplTest.createConfiguration(failing);
+        configuration.getApiEndpointUris().add(server.getEndpointUri());
+        return configuration;
+    }
+
+    @Test
+    public void testFailoverIsReported() {
+        assertFalse(service.getUpcomingEvents("student").isEmpty());
+
+        assertEquals(1, listener.failovers.size());
+        assertEquals(getHost(failing) + " -> " + getHost(server) + " #1 HTTP_ERROR", listener.failovers.get(0));
+        assertTrue(listener.timings.isEmpty());
+    }
+
+    @Test
+    public void testConfigurationChangeIsReported() {
+        service.onConfigurationChanged(createConfiguration());
+
+        assertEquals(1, listener.configurationChanges.size());
+        assertTrue(listener.configurationChanges.get(0) >= 0);
+    }
+
+    private static String getHost(StubApiServer server) {
+        return server.getEndpointUri().replace("http://", "").replace("/api/", "");
+    }
+
+    private static class RecordingListener implements ClientEventListener {
+
+        private final List<RequestTiming> timings = new CopyOnWriteArrayList<RequestTiming>();
+
+        private final List<String> failovers = new CopyOnWriteArrayList<String>();
+
+        private final List<Long> configurationChanges = new CopyOnWriteArrayList<Long>();
+
+        @Override
+        public void onRequestCompleted(RequestTiming timing) {
+            timings.add(timing);
+        }
+
+        @Override
+        public void onFailover(String fromEndpoint, String toEndpoint, int attempt, RequestTiming.Outcome reason) {
+            failovers.add(fromEndpoint + " -> " + toEndpoint + " #" + attempt + " " + reason);
+        }
+
+        @Override
+        public void onConfigurationChanged(long durationNanos) {
+            configurationChanges.add(durationNanos);
+        }
+    }
+}
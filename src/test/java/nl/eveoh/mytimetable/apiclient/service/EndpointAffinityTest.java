@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointAffinityTest {
+
+    private static final List<String> ENDPOINTS = Arrays.asList("https://api1.example.com/api/",
+            "https://api2.example.com/api/", "https://api3.example.com/api/");
+
+    @Test
+    public void testUserIsSentToSameEndpoint() {
+        EndpointAffinity affinity = new EndpointAffinity(ENDPOINTS);
+
+        List<String> endpoints = affinity.getEndpoints("student");
+        assertEquals(new HashSet<String>(ENDPOINTS), new HashSet<String>(endpoints));
+        assertEquals(endpoints, affinity.getEndpoints("student"));
+        assertEquals(endpoints, new EndpointAffinity(ENDPOINTS).getEndpoints("student"));
+    }
+
+    @Test
+    public void testUsersAreSpreadOverEndpoints() {
+        EndpointAffinity affinity = new EndpointAffinity(ENDPOINTS);
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < 3000; i++) {
+            String preferred = affinity.getEndpoints("user" + i).get(0);
+            counts.put(preferred, counts.containsKey(preferred) ? counts.get(preferred) + 1 : 1);
+        }
+
+        for (String endpoint : ENDPOINTS) {
+            assertTrue(counts.get(endpoint) > 500);
+        }
+    }
+
+    @Test
+    public void testOnlyUsersOfRemovedEndpointMove() {
+        EndpointAffinity all = new EndpointAffinity(ENDPOINTS);
+        EndpointAffinity remaining = new EndpointAffinity(ENDPOINTS.subList(0, 2));
+
+        for (int i = 0; i < 1000; i++) {
+            String preferred = all.getEndpoints("user" + i).get(0);
+            if (!preferred.equals(ENDPOINTS.get(2))) {
+                assertEquals(preferred, remaining.getEndpoints("user" + i).get(0));
+            }
+        }
+    }
+
+    @Test
+    public void testOverloadedEndpointIsTriedLast() {
+        EndpointAffinity affinity = new EndpointAffinity(ENDPOINTS);
+
+        List<String> endpoints = affinity.getEndpoints("student");
+        HttpHost preferred = URIUtils.extractHost(URI.create(endpoints.get(0)));
+
+        for (int i = 0; i < 3; i++) {
+            affinity.requestStarted(preferred);
+        }
+
+        List<String> overloaded = affinity.getEndpoints("student");
+        assertEquals(endpoints.get(0), overloaded.get(2));
+        assertEquals(endpoints.subList(1, 3), overloaded.subList(0, 2));
+
+        for (int i = 0; i < 3; i++) {
+            affinity.requestFinished(preferred);
+        }
+
+        assertEquals(endpoints, affinity.getEndpoints("student"));
+    }
+
+    @Test
+    public void testHasEndpoints() {
+        EndpointAffinity affinity = new EndpointAffinity(ENDPOINTS);
+
+        assertTrue(affinity.hasEndpoints(ENDPOINTS));
+        assertFalse(affinity.hasEndpoints(ENDPOINTS.subList(0, 2)));
+        assertEquals(ENDPOINTS.subList(0, 1), new EndpointAffinity(ENDPOINTS.subList(0, 1)).getEndpoints("student"));
+    }
+}
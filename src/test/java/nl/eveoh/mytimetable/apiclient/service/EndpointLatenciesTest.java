@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpHost;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EndpointLatenciesTest {
+
+    private static final HttpHost HOST = new HttpHost("api.example.org", 443, "https");
+
+    private static final HttpHost OTHER_HOST = new HttpHost("api2.example.org", 443, "https");
+
+    private final EndpointLatencies latencies = new EndpointLatencies();
+
+    @Test
+    public void testNoPercentileWithoutEnoughSamples() {
+        assertEquals(-1, latencies.getPercentile(HOST));
+
+        for (int i = 1; i < 20; i++) {
+            latencies.record(HOST, i);
+        }
+
+        assertEquals(-1, latencies.getPercentile(HOST));
+    }
+
+    @Test
+    public void testPercentile() {
+        for (int i = 1; i <= 100; i++) {
+            latencies.record(HOST, i);
+        }
+
+        assertEquals(99, latencies.getPercentile(HOST));
+        assertEquals(-1, latencies.getPercentile(OTHER_HOST));
+    }
+
+    @Test
+    public void testOldSamplesAreForgotten() {
+        for (int i = 0; i < 256; i++) {
+            latencies.record(HOST, 5000);
+        }
+
+        // The percentile is only computed again after every 16 samples.
+        for (int i = 0; i < 256 + 16; i++) {
+            latencies.record(HOST, 10);
+        }
+
+        assertEquals(10, latencies.getPercentile(HOST));
+    }
+}
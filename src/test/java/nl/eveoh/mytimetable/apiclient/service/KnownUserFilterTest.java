@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KnownUserFilterTest {
+
+    private static final int USER_COUNT = 10000;
+
+    @Test
+    public void testKnownUsersAreNeverRejected() {
+        KnownUserFilter filter = KnownUserFilter.create(getUsernames("student"), 0.01);
+
+        for (String username : getUsernames("student")) {
+            assertTrue(filter.mightBeKnown(username));
+        }
+    }
+
+    @Test
+    public void testMostUnknownUsersAreRejected() {
+        KnownUserFilter filter = KnownUserFilter.create(getUsernames("student"), 0.01);
+
+        int falsePositives = 0;
+        for (String username : getUsernames("staff")) {
+            if (filter.mightBeKnown(username)) {
+                falsePositives++;
+            }
+        }
+
+        // Allow for some variance around the expected 1%.
+        assertTrue("False positives: " + falsePositives, falsePositives < USER_COUNT * 0.02);
+    }
+
+    @Test
+    public void testLoadIgnoresEmptyLines() throws IOException {
+        String usernames = "student1\n\n  student2  \r\n\nstudent3";
+        KnownUserFilter filter = KnownUserFilter.load(new ByteArrayInputStream(usernames.getBytes(Charsets.UTF_8)), 3,
+                0.001);
+
+        assertTrue(filter.mightBeKnown("student1"));
+        assertTrue(filter.mightBeKnown("student2"));
+        assertTrue(filter.mightBeKnown("student3"));
+    }
+
+    @Test
+    public void testEmptyFilterRejectsEveryone() {
+        KnownUserFilter filter = KnownUserFilter.create(new ArrayList<String>(), 0.01);
+
+        assertFalse(filter.mightBeKnown("student1"));
+    }
+
+    private static List<String> getUsernames(String prefix) {
+        List<String> ret = new ArrayList<String>(USER_COUNT);
+        for (int i = 0; i < USER_COUNT; i++) {
+            ret.add(prefix + i);
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class MyTimetableExecutorsTest {
+
+    private static final int TASK_COUNT = 64;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = MyTimetableExecutors.newExecutor(TASK_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testVirtualThreadsAreUsedWhenAvailable() throws Exception {
+        Method isVirtual = findIsVirtualMethod();
+        assertEquals(isVirtual != null, MyTimetableExecutors.isVirtualThreadsAvailable());
+
+        Thread thread = executor.submit(new Callable<Thread>() {
+            @Override
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        }).get();
+
+        if (isVirtual != null) {
+            assertTrue((Boolean) isVirtual.invoke(thread));
+        } else {
+            assertTrue(thread.isDaemon());
+            assertTrue(thread.getName().startsWith("mytimetable-api-"));
+        }
+    }
+
+    @Test
+    public void testBlockingTasksRunConcurrently() throws Exception {
+        final CountDownLatch started = new CountDownLatch(TASK_COUNT);
+
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    // Only completes when all tasks run at the same time.
+                    started.countDown();
+                    return started.await(10, TimeUnit.SECONDS);
+                }
+            }));
+        }
+
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+    }
+
+    @Test
+    public void testPlatformThreadsAreBounded() throws Exception {
+        assumeFalse(MyTimetableExecutors.isVirtualThreadsAvailable());
+
+        ExecutorService bounded = MyTimetableExecutors.newExecutor(1);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            bounded.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    return release.await(10, TimeUnit.SECONDS);
+                }
+            });
+
+            // The only thread is busy, so the task runs in the submitting thread.
+            Thread thread = bounded.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            release.countDown();
+
+            assertEquals(Thread.currentThread(), thread);
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testTasksAreRejectedAfterShutdown() {
+        executor.shutdown();
+        executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return true;
+            }
+        });
+    }
+
+    private static Method findIsVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.cache.LocalTimetableCacheProvider;
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MyTimetableServiceImplTest {
+
+    private static final long WEEK = 7 * 24 * 3600L * 1000L;
+
+    private StubApiServer server;
+
+    private TestHttpClientBuilder clientBuilder;
+
+    private MyTimetableServiceImpl service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubApiServer();
+        clientBuilder = new TestHttpClientBuilder();
+        service = new MyTimetableServiceImpl(createConfiguration(server), clientBuilder);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        server.stop();
+    }
+
+    static Configuration createConfiguration(StubApiServer server) {
+        Configuration configuration = new Configuration();
+        configuration.getApiEndpointUris().add(server.getEndpointUri());
+        configuration.setApiKey("key");
+        configuration.setMaxNumberOfEvents(5);
+        configuration.setEventCacheTimeToLive(300);
+        return configuration;
+    }
+
+    @Test
+    public void testUpcomingEventsAreCached() {
+        List<Event> events = service.getUpcomingEvents("student");
+
+        assertEquals(5, events.size());
+        assertEquals(events, service.getUpcomingEvents("student"));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void testEventsAreCached() {
+        Date from = new Date();
+        Date to = new Date(from.getTime() + WEEK);
+
+        List<Event> events = service.getEvents("student", from, to, null);
+
+        assertEquals(StubApiServer.getEvents(from.getTime(), to.getTime(), 0), events);
+        assertEquals(events, service.getEvents("student", from, to, null));
+        assertNotNull(service.getEvents("student", new Date(from.getTime() + WEEK / 2), to, null));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void testEventsAreNotCachedByDefault() {
+        Configuration configuration = createConfiguration(server);
+        configuration.setEventCacheTimeToLive(new Configuration().getEventCacheTimeToLive());
+        service.onConfigurationChanged(configuration);
+
+        service.getUpcomingEvents("student");
+        service.getUpcomingEvents("student");
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void testOnlyMissingPartsAreFetched() {
+        Date from = new Date();
+        Date middle = new Date(from.getTime() + WEEK / 2);
+        Date to = new Date(from.getTime() + WEEK);
+
+        service.getEvents("student", from, middle, null);
+        assertEquals(StubApiServer.getEvents(from.getTime(), to.getTime(), 0),
+                service.getEvents("student", from, to, null));
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void testEvictedUserIsServedFromFetchedParts() {
+        // The cache can hold either half of the range, but not both, so the user is evicted while fetching.
+        Configuration configuration = createConfiguration(server);
+        configuration.setEventCacheMaxEvents(50);
+        service.onConfigurationChanged(configuration);
+
+        Date from = new Date();
+        Date middle = new Date(from.getTime() + WEEK / 2);
+        Date to = new Date(from.getTime() + WEEK);
+
+        service.getEvents("student", from, middle, null);
+        assertEquals(StubApiServer.getEvents(from.getTime(), to.getTime(), 0),
+                service.getEvents("student", from, to, null));
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void testPrefetchedUserIsServedFromCache() {
+        Date from = new Date();
+        Date to = new Date(from.getTime() + WEEK);
+
+        assertNotNull(service.getEvents("student", from, to, null));
+        assertNotNull(service.prefetchUpcomingEvents("student", null));
+        assertEquals(2, server.getRequests());
+
+        // Prefetching only replaces the upcoming events, so the week is still cached.
+        assertEquals(5, service.getUpcomingEvents("student").size());
+        assertNotNull(service.getEvents("student", from, to, null));
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void testReturnedEventsAreShared() {
+        Date from = new Date();
+        Date to = new Date(from.getTime() + WEEK);
+
+        List<Event> upcoming = service.getUpcomingEvents("student");
+        assertImmutable(upcoming);
+        assertSameEvents(upcoming, service.getUpcomingEvents("student"));
+
+        List<Event> events = service.getEvents("student", from, to, null);
+        assertImmutable(events);
+        assertSameEvents(events, service.getEvents("student", from, to, null));
+    }
+
+    @Test
+    public void testUncachedEventsCanBeModified() {
+        Configuration configuration = createConfiguration(server);
+        configuration.setEventCacheTimeToLive(0);
+        service.onConfigurationChanged(configuration);
+
+        Date from = new Date();
+
+        service.getUpcomingEvents("student").get(0).setNote1("Note");
+        service.getEvents("student", from, new Date(from.getTime() + WEEK), null).get(0).setNote1("Note");
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void testCopiedEventCanBeModified() {
+        Event event = service.getUpcomingEvents("student").get(0);
+        String description = event.getActivityDescription();
+
+        Event copy = new Event(event);
+        assertEquals(event, copy);
+
+        copy.setActivityDescription("Changed");
+        copy.getStartDate().setTime(0);
+        copy.getLocations().clear();
+
+        assertEquals(description, event.getActivityDescription());
+        assertEquals(event, service.getUpcomingEvents("student").get(0));
+    }
+
+    private static void assertImmutable(List<Event> events) {
+        assertFalse(events.isEmpty());
+
+        for (Event event : events) {
+            try {
+                event.setActivityDescription("Changed");
+                fail("Event can be modified.");
+            } catch (UnsupportedOperationException e) {
+                // Expected.
+            }
+        }
+    }
+
+    private static void assertSameEvents(List<Event> expected, List<Event> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testCacheProviderIsSharedByEqualTimetableTypes() {
+        LocalTimetableCacheProvider provider = new LocalTimetableCacheProvider(60000, 100);
+        service.setCacheProvider(provider);
+
+        Configuration reordered = createConfiguration(server);
+        Collections.reverse(reordered.getTimetableTypes());
+        reordered.setEventCacheTimeToLive(0);
+
+        Configuration withoutStaff = createConfiguration(server);
+        withoutStaff.getTimetableTypes().remove("staff");
+        withoutStaff.setEventCacheTimeToLive(0);
+
+        MyTimetableServiceImpl reorderedService = new MyTimetableServiceImpl(reordered);
+        MyTimetableServiceImpl withoutStaffService = new MyTimetableServiceImpl(withoutStaff);
+        try {
+            reorderedService.setCacheProvider(provider);
+            withoutStaffService.setCacheProvider(provider);
+
+            List<Event> events = service.getUpcomingEvents("student");
+            assertEquals(events, reorderedService.getUpcomingEvents("student"));
+            assertEquals(1, server.getRequests());
+
+            // Other timetable types may result in other events, so they are not served from the provider.
+            assertNotNull(withoutStaffService.getUpcomingEvents("student"));
+            assertEquals(2, server.getRequests());
+        } finally {
+            reorderedService.close();
+            withoutStaffService.close();
+        }
+    }
+
+    @Test
+    public void testSlowEndpointIsFailedOverFromEarly() throws IOException {
+        StubApiServer other = new StubApiServer();
+        try {
+            Configuration configuration = createConfiguration(server);
+            configuration.getApiEndpointUris().add(other.getEndpointUri());
+            configuration.setEventCacheTimeToLive(0);
+            configuration.setApiAdaptiveTimeoutFactor(3);
+            configuration.setApiAdaptiveTimeoutMin(200);
+            service.onConfigurationChanged(configuration);
+
+            for (int i = 0; i < 20; i++) {
+                assertNotNull(service.getUpcomingEvents("student"));
+            }
+            assertEquals(0, other.getRequests());
+
+            server.setDelay(2000);
+
+            long start = System.currentTimeMillis();
+            assertNotNull(service.getUpcomingEvents("student"));
+            assertTrue(System.currentTimeMillis() - start < 1500);
+            assertEquals(1, other.getRequests());
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    public void testUnknownUserIsRemembered() {
+        server.setStatus(404);
+        assertNull(service.getUpcomingEvents("student"));
+
+        server.setStatus(200);
+        assertNull(service.getUpcomingEvents("student"));
+        assertNull(service.getEvents("student", new Date(), new Date(System.currentTimeMillis() + WEEK), null));
+        assertEquals(1, server.getRequests());
+
+        assertNotNull(service.getUpcomingEvents("other"));
+    }
+
+    @Test
+    public void testForbiddenUserIsNotRemembered() {
+        server.setStatus(403);
+        assertNull(service.getUpcomingEvents("student"));
+
+        server.setStatus(200);
+        assertNotNull(service.getUpcomingEvents("student"));
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void testUserMissingFromKnownUserFilterIsRejected() {
+        service.setKnownUserFilter(KnownUserFilter.create(Collections.singletonList("student"), 0.001));
+
+        assertNotNull(service.getUpcomingEvents("student"));
+        assertNull(service.getUpcomingEvents("unknown"));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void testUsersAreLookedUpConcurrently() {
+        List<String> usernames = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            usernames.add("student" + i);
+        }
+
+        server.setDelay(300);
+
+        long start = System.currentTimeMillis();
+        Map<String, List<Event>> events = service.getUpcomingEvents(usernames, null);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+
+        assertEquals(usernames, new ArrayList<String>(events.keySet()));
+        for (List<Event> userEvents : events.values()) {
+            assertEquals(5, userEvents.size());
+        }
+    }
+
+    @Test
+    public void testUnavailableEndpointIsRetried() {
+        Configuration configuration = createConfiguration(server);
+        configuration.setApiMaxRetries(2);
+        service.onConfigurationChanged(configuration);
+
+        server.setStatus(503);
+        assertNull(service.getUpcomingEvents("student"));
+        assertEquals(3, server.getRequests());
+
+        // Errors which are not transient are not retried.
+        server.setStatus(500);
+        assertNull(service.getUpcomingEvents("student"));
+        assertEquals(4, server.getRequests());
+    }
+
+    @Test
+    public void testStreamedEventsAreRead() {
+        Date from = new Date();
+        Date to = new Date(from.getTime() + WEEK);
+
+        EventStream stream = service.streamEvents("student", from, to, null);
+        List<Event> events = new ArrayList<Event>();
+        try {
+            while (stream.hasNext()) {
+                events.add(stream.next());
+            }
+        } finally {
+            stream.close();
+        }
+
+        assertEquals(StubApiServer.getEvents(from.getTime(), to.getTime(), 0), events);
+        assertEquals(0, clientBuilder.getLeasedConnections());
+    }
+
+    @Test
+    public void testStreamSkipsNullElements() {
+        server.setNullElements(true);
+        Date from = new Date();
+        Date to = new Date(from.getTime() + WEEK);
+
+        EventStream stream = service.streamEvents("student", from, to, null);
+        List<Event> events = new ArrayList<Event>();
+        try {
+            while (stream.hasNext()) {
+                events.add(stream.next());
+            }
+        } finally {
+            stream.close();
+        }
+
+        assertEquals(StubApiServer.getEvents(from.getTime(), to.getTime(), 0), events);
+    }
+
+    @Test
+    public void testClosedStreamReleasesClient() {
+        EventStream stream = service.streamEvents("student", new Date(), new Date(System.currentTimeMillis() + WEEK),
+                null);
+        stream.next();
+        stream.close();
+
+        service.close();
+
+        assertEquals(0, clientBuilder.getOpenClients());
+        assertEquals(0, clientBuilder.getLeasedConnections());
+    }
+
+    @Test
+    public void testFailedStreamReleasesClient() {
+        clientBuilder.setFailure(new IllegalStateException("Connection pool shut down"));
+
+        try {
+            service.streamEvents("student", new Date(), new Date(System.currentTimeMillis() + WEEK), null);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        service.close();
+
+        assertEquals(0, clientBuilder.getOpenClients());
+    }
+
+    @Test
+    public void testChangedConfigurationArgumentIsNotUsed() {
+        Configuration configuration = createConfiguration(server);
+        configuration.setMaxNumberOfEvents(3);
+        service.onConfigurationChanged(configuration);
+
+        configuration.setMaxNumberOfEvents(10);
+        configuration.getApiEndpointUris().clear();
+
+        assertEquals(3, service.getConfiguration().getMaxNumberOfEvents());
+        assertEquals(3, service.getUpcomingEvents("student").size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testConfigurationSnapshotCannotBeChanged() {
+        service.getConfigurationSnapshot().setApiSocketTimeout(5000);
+    }
+
+    @Test
+    public void testChangedConfigurationIsAppliedOnReinitialize() {
+        service.getConfiguration().setMaxNumberOfEvents(3);
+        assertEquals(5, service.getConfigurationSnapshot().getMaxNumberOfEvents());
+        assertEquals(5, service.getUpcomingEvents("student").size());
+
+        service.reinitializeHttpClient();
+
+        assertEquals(3, service.getConfigurationSnapshot().getMaxNumberOfEvents());
+        assertEquals(3, service.getUpcomingEvents("student").size());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.exception.LocalizableException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static nl.eveoh.mytimetable.apiclient.service.MyTimetableServiceImplTest.createConfiguration;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MyTimetableServiceRegistryTest {
+
+    private StubApiServer firstServer;
+
+    private StubApiServer secondServer;
+
+    private MyTimetableServiceRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        firstServer = new StubApiServer();
+        secondServer = new StubApiServer();
+        registry = new MyTimetableServiceRegistry(10, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        registry.close();
+        firstServer.stop();
+        secondServer.stop();
+    }
+
+    @Test
+    public void testTenantsUseTheirOwnConfiguration() {
+        registry.putTenant("first", createConfiguration(firstServer));
+        registry.putTenant("second", createConfiguration(secondServer));
+
+        assertEquals(new HashSet<String>(Arrays.asList("first", "second")), registry.getTenantIds());
+
+        assertEquals(5, registry.getService("first").getUpcomingEvents("student").size());
+        assertEquals(1, firstServer.getRequests());
+        assertEquals(0, secondServer.getRequests());
+
+        assertEquals(5, registry.getService("second").getUpcomingEvents("student").size());
+        assertEquals(1, secondServer.getRequests());
+    }
+
+    @Test
+    public void testCacheBudgetIsDivided() {
+        MyTimetableServiceImpl first = registry.putTenant("first", createConfiguration(firstServer));
+        assertEquals(1000, first.getEventCache().getMaximumEvents());
+
+        MyTimetableServiceImpl second = registry.putTenant("second", createConfiguration(secondServer));
+        assertEquals(500, first.getEventCache().getMaximumEvents());
+        assertEquals(500, second.getEventCache().getMaximumEvents());
+
+        registry.removeTenant("second");
+        assertEquals(1000, first.getEventCache().getMaximumEvents());
+    }
+
+    @Test
+    public void testTenantConfigurationIsReplaced() {
+        MyTimetableServiceImpl service = registry.putTenant("first", createConfiguration(firstServer));
+
+        Configuration configuration = createConfiguration(secondServer);
+        configuration.setMaxNumberOfEvents(3);
+        assertSame(service, registry.putTenant("first", configuration));
+
+        assertEquals(3, registry.getService("first").getUpcomingEvents("student").size());
+        assertEquals(0, firstServer.getRequests());
+        assertEquals(1, secondServer.getRequests());
+    }
+
+    @Test
+    public void testRemovedTenantIsClosed() {
+        MyTimetableServiceImpl service = registry.putTenant("first", createConfiguration(firstServer));
+        registry.removeTenant("first");
+
+        assertTrue(registry.getTenantIds().isEmpty());
+
+        try {
+            service.getUpcomingEvents("student");
+            fail("Service of removed tenant is not closed.");
+        } catch (LocalizableException e) {
+            // Expected.
+        }
+    }
+
+    @Test(expected = LocalizableException.class)
+    public void testUnknownTenant() {
+        registry.putTenant("first", createConfiguration(firstServer));
+        registry.getService("second");
+    }
+}
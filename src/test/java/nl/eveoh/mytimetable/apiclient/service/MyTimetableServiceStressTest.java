@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.exception.LocalizableException;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Randomized stress test of the service lifecycle: many threads look up events, while the configuration is swapped,
+ * the HttpClient is replaced, and finally the service is closed.
+ * <p/>
+ * Checks that no call fails unexpectedly or loses its result, that calls complete within a bound, and that all
+ * pooled connections are returned and all clients are closed afterwards. Set the <tt>stress.duration</tt> system
+ * property to run it for longer than the default of 3 seconds.
+ */
+public class MyTimetableServiceStressTest {
+
+    private static final int THREADS = 8;
+
+    private static final long MAX_LATENCY = 5000;
+
+    private static final long WEEK = 7 * 24 * 3600L * 1000L;
+
+    private StubApiServer server;
+
+    private TestHttpClientBuilder clientBuilder;
+
+    private MyTimetableServiceImpl service;
+
+    private final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private volatile boolean closing = false;
+
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubApiServer();
+        server.setDelay(2);
+
+        clientBuilder = new TestHttpClientBuilder();
+        service = new MyTimetableServiceImpl(createConfiguration(new Random(0)), clientBuilder);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        server.stop();
+    }
+
+    @Test
+    public void testConcurrentLookupsWhileReconfiguringAndClosing() throws Exception {
+        long duration = Long.getLong("stress.duration", 3000);
+
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < THREADS; i++) {
+            final Random random = new Random(i);
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (lookup(random)) {
+                            calls.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "stress-" + i);
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        Random random = new Random(THREADS);
+        long end = System.currentTimeMillis() + duration;
+
+        while (System.currentTimeMillis() < end && failures.isEmpty()) {
+            Thread.sleep(random.nextInt(50));
+
+            if (random.nextInt(4) == 0) {
+                service.reinitializeHttpClient();
+            } else {
+                service.onConfigurationChanged(createConfiguration(random));
+            }
+        }
+
+        closing = true;
+        service.close();
+
+        assertTrue("Lookups did not stop after closing.", done.await(MAX_LATENCY, TimeUnit.MILLISECONDS));
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+
+        assertTrue("No lookups completed.", calls.get() > THREADS);
+        assertTrue("Lookup took " + maxLatency.get() + " ms.", maxLatency.get() < MAX_LATENCY);
+        assertTrue("Configuration swaps did not replace the client.", clientBuilder.getClients() > 1);
+        assertEquals("Leased connections", 0, clientBuilder.getLeasedConnections());
+        assertEquals("Open clients", 0, clientBuilder.getOpenClients());
+    }
+
+    /**
+     * Performs a random lookup, and checks its result.
+     *
+     * @return Whether to continue, {@code false} once the service has been closed.
+     */
+    private boolean lookup(Random random) {
+        String username = "user" + random.nextInt(50);
+        long start = System.currentTimeMillis();
+
+        // Ranges are aligned to weeks, so they overlap between users and calls.
+        long from = start - start % WEEK + random.nextInt(3) * WEEK;
+        long to = from + WEEK;
+
+        try {
+            switch (random.nextInt(3)) {
+                case 0:
+                    List<Event> upcoming = service.getUpcomingEvents(username);
+                    checkResult(upcoming);
+                    assertEquals(5, upcoming.size());
+                    break;
+
+                case 1:
+                    List<Event> events = service.getEvents(username, new Date(from), new Date(to), null);
+                    checkResult(events);
+                    assertEquals(StubApiServer.getEvents(from, to, 0), events);
+                    break;
+
+                default:
+                    EventStream stream = service.streamEvents(username, new Date(from), new Date(to), null);
+                    checkResult(stream);
+
+                    try {
+                        // Read part of the events, so some streams are aborted.
+                        int count = random.nextInt(100);
+                        for (int i = 0; i < count && stream.hasNext(); i++) {
+                            stream.next();
+                        }
+                    } finally {
+                        stream.close();
+                    }
+            }
+        } catch (LocalizableException e) {
+            if (closing) {
+                return false;
+            }
+
+            throw e;
+        }
+
+        long latency = System.currentTimeMillis() - start;
+        while (true) {
+            long max = maxLatency.get();
+            if (latency <= max || maxLatency.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Fails when a result is lost, unless the service was closed during the call.
+     */
+    private void checkResult(Object result) {
+        if (result == null && closing) {
+            throw new LocalizableException("Closed during the call.");
+        }
+
+        assertTrue("Result lost.", result != null);
+    }
+
+    private Configuration createConfiguration(Random random) {
+        Configuration configuration = new Configuration();
+        configuration.setApiKey("key");
+        configuration.getApiEndpointUris().add(server.getEndpointUri());
+        configuration.getApiEndpointUris().add(server.getEndpointUri().replace("127.0.0.1", "localhost"));
+        configuration.setMaxNumberOfEvents(5);
+        configuration.setApiMaxConnections(2 + random.nextInt(6));
+        configuration.setApiReservedConnections(1);
+        configuration.setApiEndpointAffinity(random.nextBoolean());
+        configuration.setApiHedgeDelay(random.nextBoolean() ? 0 : 20);
+        configuration.setEventCacheTimeToLive(random.nextBoolean() ? 0 : 300);
+        configuration.setPrefetchRequestsPerMinute(random.nextBoolean() ? 0 : 600);
+        return configuration;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrefetchSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    private RecordingService service;
+
+    private PrefetchScheduler scheduler;
+
+    private long start;
+
+    @Before
+    public void setUp() {
+        service = new RecordingService();
+        scheduler = new PrefetchScheduler(service, 10);
+        start = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.close();
+        service.close();
+    }
+
+    @Test
+    public void testUserIsPrefetchedBeforeExpectedVisit() {
+        // The user visits about 9 minutes before an event.
+        long nextEvent = start + 180 * MINUTE;
+        visit("user", 3, nextEvent);
+
+        long expected = nextEvent - 9 * MINUTE;
+
+        scheduler.prefetch(expected - 30 * MINUTE);
+        assertTrue(service.prefetched.isEmpty());
+
+        scheduler.prefetch(expected - 2 * MINUTE - 30 * 1000L);
+        assertEquals(Arrays.asList("user"), service.prefetched);
+    }
+
+    @Test
+    public void testUnconfidentPredictionIsIgnored() {
+        long nextEvent = start + 180 * MINUTE;
+        visit("user", 1, nextEvent);
+
+        scheduler.prefetch(nextEvent - 10 * MINUTE - 2 * MINUTE - 30 * 1000L);
+        assertTrue(service.prefetched.isEmpty());
+    }
+
+    @Test
+    public void testRecentlyRefreshedUserIsNotPrefetched() {
+        long nextEvent = start + 180 * MINUTE;
+        visit("user", 3, nextEvent);
+
+        long tick = nextEvent - 9 * MINUTE - 2 * MINUTE - 30 * 1000L;
+        scheduler.prefetch(tick);
+        scheduler.prefetch(tick + 30 * 1000L);
+
+        assertEquals(1, service.prefetched.size());
+    }
+
+    @Test
+    public void testBudgetLimitsPrefetches() {
+        long nextEvent = start + 180 * MINUTE;
+        for (int i = 0; i < 5; i++) {
+            visit("user" + i, 3, nextEvent);
+        }
+
+        scheduler.setRequestsPerMinute(2);
+        scheduler.prefetch(nextEvent - 9 * MINUTE - 2 * MINUTE - 30 * 1000L);
+
+        assertEquals(2, service.prefetched.size());
+    }
+
+    /**
+     * Records visits a minute apart, each 10 minutes before an event, with the given event following it.
+     */
+    private void visit(String username, int visits, long nextEvent) {
+        for (int i = 0; i < visits; i++) {
+            long now = start + i * MINUTE;
+            scheduler.recordAccess(username, Locale.ENGLISH, now,
+                    Arrays.asList(eventAt(start + 10 * MINUTE), eventAt(nextEvent)));
+        }
+    }
+
+    private static Event eventAt(long start) {
+        Event event = new Event();
+        event.setStartDate(new Date(start));
+        event.setEndDate(new Date(start + 60 * MINUTE));
+        return event;
+    }
+
+    private static class RecordingService extends MyTimetableServiceImpl {
+
+        private final List<String> prefetched = new ArrayList<String>();
+
+
+        private RecordingService() {
+            super(new Configuration());
+        }
+
+        @Override
+        List<Event> prefetchUpcomingEvents(String username, Locale locale) {
+            prefetched.add(username);
+            return null;
+        }
+    }
+}
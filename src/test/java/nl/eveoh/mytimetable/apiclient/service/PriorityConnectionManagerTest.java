@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class PriorityConnectionManagerTest {
+
+    private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("localhost", 80));
+
+    private static final HttpRoute OTHER_ROUTE = new HttpRoute(new HttpHost("localhost", 8080));
+
+    private PoolingHttpClientConnectionManager pool;
+
+    private PriorityConnectionManager manager;
+
+    @Before
+    public void setUp() {
+        pool = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(3);
+        pool.setDefaultMaxPerRoute(3);
+
+        manager = new PriorityConnectionManager(pool, 1);
+    }
+
+    @After
+    public void tearDown() {
+        RequestPriority.set(null);
+        manager.shutdown();
+    }
+
+    @Test
+    public void testInteractiveConnectionIsReleased() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            release(lease(RequestPriority.INTERACTIVE));
+        }
+
+        assertLeased(0);
+    }
+
+    @Test
+    public void testBackgroundConnectionsAreLimited() throws Exception {
+        HttpClientConnection background = lease(RequestPriority.BACKGROUND);
+
+        // The remaining connections are reserved for interactive requests.
+        HttpClientConnection interactive = lease(RequestPriority.INTERACTIVE);
+        assertNotNull(interactive);
+
+        release(background);
+        release(lease(RequestPriority.BACKGROUND));
+        release(interactive);
+
+        assertLeased(0);
+    }
+
+    @Test(expected = ConnectionPoolTimeoutException.class)
+    public void testBackgroundLeaseTimesOut() throws Exception {
+        lease(RequestPriority.BACKGROUND);
+        lease(RequestPriority.BACKGROUND);
+    }
+
+    @Test
+    public void testBackgroundLeaseDoesNotWaitForInteractiveLeases() throws Exception {
+        pool.setMaxPerRoute(ROUTE, 1);
+        HttpClientConnection interactive = lease(RequestPriority.INTERACTIVE);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Waits until the connection to the first route is released.
+            Future<HttpClientConnection> waiting = executor.submit(new Callable<HttpClientConnection>() {
+                @Override
+                public HttpClientConnection call() throws Exception {
+                    return manager.requestConnection(ROUTE, null).get(5, TimeUnit.SECONDS);
+                }
+            });
+            Thread.sleep(100);
+
+            release(lease(RequestPriority.BACKGROUND, OTHER_ROUTE));
+
+            release(interactive);
+            release(waiting.get());
+            assertLeased(0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private HttpClientConnection lease(RequestPriority priority) throws Exception {
+        return lease(priority, ROUTE);
+    }
+
+    private HttpClientConnection lease(RequestPriority priority, HttpRoute route) throws Exception {
+        RequestPriority previous = RequestPriority.set(priority);
+        try {
+            return manager.requestConnection(route, null).get(100, TimeUnit.MILLISECONDS);
+        } finally {
+            RequestPriority.set(previous);
+        }
+    }
+
+    private void release(HttpClientConnection conn) {
+        manager.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private void assertLeased(int leased) {
+        assertEquals(leased, pool.getTotalStats().getLeased());
+    }
+}
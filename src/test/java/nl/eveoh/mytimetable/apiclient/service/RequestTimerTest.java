@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimerTest {
+
+    private StubApiServer server;
+
+    private MyTimetableServiceImpl service;
+
+    private final List<RequestTiming> timings = new CopyOnWriteArrayList<RequestTiming>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubApiServer();
+        service = new MyTimetableServiceImpl(MyTimetableServiceImplTest.createConfiguration(server),
+                new TestHttpClientBuilder());
+        service.setRequestTimingListener(new RequestTimingListener() {
+            @Override
+            public void onRequestCompleted(RequestTiming timing) {
+                timings.add(timing);
+            }
+        }, 1.0);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        server.stop();
+    }
+
+    @Test
+    public void testStreamIsMeasured() throws IOException {
+        RequestTimer timer = RequestTimer.start(new HttpHost("localhost", 8080), 1, 1, 0);
+
+        InputStream in = timer.wrap(new ByteArrayInputStream(new byte[100]));
+        assertEquals(0, in.read());
+        assertEquals(99, in.read(new byte[200], 0, 200));
+        assertEquals(-1, in.read());
+
+        RequestTiming timing = timer.finish(RequestTiming.Outcome.SUCCESS, 200);
+
+        assertEquals("localhost:8080", timing.getEndpoint());
+        assertEquals(100, timing.getBytesRead());
+        assertTrue(timing.getDuration(RequestTiming.Phase.TRANSFER, TimeUnit.NANOSECONDS) >= 0);
+        assertEquals(-1, timing.getDuration(RequestTiming.Phase.CONNECT, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testSuccessfulRequestIsReported() {
+        service.getUpcomingEvents("student");
+
+        assertEquals(1, timings.size());
+
+        RequestTiming timing = timings.get(0);
+        assertEquals(RequestTiming.Outcome.SUCCESS, timing.getOutcome());
+        assertEquals(200, timing.getStatus());
+        assertTrue(timing.getEndpoint().startsWith("127.0.0.1:"));
+        assertTrue(timing.getBytesRead() > 0);
+        assertTrue(timing.getDuration(RequestTiming.Phase.WAITING, TimeUnit.NANOSECONDS) >= 0);
+        assertTrue(timing.getDuration(RequestTiming.Phase.DESERIALIZATION, TimeUnit.NANOSECONDS) >= 0);
+        assertTrue(timing.getTotalTime(TimeUnit.NANOSECONDS)
+                >= timing.getDuration(RequestTiming.Phase.WAITING, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testUnknownUserIsReported() {
+        server.setStatus(404);
+        service.getUpcomingEvents("student");
+
+        assertEquals(1, timings.size());
+        assertEquals(RequestTiming.Outcome.UNKNOWN_USER, timings.get(0).getOutcome());
+        assertEquals(404, timings.get(0).getStatus());
+    }
+
+    @Test
+    public void testUnsampledRequestsAreNotReported() {
+        service.setRequestTimingListener(new RequestTimingListener() {
+            @Override
+            public void onRequestCompleted(RequestTiming timing) {
+                timings.add(timing);
+            }
+        }, 0.0);
+
+        assertFalse(service.getUpcomingEvents("student").isEmpty());
+        assertTrue(timings.isEmpty());
+    }
+}
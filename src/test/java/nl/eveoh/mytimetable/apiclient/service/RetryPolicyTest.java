@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import org.apache.http.NoHttpResponseException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testOnlyTransientFailuresAreRetryable() {
+        RetryPolicy policy = new RetryPolicy(1, 50, 1000, 10);
+
+        assertTrue(policy.isRetryable(new NoHttpResponseException("Closed")));
+        assertTrue(policy.isRetryable(new SocketException("Connection reset")));
+        assertFalse(policy.isRetryable(new ConnectException("Connection refused")));
+        assertFalse(policy.isRetryable(new SocketTimeoutException("Read timed out")));
+
+        assertTrue(policy.isRetryable(502));
+        assertTrue(policy.isRetryable(503));
+        assertTrue(policy.isRetryable(504));
+        assertFalse(policy.isRetryable(500));
+        assertFalse(policy.isRetryable(404));
+    }
+
+    @Test
+    public void testRetriesPerRequestAreLimited() {
+        RetryPolicy policy = new RetryPolicy(2, 50, 1000, 10);
+
+        assertTrue(policy.tryRetry(0));
+        assertTrue(policy.tryRetry(1));
+        assertFalse(policy.tryRetry(2));
+    }
+
+    @Test
+    public void testRetryBudget() {
+        RetryPolicy policy = new RetryPolicy(1, 50, 1000, 10);
+
+        // The budget allows a burst of 10 retries.
+        int retries = 0;
+        while (policy.tryRetry(0)) {
+            retries++;
+        }
+        assertEquals(10, retries);
+
+        // Afterwards, every 10 requests allow another retry.
+        for (int i = 0; i < 9; i++) {
+            policy.recordRequest();
+        }
+        assertFalse(policy.tryRetry(0));
+
+        policy.recordRequest();
+        policy.recordRequest();
+        assertTrue(policy.tryRetry(0));
+        assertFalse(policy.tryRetry(0));
+    }
+
+    @Test
+    public void testBudgetIsCapped() {
+        RetryPolicy policy = new RetryPolicy(1, 50, 1000, 100);
+
+        for (int i = 0; i < 1000; i++) {
+            policy.recordRequest();
+        }
+
+        int retries = 0;
+        while (policy.tryRetry(0)) {
+            retries++;
+        }
+        assertEquals(10, retries);
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        RetryPolicy policy = new RetryPolicy(10, 50, 1000, 10);
+
+        long maxFirst = 0;
+        long maxCapped = 0;
+        for (int i = 0; i < 1000; i++) {
+            long first = policy.getBackoffDelay(0);
+            long capped = policy.getBackoffDelay(10);
+
+            assertTrue(first >= 0 && first < 50);
+            assertTrue(capped >= 0 && capped < 1000);
+
+            maxFirst = Math.max(maxFirst, first);
+            maxCapped = Math.max(maxCapped, capped);
+        }
+
+        // Full jitter uses the whole range.
+        assertTrue(maxFirst >= 40);
+        assertTrue(maxCapped >= 800);
+
+        assertEquals(0, new RetryPolicy(1, 0, 1000, 10).getBackoffDelay(3));
+    }
+}
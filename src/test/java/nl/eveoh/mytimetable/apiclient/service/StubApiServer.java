@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stub of the timetable resource of the MyTimetable API, serving a fixed timetable on a local port.
+ * <p/>
+ * Every user has an event starting every {@link #PERIOD} milliseconds since the epoch, lasting half the period.
+ */
+class StubApiServer {
+
+    static final long PERIOD = 2 * 3600L * 1000L;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile int status = 200;
+
+    private volatile long delay = 0;
+
+    private volatile boolean nullElements = false;
+
+
+    StubApiServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/timetable", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getEndpointUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/";
+    }
+
+    /**
+     * @return Number of requests received.
+     */
+    int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Sets the HTTP status to respond with; events are only sent with status 200.
+     */
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Sets the time to wait before responding, in milliseconds.
+     */
+    void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Sets whether to send a JSON <tt>null</tt> before each event.
+     */
+    void setNullElements(boolean nullElements) {
+        this.nullElements = nullElements;
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return The events of the stub timetable overlapping the given range, at most <tt>limit</tt> if positive.
+     */
+    static List<Event> getEvents(long from, long to, int limit) {
+        List<Event> ret = new ArrayList<Event>();
+
+        for (long start = from - from % PERIOD; start < to && (limit <= 0 || ret.size() < limit); start += PERIOD) {
+            if (start + PERIOD / 2 > from) {
+                long k = start / PERIOD;
+                ret.add(new Event("Lecture " + k, new Date(start), new Date(start + PERIOD / 2),
+                        Collections.singletonList(new Location("Room " + k % 10)),
+                        Collections.singletonList("J. Jansen"), "Lecture"));
+            }
+        }
+
+        return ret;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        try {
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            int responseStatus = status;
+            if (responseStatus != 200) {
+                exchange.sendResponseHeaders(responseStatus, -1);
+                return;
+            }
+
+            Map<String, String> parameters = getParameters(exchange.getRequestURI().getRawQuery());
+            long from = Long.parseLong(parameters.get("startDate"));
+            long to = parameters.containsKey("endDate") ? Long.parseLong(parameters.get("endDate")) : Long.MAX_VALUE;
+            int limit = parameters.containsKey("limit") ? Integer.parseInt(parameters.get("limit")) : 0;
+
+            List<Event> events = getEvents(from, to, limit);
+            if (nullElements) {
+                for (int i = events.size() - 1; i >= 0; i--) {
+                    events.add(i, null);
+                }
+            }
+
+            byte[] body = mapper.writeValueAsBytes(events);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> getParameters(String query) {
+        Map<String, String> ret = new HashMap<String, String>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int i = parameter.indexOf('=');
+                ret.put(parameter.substring(0, i), parameter.substring(i + 1));
+            }
+        }
+
+        return ret;
+    }
+}
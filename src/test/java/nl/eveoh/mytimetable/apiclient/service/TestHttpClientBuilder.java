@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.service;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Builds HttpClients which can be inspected after use: whether they have been closed, and how many connections are
+ * leased from their pools. Requests can be made to fail with a RuntimeException.
+ */
+class TestHttpClientBuilder extends MyTimetableHttpClientBuilderImpl {
+
+    private final List<TestHttpClient> clients = new CopyOnWriteArrayList<TestHttpClient>();
+
+    private volatile RuntimeException failure = null;
+
+
+    @Override
+    public CloseableHttpClient build(Configuration configuration) {
+        PoolingHttpClientConnectionManager pool =
+                new PoolingHttpClientConnectionManager(createSocketFactoryRegistry(configuration));
+        pool.setMaxTotal(configuration.getApiMaxConnections());
+        pool.setDefaultMaxPerRoute(configuration.getApiMaxConnections());
+
+        TestHttpClient client = new TestHttpClient(createHttpClient(prioritize(pool, configuration), configuration),
+                pool);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Makes all requests throw the given exception.
+     *
+     * @param failure Exception to throw, or {@code null} to execute the requests.
+     */
+    void setFailure(RuntimeException failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * @return Number of clients built.
+     */
+    int getClients() {
+        return clients.size();
+    }
+
+    /**
+     * @return Number of clients which have not been closed.
+     */
+    int getOpenClients() {
+        int ret = 0;
+        for (TestHttpClient client : clients) {
+            if (!client.closed) {
+                ret++;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return Number of connections leased from the pools of all clients.
+     */
+    int getLeasedConnections() {
+        int ret = 0;
+        for (TestHttpClient client : clients) {
+            ret += client.pool.getTotalStats().getLeased();
+        }
+
+        return ret;
+    }
+
+
+    private class TestHttpClient extends CloseableHttpClient {
+
+        private final CloseableHttpClient delegate;
+
+        private final PoolingHttpClientConnectionManager pool;
+
+        private volatile boolean closed = false;
+
+        private TestHttpClient(CloseableHttpClient delegate, PoolingHttpClientConnectionManager pool) {
+            this.delegate = delegate;
+            this.pool = pool;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                throws IOException {
+            RuntimeException e = failure;
+            if (e != null) {
+                throw e;
+            }
+
+            return delegate.execute(target, request, context);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            delegate.close();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public HttpParams getParams() {
+            return delegate.getParams();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClientConnectionManager getConnectionManager() {
+            return delegate.getConnectionManager();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimetableFingerprintTest {
+
+    private static final long HOUR = 3600L * 1000L;
+
+    private static final long WINDOW_END = 100 * HOUR;
+
+    @Test
+    public void testUnchangedTimetable() {
+        List<Event> events = Arrays.asList(event("A", 1), event("B", 2));
+
+        assertTrue(diff(events, Arrays.asList(event("A", 1), event("B", 2))).isEmpty());
+    }
+
+    @Test
+    public void testAddedAndRemovedEvents() {
+        Event added = event("C", 3);
+        TimetableDiff diff = diff(Arrays.asList(event("A", 1), event("B", 2)), Arrays.asList(event("A", 1), added));
+
+        assertEquals(1, diff.getAdded().size());
+        assertSame(added, diff.getAdded().get(0));
+        assertEquals(1, diff.getRemoved().size());
+        assertEquals("B", diff.getRemoved().get(0).getActivityCode());
+        assertTrue(diff.getChanged().isEmpty());
+    }
+
+    @Test
+    public void testMovedEvent() {
+        TimetableDiff diff = diff(Arrays.asList(event("A", 1), event("A", 5)), Arrays.asList(event("A", 1),
+                event("A", 6)));
+
+        assertTrue(diff.getAdded().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertEquals(1, diff.getChanged().size());
+
+        EventChange change = diff.getChanged().get(0);
+        assertEquals(EnumSet.of(EventChange.Type.MOVED), change.getTypes());
+        assertEquals(new Date(5 * HOUR), change.getPrevious().getStartDate());
+        assertEquals(new Date(6 * HOUR), change.getEvent().getStartDate());
+    }
+
+    @Test
+    public void testLocationAndStaffChanges() {
+        Event changed = event("A", 1);
+        changed.setLocations(Collections.singletonList(new Location("Room 2.01")));
+        changed.setStaffMembers(Collections.singletonList("P. Pietersen"));
+
+        TimetableDiff diff = diff(Collections.singletonList(event("A", 1)), Collections.singletonList(changed));
+
+        assertEquals(1, diff.getChanged().size());
+        assertEquals(EnumSet.of(EventChange.Type.LOCATION_CHANGED, EventChange.Type.STAFF_CHANGED),
+                diff.getChanged().get(0).getTypes());
+    }
+
+    @Test
+    public void testNoteChangesAreNotReported() {
+        Event changed = event("A", 1);
+        changed.setNote1("Bring a laptop");
+
+        assertTrue(diff(Collections.singletonList(event("A", 1)), Collections.singletonList(changed)).isEmpty());
+    }
+
+    @Test
+    public void testOnlyOverlappingWindowIsCompared() {
+        // Event A ended before the new window starts, and event C starts after the previous window ended.
+        List<Event> previous = Arrays.asList(event("A", 1), event("B", 20));
+        List<Event> current = Arrays.asList(event("B", 20), event("C", 150));
+
+        TimetableFingerprint fingerprint = new TimetableFingerprint(previous, WINDOW_END);
+        TimetableDiff diff = fingerprint.diff(current, new TimetableFingerprint(current, WINDOW_END + 10 * HOUR),
+                10 * HOUR);
+
+        assertTrue(diff.isEmpty());
+    }
+
+    private static TimetableDiff diff(List<Event> previous, List<Event> current) {
+        TimetableFingerprint fingerprint = new TimetableFingerprint(previous, WINDOW_END);
+        return fingerprint.diff(current, new TimetableFingerprint(current, WINDOW_END), 0L);
+    }
+
+    private static Event event(String code, int startHour) {
+        Event event = new Event();
+        event.setActivityCode(code);
+        event.setActivityDescription("Lecture " + code);
+        event.setStartDate(new Date(startHour * HOUR));
+        event.setEndDate(new Date((startHour + 1) * HOUR));
+        event.setLocations(Collections.singletonList(new Location("Room 1.01")));
+        event.setStaffMembers(Collections.singletonList("J. Jansen"));
+        return event;
+    }
+}
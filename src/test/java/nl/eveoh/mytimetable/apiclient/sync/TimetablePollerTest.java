@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.sync;
+
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.service.EventStream;
+import nl.eveoh.mytimetable.apiclient.service.MyTimetableRangeService;
+import nl.eveoh.mytimetable.apiclient.service.RequestPriority;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimetablePollerTest {
+
+    @Test
+    public void testChangesAreNotified() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        FakeService service = new FakeService();
+        service.events = Collections.singletonList(eventAt("A", now + 3600000L));
+
+        final BlockingQueue<TimetableDiff> diffs = new LinkedBlockingQueue<TimetableDiff>();
+        TimetablePoller poller = new TimetablePoller(service, 20L, 40L, 24 * 3600000L, 1);
+        poller.addListener(new TimetableChangeListener() {
+            @Override
+            public void onTimetableChanged(String username, TimetableDiff diff) {
+                assertEquals("user", username);
+                diffs.add(diff);
+            }
+        });
+
+        try {
+            poller.addUser("user", Locale.ENGLISH);
+            assertTrue(service.awaitCalls(2));
+
+            service.events = Collections.singletonList(eventAt("A", now + 7200000L));
+
+            TimetableDiff diff = diffs.poll(5, TimeUnit.SECONDS);
+            assertNotNull(diff);
+            assertEquals(1, diff.getChanged().size());
+            assertTrue(diff.getChanged().get(0).getTypes().contains(EventChange.Type.MOVED));
+            assertEquals(RequestPriority.BACKGROUND, service.priority);
+        } finally {
+            poller.close();
+        }
+    }
+
+    @Test
+    public void testRemovedUserIsNoLongerPolled() throws InterruptedException {
+        FakeService service = new FakeService();
+        TimetablePoller poller = new TimetablePoller(service, 20L, 20L, 3600000L, 1);
+
+        try {
+            poller.addUser("user", Locale.ENGLISH);
+            assertTrue(service.awaitCalls(1));
+
+            poller.removeUser("user");
+            assertTrue(poller.getUsers().isEmpty());
+
+            // A poll which was in progress while removing the user may still finish.
+            Thread.sleep(50L);
+            int calls = service.calls.get();
+            Thread.sleep(200L);
+            assertEquals(calls, service.calls.get());
+        } finally {
+            poller.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidIntervals() {
+        new TimetablePoller(new FakeService(), 1000L, 500L, 3600000L);
+    }
+
+    private static Event eventAt(String code, long start) {
+        Event event = new Event();
+        event.setActivityCode(code);
+        event.setStartDate(new Date(start));
+        event.setEndDate(new Date(start + 3600000L));
+        return event;
+    }
+
+    private static class FakeService implements MyTimetableRangeService {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private volatile List<Event> events = Collections.emptyList();
+
+        private volatile RequestPriority priority;
+
+
+        private boolean awaitCalls(int n) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000L;
+
+            while (calls.get() < n) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+
+                Thread.sleep(5L);
+            }
+
+            return true;
+        }
+
+        @Override
+        public List<Event> getEvents(String username, Date from, Date to, Locale locale) {
+            priority = RequestPriority.get();
+            calls.incrementAndGet();
+            return new ArrayList<Event>(events);
+        }
+
+        @Override
+        public Map<String, List<Event>> getUpcomingEvents(Collection<String> usernames, Locale locale) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EventStream streamEvents(String username, Date from, Date to, Locale locale) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Event> getUpcomingEvents(String username) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Event> getUpcomingEvents(String username, Locale locale) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.widget;
+
+import nl.eveoh.mytimetable.apiclient.configuration.Configuration;
+import nl.eveoh.mytimetable.apiclient.configuration.WidgetConfiguration;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.service.MyTimetableService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WidgetFragmentCacheTest {
+
+    @Test
+    public void testFragmentIsReused() {
+        CountingService service = new CountingService(System.currentTimeMillis() + 3600000L);
+        WidgetFragmentCache cache = new WidgetFragmentCache(service, new WidgetConfiguration());
+
+        String html = cache.getFragment("user", Locale.ENGLISH);
+        assertEquals(html, cache.getFragment("user", Locale.ENGLISH));
+        assertEquals(1, service.calls.get());
+
+        cache.getFragment("user", new Locale("nl"));
+        cache.getFragment("other", Locale.ENGLISH);
+        assertEquals(3, service.calls.get());
+    }
+
+    @Test
+    public void testFragmentExpiresWhenEventEnds() throws InterruptedException {
+        CountingService service = new CountingService(System.currentTimeMillis() + 100L);
+        WidgetFragmentCache cache = new WidgetFragmentCache(service, new WidgetConfiguration());
+
+        cache.getFragment("user", Locale.ENGLISH);
+        Thread.sleep(200L);
+        cache.getFragment("user", Locale.ENGLISH);
+
+        assertEquals(2, service.calls.get());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        CountingService service = new CountingService(System.currentTimeMillis() + 3600000L);
+        WidgetFragmentCache cache = new WidgetFragmentCache(service, new WidgetConfiguration());
+
+        cache.getFragment("user", Locale.ENGLISH);
+        cache.invalidateAll();
+        cache.getFragment("user", Locale.ENGLISH);
+
+        assertEquals(2, service.calls.get());
+    }
+
+    @Test
+    public void testConfigurationChangeRerenders() {
+        CountingService service = new CountingService(System.currentTimeMillis() + 3600000L);
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        WidgetFragmentCache cache = new WidgetFragmentCache(service, configuration);
+
+        String html = cache.getFragment("user", Locale.ENGLISH);
+
+        // The cache renders with a snapshot, so modifying the configuration has no effect until it is announced.
+        configuration.setShowCode(true);
+        assertEquals(html, cache.getFragment("user", Locale.ENGLISH));
+
+        cache.onConfigurationChanged(configuration);
+        String changed = cache.getFragment("user", Locale.ENGLISH);
+
+        assertNotEquals(html, changed);
+        assertTrue(changed.contains("mytimetable-code"));
+        assertEquals(2, service.calls.get());
+    }
+
+    @Test
+    public void testFailedFetchIsNotCached() {
+        CountingService service = new CountingService(System.currentTimeMillis() + 3600000L);
+        service.failing = true;
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        configuration.setShowCode(true);
+        WidgetFragmentCache cache = new WidgetFragmentCache(service, configuration);
+
+        assertTrue(cache.getFragment("user", null).contains("mytimetable-no-events"));
+
+        service.failing = false;
+        assertTrue(cache.getFragment("user", null).contains("CODE-user"));
+        assertEquals(2, service.calls.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConfigurationChangeRequiresWidgetConfiguration() {
+        WidgetFragmentCache cache = new WidgetFragmentCache(new CountingService(0L), new WidgetConfiguration());
+        cache.onConfigurationChanged(new Configuration());
+    }
+
+    private static class CountingService implements MyTimetableService {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final long endsAt;
+
+        private volatile boolean failing = false;
+
+
+        private CountingService(long endsAt) {
+            this.endsAt = endsAt;
+        }
+
+        @Override
+        public List<Event> getUpcomingEvents(String username) {
+            return getUpcomingEvents(username, null);
+        }
+
+        @Override
+        public List<Event> getUpcomingEvents(String username, Locale locale) {
+            calls.incrementAndGet();
+
+            if (failing) {
+                return null;
+            }
+
+            Event event = new Event();
+            event.setActivityCode("CODE-" + username);
+            event.setStartDate(new Date(endsAt - 3600000L));
+            event.setEndDate(new Date(endsAt));
+
+            List<Event> events = new ArrayList<Event>();
+            events.add(event);
+            return events;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 - 2016 Eveoh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.eveoh.mytimetable.apiclient.widget;
+
+import nl.eveoh.mytimetable.apiclient.configuration.WidgetConfiguration;
+import nl.eveoh.mytimetable.apiclient.model.Event;
+import nl.eveoh.mytimetable.apiclient.model.Location;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WidgetRendererTest {
+
+    private static final long HOUR = 3600L * 1000L;
+
+    @Test
+    public void testColumnsFollowConfiguration() {
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        assertEquals(Arrays.asList(WidgetColumn.TIME, WidgetColumn.ACTIVITY_TYPE, WidgetColumn.LOCATION),
+                new WidgetRenderer(configuration).getColumns());
+
+        configuration.setShowActivityType(false);
+        assertEquals(Arrays.asList(WidgetColumn.TIME, WidgetColumn.LOCATION),
+                new WidgetRenderer(configuration).getColumns());
+
+        configuration.setShowCode(true);
+        configuration.setShowStaff(true);
+        configuration.setShowNote3(true);
+        assertEquals(Arrays.asList(WidgetColumn.TIME, WidgetColumn.CODE, WidgetColumn.LOCATION, WidgetColumn.STAFF,
+                WidgetColumn.NOTE_3), new WidgetRenderer(configuration).getColumns());
+    }
+
+    @Test
+    public void testEventsAreRendered() {
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        configuration.setShowDescription(true);
+        configuration.setShowActivityType(false);
+        configuration.setShowStaff(true);
+
+        String html = new WidgetRenderer(configuration).render(Collections.singletonList(event("Lecture")),
+                Locale.ENGLISH);
+
+        assertTrue(html.startsWith("<table class=\"mytimetable-events\"><thead><tr>"
+                + "<th class=\"mytimetable-time\">Time</th>"
+                + "<th class=\"mytimetable-description\">Description</th>"
+                + "<th class=\"mytimetable-location\">Location</th>"
+                + "<th class=\"mytimetable-staff\">Staff</th></tr></thead><tbody><tr>"));
+        assertTrue(html.contains("<td class=\"mytimetable-description\">Lecture</td>"));
+        assertTrue(html.contains("<td class=\"mytimetable-location\">Room 1.01, Room 1.02</td>"));
+        assertTrue(html.contains("<td class=\"mytimetable-staff\">J. Jansen, P. Pietersen</td>"));
+        assertTrue(html.endsWith("</tr></tbody></table>"));
+    }
+
+    @Test
+    public void testCellsAreEscaped() {
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        configuration.setShowDescription(true);
+
+        Event event = event("<b>Tom & Jerry's \"show\"</b>");
+        event.setLocations(Collections.singletonList(new Location("<script>")));
+
+        String html = new WidgetRenderer(configuration).render(Collections.singletonList(event), Locale.ENGLISH);
+
+        assertTrue(html.contains("&lt;b&gt;Tom &amp; Jerry&#39;s &quot;show&quot;&lt;/b&gt;"));
+        assertTrue(html.contains("&lt;script&gt;"));
+        assertFalse(html.contains("<script>"));
+        assertFalse(html.contains("<b>"));
+    }
+
+    @Test
+    public void testUnknownLocation() {
+        Event event = event("Lecture");
+        event.setLocations(Arrays.asList(null, new Location(" ")));
+
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        String html = new WidgetRenderer(configuration).render(Collections.singletonList(event), Locale.ENGLISH);
+        assertTrue(html.contains("<td class=\"mytimetable-location\">Unknown</td>"));
+
+        configuration.setUnknownLocationDescription("To be announced");
+        html = new WidgetRenderer(configuration).render(Collections.singletonList(event), Locale.ENGLISH);
+        assertTrue(html.contains("<td class=\"mytimetable-location\">To be announced</td>"));
+    }
+
+    @Test
+    public void testNoEventsWithApplicationLink() {
+        WidgetConfiguration configuration = new WidgetConfiguration();
+        configuration.setApplicationUri("https://example.com/?a=1&b=2");
+        configuration.setApplicationTarget("_blank");
+        configuration.setCustomCss("td { color: red; }</style><script>");
+
+        String html = new WidgetRenderer(configuration).render(Collections.<Event>emptyList(), Locale.ENGLISH);
+
+        assertEquals("<style type=\"text/css\">td { color: red; }<\\/style><script></style>"
+                + "<p class=\"mytimetable-no-events\">No upcoming events.</p>"
+                + "<p class=\"mytimetable-link\"><a href=\"https://example.com/?a=1&amp;b=2\" target=\"_blank\">"
+                + "Open MyTimetable</a></p>", html);
+
+        configuration.setApplicationUriDescriptionOverride("Full timetable");
+        html = new WidgetRenderer(configuration).render(Collections.<Event>emptyList(), Locale.ENGLISH);
+        assertTrue(html.endsWith(">Full timetable</a></p>"));
+    }
+
+    @Test
+    public void testMissingEventsAndLocale() {
+        WidgetRenderer renderer = new WidgetRenderer(new WidgetConfiguration());
+
+        assertTrue(renderer.render(null, null).contains(">No upcoming events.<"));
+        assertTrue(renderer.render(Collections.singletonList(event("Lecture")), null)
+                .contains("<td class=\"mytimetable-location\">Room 1.01, Room 1.02</td>"));
+    }
+
+    @Test
+    public void testTextsAreLocalized() {
+        WidgetRenderer renderer = new WidgetRenderer(new WidgetConfiguration()) {
+            @Override
+            protected String getText(String key, Locale locale) {
+                if ("noEvents".equals(key) && "nl".equals(locale.getLanguage())) {
+                    return "Geen activiteiten.";
+                }
+
+                return super.getText(key, locale);
+            }
+        };
+
+        List<Event> events = Collections.emptyList();
+        assertTrue(renderer.render(events, new Locale("nl")).contains(">Geen activiteiten.<"));
+        assertTrue(renderer.render(events, Locale.ENGLISH).contains(">No upcoming events.<"));
+    }
+
+    private static Event event(String description) {
+        Event event = new Event();
+        event.setActivityDescription(description);
+        event.setStartDate(new Date(HOUR));
+        event.setEndDate(new Date(2 * HOUR));
+        event.setLocations(Arrays.asList(new Location("Room 1.01"), new Location("Room 1.02")));
+        event.setStaffMembers(Arrays.asList("J. Jansen", "P. Pietersen"));
+        return event;
+    }
+}